@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.common;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A mutable {@link Map} view over the fields of a {@link StructuredRecord}, used to hand records to scripts
+ * without serializing them to JSON first.
+ *
+ * Field values are only converted when they are first read. Nested records are exposed as
+ * {@link StructuredRecordMap} as well, and byte buffers are exposed as byte arrays. Writes and removals
+ * never modify the underlying record.
+ */
+public class StructuredRecordMap extends AbstractMap<String, Object> {
+  private final StructuredRecord record;
+  // values that have been read or written so far. Once materialized, this contains every entry of the map.
+  private final Map<String, Object> values;
+  private boolean materialized;
+
+  public StructuredRecordMap(StructuredRecord record) {
+    this.record = record;
+    this.values = new LinkedHashMap<>();
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (materialized || values.containsKey(key) || !(key instanceof String)) {
+      return values.get(key);
+    }
+    String name = (String) key;
+    if (record.getSchema().getField(name) == null) {
+      return null;
+    }
+    Object value = toScriptValue(record.get(name));
+    values.put(name, value);
+    return value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (materialized || values.containsKey(key)) {
+      return values.containsKey(key);
+    }
+    return key instanceof String && record.getSchema().getField((String) key) != null;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    Object previous = get(key);
+    values.put(key, value);
+    return previous;
+  }
+
+  @Override
+  public Object remove(Object key) {
+    materialize();
+    return values.remove(key);
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    materialize();
+    return values.entrySet();
+  }
+
+  private void materialize() {
+    if (materialized) {
+      return;
+    }
+    Map<String, Object> written = new LinkedHashMap<>(values);
+    values.clear();
+    for (Schema.Field field : record.getSchema().getFields()) {
+      String name = field.getName();
+      values.put(name, written.containsKey(name) ? written.remove(name) : toScriptValue(record.get(name)));
+    }
+    // fields that were added by the script and are not part of the record schema
+    values.putAll(written);
+    materialized = true;
+  }
+
+  private static Object toScriptValue(Object value) {
+    if (value instanceof StructuredRecord) {
+      return new StructuredRecordMap((StructuredRecord) value);
+    }
+    if (value instanceof ByteBuffer) {
+      return Bytes.toBytes((ByteBuffer) value);
+    }
+    if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      Map<Object, Object> converted = new LinkedHashMap<>(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        converted.put(toScriptValue(entry.getKey()), toScriptValue(entry.getValue()));
+      }
+      return converted;
+    }
+    if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      List<Object> converted = new ArrayList<>(collection.size());
+      for (Object element : collection) {
+        converted.add(toScriptValue(element));
+      }
+      return converted;
+    }
+    return value;
+  }
+}
@@ -30,11 +30,9 @@ import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
-import co.cask.hydrator.plugin.ScriptConstants;
+import co.cask.hydrator.plugin.common.StructuredRecordMap;
 import co.cask.hydrator.plugin.common.StructuredRecordSerializer;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
@@ -42,14 +40,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 /**
@@ -67,14 +61,13 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
   private static final String VARIABLE_NAME = "dont_name_your_variable_this";
   private static final String EMITTER_NAME = "dont_name_your_variable2_this";
   private static final String CONTEXT_NAME = "dont_name_your_context_this";
-  private ScriptEngine engine;
-  private Invocable invocable;
+  private static final String INPUT_MODE_JSON = "json";
+  private static final String INPUT_MODE_NATIVE = "native";
+  private ScriptEnginePool engines;
   private Schema schema;
   private final Config config;
   private StageMetrics metrics;
-
-  @Nullable
-  private Method somValuesMethod;
+  private boolean nativeInput;
 
   /**
    * Configuration for the script transform.
@@ -111,10 +104,22 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
     @Nullable
     private final String lookup;
 
+    @Description("How input records are passed to the script. 'json' (the default) converts each record into a " +
+      "JSON object before calling the script. 'native' passes the record as a map that is backed by the record " +
+      "itself, which avoids serializing and evaluating every record as JSON and is significantly faster. " +
+      "In 'native' mode, byte fields are passed as Java byte arrays and arrays as Java lists.")
+    @Nullable
+    private final String inputMode;
+
     public Config(String script, String schema, LookupConfig lookup) {
+      this(script, schema, lookup, INPUT_MODE_JSON);
+    }
+
+    public Config(String script, String schema, LookupConfig lookup, @Nullable String inputMode) {
       this.script = script;
       this.schema = schema;
       this.lookup = GSON.toJson(lookup);
+      this.inputMode = inputMode;
     }
   }
 
@@ -139,29 +144,28 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
   public void initialize(TransformContext context) throws Exception {
     super.initialize(context);
     metrics = context.getMetrics();
+    init(context);
+  }
 
-    // for Nashorn (Java 8+) support -- get method to convert ScriptObjectMirror to List
-    try {
-      Class<?> somClass = Class.forName("jdk.nashorn.api.scripting.ScriptObjectMirror");
-      somValuesMethod = somClass.getMethod("values");
-    } catch (NoSuchMethodException e) {
-      throw new RuntimeException(
-        "Failed to get method ScriptObjectMirror#values() for converting ScriptObjectMirror to List. " +
-          "Please check your version of Nashorn is supported.", e);
-    } catch (ClassNotFoundException e) {
-      // Ignore -- we don't have Nashorn, so no need to handle Nashorn
+  @Override
+  public void destroy() {
+    if (engines != null) {
+      engines.close();
     }
-
-    init(context);
   }
 
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) {
     try {
+      ScriptEngine engine = engines.get();
+      // each engine has a single emitter, defined when the engine was set up, that is pointed at the current output
+      ((JSEmitter) engine.get(EMITTER_NAME)).reset(emitter, schema == null ? input.getSchema() : schema);
+      if (nativeInput) {
+        ((Invocable) engine).invokeFunction(FUNCTION_NAME, new StructuredRecordMap(input));
+        return;
+      }
       engine.eval(String.format("var %s = %s;", VARIABLE_NAME, GSON.toJson(input)));
-      Emitter<Map> jsEmitter = new JSEmitter(emitter, schema == null ? input.getSchema() : schema);
-      engine.put(EMITTER_NAME, jsEmitter);
-      invocable.invokeFunction(FUNCTION_NAME);
+      ((Invocable) engine).invokeFunction(FUNCTION_NAME);
     } catch (Exception e) {
       throw new IllegalArgumentException("Could not transform input: " + e.getMessage(), e);
     }
@@ -172,12 +176,21 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
    */
   public final class JSEmitter implements Emitter<Map> {
 
-    private final Emitter<StructuredRecord> emitter;
-    private final Schema schema;
+    private Emitter<StructuredRecord> emitter;
+    private ScriptDecoder.RecordDecoder decoder;
 
-    public JSEmitter(Emitter<StructuredRecord> emitter, Schema schema) {
+    public JSEmitter(Emitter<StructuredRecord> emitter, @Nullable Schema schema) {
       this.emitter = emitter;
-      this.schema = schema;
+      this.decoder = schema == null ? null : ScriptDecoder.forRecord(schema);
+    }
+
+    void reset(Emitter<StructuredRecord> emitter, Schema schema) {
+      this.emitter = emitter;
+      // the decoder is only compiled again if the output schema changes, which can only happen
+      // if there is no output schema configured and the input schema changes
+      if (decoder == null || !decoder.getSchema().equals(schema)) {
+        decoder = ScriptDecoder.forRecord(schema);
+      }
     }
 
     @Override
@@ -196,7 +209,7 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
     }
 
     private StructuredRecord decode(Map nativeObject) {
-      return decodeRecord(nativeObject, schema);
+      return decoder.decode(nativeObject);
     }
   }
 
@@ -223,156 +236,26 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
     return new InvalidEntry<>(errorCodeInt, (String) result.get("errorMsg"), input);
   }
 
-  private Object decode(Object object, Schema schema) {
-    Schema.Type type = schema.getType();
-
-    switch (type) {
-      case NULL:
-      case BOOLEAN:
-      case INT:
-      case LONG:
-      case FLOAT:
-      case DOUBLE:
-      case BYTES:
-      case STRING:
-        return decodeSimpleType(object, schema);
-      case ENUM:
-        break;
-      case ARRAY:
-        return decodeArray(jsObject2List(object), schema.getComponentSchema());
-      case MAP:
-        Schema keySchema = schema.getMapSchema().getKey();
-        Schema valSchema = schema.getMapSchema().getValue();
-        // Should be fine to cast since schema tells us what it is.
-        //noinspection unchecked
-        return decodeMap((Map<Object, Object>) object, keySchema, valSchema);
-      case RECORD:
-        return decodeRecord((Map) object, schema);
-      case UNION:
-        return decodeUnion(object, schema.getUnionSchemas());
-    }
-
-    throw new RuntimeException("Unable decode object with schema " + schema);
-  }
-
-  private StructuredRecord decodeRecord(Map nativeObject, Schema schema) {
-    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
-    for (Schema.Field field : schema.getFields()) {
-      String fieldName = field.getName();
-      Object fieldVal = nativeObject.get(fieldName);
-      builder.set(fieldName, decode(fieldVal, field.getSchema()));
-    }
-    return builder.build();
-  }
-
-  private List jsObject2List(Object object) {
-    if (somValuesMethod != null) {
-      // using Nashorn (Java 8+) -- convert ScriptObjectMirror to List
-      try {
-        return (List) somValuesMethod.invoke(object);
-      } catch (InvocationTargetException | IllegalAccessException | ClassCastException e) {
-        throw new RuntimeException("Failed to convert ScriptObjectMirror to List", e);
-      }
-    }
-    return (List) object;
-  }
-
-  @SuppressWarnings("RedundantCast")
-  private Object decodeSimpleType(Object object, Schema schema) {
-    Schema.Type type = schema.getType();
-    switch (type) {
-      case NULL:
-        return null;
-      // numbers come back as Numbers
-      case INT:
-        return ((Number) object).intValue();
-      case LONG:
-        return ((Number) object).longValue();
-      case FLOAT:
-        return ((Number) object).floatValue();
-      case BYTES:
-        List byteArr = jsObject2List(object);
-        byte[] output = new byte[byteArr.size()];
-        for (int i = 0; i < output.length; i++) {
-          // everything is a number
-          output[i] = ((Number) byteArr.get(i)).byteValue();
-        }
-        return output;
-      case DOUBLE:
-        // case so that if it's not really a double it will fail. This is possible for unions,
-        // where we don't know what the actual type of the object should be.
-        return ((Number) object).doubleValue();
-      case BOOLEAN:
-        return (Boolean) object;
-      case STRING:
-        return (String) object;
-    }
-    throw new RuntimeException("Unable decode object with schema " + schema);
-  }
-
-  private Map<Object, Object> decodeMap(Map<Object, Object> object, Schema keySchema, Schema valSchema) {
-    Map<Object, Object> output = Maps.newHashMap();
-    for (Map.Entry<Object, Object> entry : object.entrySet()) {
-      output.put(decode(entry.getKey(), keySchema), decode(entry.getValue(), valSchema));
-    }
-    return output;
-  }
-
-  private List<Object> decodeArray(List nativeArray, Schema componentSchema) {
-    List<Object> arr = Lists.newArrayListWithCapacity(nativeArray.size());
-    for (Object arrObj : nativeArray) {
-      arr.add(decode(arrObj, componentSchema));
-    }
-    return arr;
-  }
-
-  private Object decodeUnion(Object object, List<Schema> schemas) {
-    for (Schema schema : schemas) {
-      try {
-        return decode(object, schema);
-      } catch (Exception e) {
-        // could be ok, just move on and try the next schema
-      }
-    }
-
-    throw new RuntimeException("Unable decode union with schema " + schemas);
-  }
-
-  private void init(LookupProvider lookup) {
-    ScriptEngineManager manager = new ScriptEngineManager();
-    engine = manager.getEngineByName("JavaScript");
-    try {
-      engine.eval(ScriptConstants.HELPER_DEFINITION);
-    } catch (ScriptException e) {
-      // shouldn't happen
-      throw new IllegalStateException("Couldn't define helper functions", e);
+  private void init(final LookupProvider lookup) {
+    String inputMode = config.inputMode == null ? INPUT_MODE_JSON : config.inputMode;
+    if (!INPUT_MODE_JSON.equals(inputMode) && !INPUT_MODE_NATIVE.equals(inputMode)) {
+      throw new IllegalArgumentException(String.format("Invalid input mode '%s'. Must be '%s' or '%s'.",
+                                                       inputMode, INPUT_MODE_JSON, INPUT_MODE_NATIVE));
     }
+    nativeInput = INPUT_MODE_NATIVE.equals(inputMode);
 
-    JavaTypeConverters js = ((Invocable) engine).getInterface(
-      engine.get(ScriptConstants.HELPER_NAME), JavaTypeConverters.class);
-
-    LookupConfig lookupConfig;
+    final LookupConfig lookupConfig;
     try {
       lookupConfig = GSON.fromJson(config.lookup, LookupConfig.class);
     } catch (JsonSyntaxException e) {
       throw new IllegalArgumentException("Invalid lookup config. Expected map of string to string", e);
     }
 
-    engine.put(CONTEXT_NAME, new ScriptContext(LOG, metrics, lookup, lookupConfig, js));
-
-    try {
-      // this is pretty ugly, but doing this so that we can pass the 'input' json into the transform function.
-      // that is, we want people to implement
-      // function transform(input) { ... }
-      // rather than function transform() { ... } and have them access a global variable in the function
-
-      String script = String.format("function %s() { return transform(%s, %s, %s); }\n%s",
-                                    FUNCTION_NAME, VARIABLE_NAME, EMITTER_NAME, CONTEXT_NAME, config.script);
-      engine.eval(script);
-    } catch (ScriptException e) {
-      throw new IllegalArgumentException("Invalid script: " + e.getMessage(), e);
-    }
-    invocable = (Invocable) engine;
+    // this is pretty ugly, but doing this so that we can pass the 'input' json into the transform function.
+    // that is, we want people to implement
+    // function transform(input) { ... }
+    // rather than function transform() { ... } and have them access a global variable in the function.
+    // In native mode, the record is passed directly as an argument instead.
     if (config.schema != null) {
       try {
         schema = Schema.parseJson(config.schema);
@@ -380,5 +263,27 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
         throw new IllegalArgumentException("Unable to parse schema: " + e.getMessage(), e);
       }
     }
+
+    final String script;
+    if (nativeInput) {
+      script = String.format("function %s(input) { return transform(input, %s, %s); }\n%s",
+                             FUNCTION_NAME, EMITTER_NAME, CONTEXT_NAME, config.script);
+    } else {
+      script = String.format("function %s() { return transform(%s, %s, %s); }\n%s",
+                             FUNCTION_NAME, VARIABLE_NAME, EMITTER_NAME, CONTEXT_NAME, config.script);
+    }
+
+    try {
+      engines = new ScriptEnginePool(new ScriptEnginePool.Initializer() {
+        @Override
+        public void initialize(ScriptEngine engine, JavaTypeConverters js) throws ScriptException {
+          engine.put(CONTEXT_NAME, new ScriptContext(LOG, metrics, lookup, lookupConfig, js));
+          engine.put(EMITTER_NAME, new JSEmitter(null, schema));
+          ScriptEnginePool.compileAndEval(engine, script);
+        }
+      });
+    } catch (ScriptException e) {
+      throw new IllegalArgumentException("Invalid script: " + e.getMessage(), e);
+    }
   }
 }
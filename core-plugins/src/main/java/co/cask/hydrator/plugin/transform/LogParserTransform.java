@@ -25,8 +25,11 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
-import com.google.common.base.Throwables;
+import co.cask.cdap.etl.api.TransformContext;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.sf.uadetector.ReadableUserAgent;
 import net.sf.uadetector.UserAgentStringParser;
 import net.sf.uadetector.service.UADetectorServiceFactory;
@@ -34,6 +37,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.regex.Matcher;
@@ -61,6 +65,12 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
     "CLF, and Cloudfront formats.";
   private static final String INPUT_NAME_DESCRIPTION = "Name of the field in the input schema which encodes the " +
     "log information. The given field must be of type String or Bytes.";
+  private static final String USER_AGENT_CACHE_SIZE_DESCRIPTION = "Maximum number of user agents whose parsed " +
+    "browser and device are cached. Set to 0 to disable caching. Defaults to 10000.";
+  private static final String FAST_PARSER_DESCRIPTION = "Whether to parse logs with a single pass tokenizer " +
+    "instead of regular expressions. The tokenizer is faster, but only validates the fields that are part of " +
+    "the output. Defaults to false.";
+  private static final int DEFAULT_USER_AGENT_CACHE_SIZE = 10000;
   private static final Logger LOG = LoggerFactory.getLogger(LogParserTransform.class);
   //Regex used to parse a CLF log, each field is commented above
   private static final Pattern CLF_LOG_PATTERN = Pattern.compile(
@@ -87,9 +97,24 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
   private static final String S3_LOG = "S3";
   private static final String CLF_LOG = "CLF";
   private static final String CLOUDFRONT_LOG = "Cloudfront";
+  // SimpleDateFormat is not thread safe, so each thread gets its own instance
+  private static final ThreadLocal<DateFormat> SDF_STRFTIME = new ThreadLocal<DateFormat>() {
+    @Override
+    protected DateFormat initialValue() {
+      return new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z");
+    }
+  };
+  private static final ThreadLocal<DateFormat> SDF_CLOUDFRONT = new ThreadLocal<DateFormat>() {
+    @Override
+    protected DateFormat initialValue() {
+      return new SimpleDateFormat("yyyy-MM-dd:HH:mm:ss z");
+    }
+  };
   private final LogParserConfig config;
-  private final SimpleDateFormat sdfStrftime = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z");
-  private final SimpleDateFormat sdfCloudfront = new SimpleDateFormat("yyyy-MM-dd:HH:mm:ss z");
+  private StageMetrics metrics;
+  private UserAgentParser userAgentParser;
+  @Nullable
+  private Cache<String, UserAgentInfo> userAgentCache;
 
   public LogParserTransform(LogParserConfig config) {
     this.config = config;
@@ -115,9 +140,24 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
         validateInputSchemaType(inputNameSchema.getSchema().getType());
       }
     }
+    if (config.userAgentCacheSize != null && config.userAgentCacheSize < 0) {
+      throw new IllegalArgumentException("User agent cache size must not be negative: " + config.userAgentCacheSize);
+    }
     pipelineConfigurer.getStageConfigurer().setOutputSchema(LOG_SCHEMA);
   }
 
+  @Override
+  public void initialize(TransformContext context) throws Exception {
+    super.initialize(context);
+    metrics = context.getMetrics();
+    // the parser is thread safe and expensive to look up, so only look it up once
+    userAgentParser = new UserAgentParser();
+    int cacheSize = config.userAgentCacheSize == null ? DEFAULT_USER_AGENT_CACHE_SIZE : config.userAgentCacheSize;
+    if (cacheSize > 0) {
+      userAgentCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+  }
+
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) throws Exception {
     String log = getLog(input);
@@ -126,6 +166,11 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
       return;
     }
 
+    if (config.fastParser != null && config.fastParser) {
+      tokenize(log, emitter);
+      return;
+    }
+
     StructuredRecord output;
     if (S3_LOG.equals(config.logFormat)) {
       Matcher logMatcher = S3_LOG_PATTERN.matcher(log);
@@ -150,21 +195,8 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
       String[] fields = log.split("\\t");
       String uri = fields[7];
       String ip = fields[4];
-      long ts = sdfCloudfront.parse(String.format("%s:%s UTC", fields[0], fields[1])).getTime();
-      UserAgentStringParser parser = UADetectorServiceFactory.getResourceModuleParser();
-      ReadableUserAgent userAgent = parser.parse(fields[10]);
-      String browser = userAgent.getFamily().getName();
-      String device = userAgent.getDeviceCategory().getCategory().getName();
-      int httpStatus = Integer.parseInt(fields[8]);
-
-      output = StructuredRecord.builder(LOG_SCHEMA)
-        .set("uri", uri)
-        .set("ip", ip)
-        .set("browser", browser)
-        .set("device", device)
-        .set("httpStatus", httpStatus)
-        .set("ts", ts)
-        .build();
+      long ts = SDF_CLOUDFRONT.get().parse(String.format("%s:%s UTC", fields[0], fields[1])).getTime();
+      output = buildRecord(uri, ip, fields[10], Integer.parseInt(fields[8]), ts);
     }
 
     if (output != null) {
@@ -172,6 +204,38 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
     }
   }
 
+  /**
+   * Parses the log with the {@link LogTokenizer} instead of regular expressions.
+   */
+  private void tokenize(String log, Emitter<StructuredRecord> emitter) throws ParseException {
+    LogTokenizer.Fields fields = new LogTokenizer.Fields();
+    long ts;
+    if (S3_LOG.equals(config.logFormat)) {
+      if (!LogTokenizer.parseS3(log, fields)) {
+        LOG.debug("Couldn't parse log because log did not match the S3 format, log: {}", log);
+        return;
+      }
+      ts = parseTime(fields.time);
+    } else if (CLF_LOG.equals(config.logFormat)) {
+      if (!LogTokenizer.parseCLF(log, fields)) {
+        LOG.debug("Couldn't parse log because the log did not match the CLF format. log: {}", log);
+        return;
+      }
+      ts = parseTime(fields.time);
+    } else {
+      if (log.startsWith("#")) {
+        LOG.trace("Log is a comment. Ignoring...");
+        return;
+      }
+      if (!LogTokenizer.parseCloudfront(log, fields)) {
+        LOG.debug("Couldn't parse log because the log did not match the Cloudfront format. log: {}", log);
+        return;
+      }
+      ts = SDF_CLOUDFRONT.get().parse(fields.time).getTime();
+    }
+    emitter.emit(buildRecord(fields.uri, fields.ip, fields.userAgent, fields.httpStatus, ts));
+  }
+
   /**
    * Gets the log message from the input
    * @param input the StructuredRecord to extract the log from
@@ -237,31 +301,82 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
     }
 
     String uri = requestMatcher.group(2);
-    long ts = System.currentTimeMillis();
+    long ts = parseTime(logMatcher.group(indices[1]));
+    String ip = logMatcher.group(indices[2]);
+    int httpStatus = Integer.parseInt(logMatcher.group(indices[4]));
+    return buildRecord(uri, ip, logMatcher.group(indices[3]), httpStatus, ts);
+  }
+
+  /**
+   * Parses a time in the strftime format used by S3 and CLF logs, falling back to the current time.
+   */
+  private long parseTime(String time) {
     try {
-      ts = sdfStrftime.parse(logMatcher.group(indices[1])).getTime();
+      return SDF_STRFTIME.get().parse(time).getTime();
     } catch (ParseException e) {
       LOG.debug("Couldn't parse time from the input record, using current timestamp instead. Exception: {}",
                 e.getMessage());
+      return System.currentTimeMillis();
     }
+  }
 
-    String ip = logMatcher.group(indices[2]);
-    UserAgentStringParser parser = UADetectorServiceFactory.getResourceModuleParser();
-    ReadableUserAgent userAgent = parser.parse(logMatcher.group(indices[3]));
-    String browser = userAgent.getFamily().getName();
-    String device = userAgent.getDeviceCategory().getCategory().getName();
-    int httpStatus = Integer.parseInt(logMatcher.group(indices[4]));
-
+  private StructuredRecord buildRecord(String uri, String ip, String userAgentString, int httpStatus, long ts) {
+    UserAgentInfo userAgent = parseUserAgent(userAgentString);
     return StructuredRecord.builder(LOG_SCHEMA)
       .set("uri", uri)
       .set("ip", ip)
-      .set("browser", browser)
-      .set("device", device)
+      .set("browser", userAgent.browser)
+      .set("device", userAgent.device)
       .set("httpStatus", httpStatus)
       .set("ts", ts)
       .build();
   }
 
+  /**
+   * Gets the browser and device of a user agent, from the cache if it has been seen before.
+   */
+  private UserAgentInfo parseUserAgent(String userAgentString) {
+    if (userAgentCache != null) {
+      UserAgentInfo cached = userAgentCache.getIfPresent(userAgentString);
+      if (cached != null) {
+        metrics.count("useragent.cache.hits", 1);
+        return cached;
+      }
+      metrics.count("useragent.cache.misses", 1);
+    }
+    UserAgentInfo info = userAgentParser.parse(userAgentString);
+    if (userAgentCache != null) {
+      userAgentCache.put(userAgentString, info);
+    }
+    return info;
+  }
+
+  /**
+   * Parses user agents with the UADetector parser. The parser is held here rather than in a field of the transform,
+   * since CDAP inspects the fields of plugin classes, and the UADetector classes are not visible to it.
+   */
+  private static final class UserAgentParser {
+    private final UserAgentStringParser parser = UADetectorServiceFactory.getResourceModuleParser();
+
+    private UserAgentInfo parse(String userAgentString) {
+      ReadableUserAgent userAgent = parser.parse(userAgentString);
+      return new UserAgentInfo(userAgent.getFamily().getName(), userAgent.getDeviceCategory().getCategory().getName());
+    }
+  }
+
+  /**
+   * The browser and device parsed from a user agent.
+   */
+  private static final class UserAgentInfo {
+    private final String browser;
+    private final String device;
+
+    private UserAgentInfo(String browser, String device) {
+      this.browser = browser;
+      this.device = device;
+    }
+  }
+
   /**
    * Config class for LogParserTransform
    */
@@ -274,9 +389,28 @@ public class LogParserTransform extends Transform<StructuredRecord, StructuredRe
     @Description(INPUT_NAME_DESCRIPTION)
     private String inputName;
 
+    @Nullable
+    @Description(USER_AGENT_CACHE_SIZE_DESCRIPTION)
+    private Integer userAgentCacheSize;
+
+    @Nullable
+    @Description(FAST_PARSER_DESCRIPTION)
+    private Boolean fastParser;
+
     public LogParserConfig(String logFormat, String inputName) {
+      this(logFormat, inputName, DEFAULT_USER_AGENT_CACHE_SIZE);
+    }
+
+    public LogParserConfig(String logFormat, String inputName, @Nullable Integer userAgentCacheSize) {
+      this(logFormat, inputName, userAgentCacheSize, false);
+    }
+
+    public LogParserConfig(String logFormat, String inputName, @Nullable Integer userAgentCacheSize,
+                           @Nullable Boolean fastParser) {
       this.logFormat = logFormat;
       this.inputName = inputName;
+      this.userAgentCacheSize = userAgentCacheSize;
+      this.fastParser = fastParser;
     }
   }
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.transform;
+
+/**
+ * Single pass parser for the log formats supported by {@link LogParserTransform}, used instead of
+ * regular expressions. Each line is scanned once, and strings are only created for the fields that are
+ * part of the output of the transform. Fields that are not part of the output are only checked for
+ * the separators around them, so malformed lines may be accepted or rejected differently than with
+ * the regular expressions.
+ */
+final class LogTokenizer {
+  // the fields in a Cloudfront log that are part of the output
+  private static final int CLOUDFRONT_DATE = 0;
+  private static final int CLOUDFRONT_TIME = 1;
+  private static final int CLOUDFRONT_IP = 4;
+  private static final int CLOUDFRONT_URI = 7;
+  private static final int CLOUDFRONT_STATUS = 8;
+  private static final int CLOUDFRONT_USER_AGENT = 10;
+
+  /**
+   * The fields parsed from a log line.
+   */
+  static final class Fields {
+    String uri;
+    String time;
+    String ip;
+    String userAgent;
+    int httpStatus;
+  }
+
+  private LogTokenizer() {
+    // no-op
+  }
+
+  /**
+   * Parses a line in the Combined Log Format:
+   * ip ident user [time] "request" status size "referrer" "user agent"
+   *
+   * @return whether the line was in the expected format
+   */
+  static boolean parseCLF(String line, Fields fields) {
+    int ipEnd = token(line, 0);
+    if (ipEnd < 0 || !isIp(line, 0, ipEnd)) {
+      return false;
+    }
+    // ident and user
+    int pos = token(line, space(line, ipEnd));
+    pos = token(line, space(line, pos));
+    int timeStart = space(line, pos);
+    int timeEnd = enclosed(line, timeStart, '[', ']');
+    int requestStart = space(line, timeEnd + 1);
+    int requestEnd = enclosed(line, requestStart, '"', '"');
+    int statusStart = space(line, requestEnd + 1);
+    int statusEnd = status(line, statusStart);
+    // size and referrer
+    pos = token(line, space(line, statusEnd));
+    pos = enclosed(line, space(line, pos), '"', '"');
+    int userAgentStart = space(line, pos + 1);
+    int userAgentEnd = enclosed(line, userAgentStart, '"', '"');
+    if (userAgentEnd < 0 || userAgentEnd != line.length() - 1) {
+      return false;
+    }
+
+    fields.uri = uri(line, requestStart + 1, requestEnd);
+    if (fields.uri == null) {
+      return false;
+    }
+    fields.ip = line.substring(0, ipEnd);
+    fields.time = line.substring(timeStart + 1, timeEnd);
+    fields.userAgent = line.substring(userAgentStart + 1, userAgentEnd);
+    fields.httpStatus = parseStatus(line, statusStart);
+    return true;
+  }
+
+  /**
+   * Parses a line in the S3 server access log format:
+   * owner bucket [time] ip requester requestId operation key "request" status error bytesSent objectSize
+   * totalTime turnAroundTime "referrer" "user agent" versionId
+   *
+   * @return whether the line was in the expected format
+   */
+  static boolean parseS3(String line, Fields fields) {
+    // owner and bucket
+    int pos = token(line, 0);
+    pos = token(line, space(line, pos));
+    int timeStart = space(line, pos);
+    int timeEnd = enclosed(line, timeStart, '[', ']');
+    int ipStart = space(line, timeEnd + 1);
+    int ipEnd = token(line, ipStart);
+    if (ipEnd < 0 || !isIp(line, ipStart, ipEnd)) {
+      return false;
+    }
+    // requester, request id, operation, and key
+    pos = ipEnd;
+    for (int i = 0; i < 4; i++) {
+      pos = token(line, space(line, pos));
+    }
+    int requestStart = space(line, pos);
+    int requestEnd = enclosed(line, requestStart, '"', '"');
+    int statusStart = space(line, requestEnd + 1);
+    int statusEnd = status(line, statusStart);
+    // error code, bytes sent, object size, total time, and turn around time
+    pos = statusEnd;
+    for (int i = 0; i < 5; i++) {
+      pos = token(line, space(line, pos));
+    }
+    // referrer
+    pos = enclosed(line, space(line, pos), '"', '"');
+    int userAgentStart = space(line, pos + 1);
+    int userAgentEnd = enclosed(line, userAgentStart, '"', '"');
+    // version id
+    pos = space(line, userAgentEnd + 1);
+    if (pos < 0 || pos >= line.length()) {
+      return false;
+    }
+
+    fields.uri = uri(line, requestStart + 1, requestEnd);
+    if (fields.uri == null) {
+      return false;
+    }
+    fields.ip = line.substring(ipStart, ipEnd);
+    fields.time = line.substring(timeStart + 1, timeEnd);
+    fields.userAgent = line.substring(userAgentStart + 1, userAgentEnd);
+    fields.httpStatus = parseStatus(line, statusStart);
+    return true;
+  }
+
+  /**
+   * Parses a tab separated line in the Cloudfront access log format. The date and time fields are
+   * combined into a time of the form 'yyyy-MM-dd:HH:mm:ss UTC'.
+   *
+   * @return whether the line was in the expected format
+   */
+  static boolean parseCloudfront(String line, Fields fields) {
+    String date = null;
+    int start = 0;
+    for (int field = 0; field <= CLOUDFRONT_USER_AGENT; field++) {
+      int end = line.indexOf('\t', start);
+      if (end < 0) {
+        if (field != CLOUDFRONT_USER_AGENT) {
+          return false;
+        }
+        end = line.length();
+      }
+      switch (field) {
+        case CLOUDFRONT_DATE:
+          date = line.substring(start, end);
+          break;
+        case CLOUDFRONT_TIME:
+          fields.time = date + ":" + line.substring(start, end) + " UTC";
+          break;
+        case CLOUDFRONT_IP:
+          fields.ip = line.substring(start, end);
+          break;
+        case CLOUDFRONT_URI:
+          fields.uri = line.substring(start, end);
+          break;
+        case CLOUDFRONT_STATUS:
+          fields.httpStatus = Integer.parseInt(line.substring(start, end));
+          break;
+        case CLOUDFRONT_USER_AGENT:
+          fields.userAgent = line.substring(start, end);
+          break;
+        default:
+          // field is not part of the output
+      }
+      start = end + 1;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the end of the non-empty run of non-whitespace characters starting at the given position,
+   * or -1 if there is no such run.
+   */
+  private static int token(String line, int pos) {
+    if (pos < 0) {
+      return -1;
+    }
+    int end = pos;
+    while (end < line.length() && !isWhitespace(line.charAt(end))) {
+      end++;
+    }
+    return end == pos ? -1 : end;
+  }
+
+  /**
+   * Returns the position after the single space expected at the given position, or -1 if there is no space.
+   */
+  private static int space(String line, int pos) {
+    if (pos < 0 || pos >= line.length() || line.charAt(pos) != ' ') {
+      return -1;
+    }
+    return pos + 1;
+  }
+
+  /**
+   * Returns the position of the closing character of a non-empty value enclosed in the given characters,
+   * or -1 if there is no such value at the given position.
+   */
+  private static int enclosed(String line, int pos, char open, char close) {
+    if (pos < 0 || pos >= line.length() || line.charAt(pos) != open) {
+      return -1;
+    }
+    int end = line.indexOf(close, pos + 1);
+    return end == pos + 1 ? -1 : end;
+  }
+
+  /**
+   * Returns the end of the three digit status code at the given position, or -1 if there is no status code.
+   */
+  private static int status(String line, int pos) {
+    if (pos < 0 || pos + 3 > line.length()) {
+      return -1;
+    }
+    for (int i = pos; i < pos + 3; i++) {
+      if (!isDigit(line.charAt(i))) {
+        return -1;
+      }
+    }
+    return pos + 3;
+  }
+
+  private static int parseStatus(String line, int pos) {
+    return (line.charAt(pos) - '0') * 100 + (line.charAt(pos + 1) - '0') * 10 + (line.charAt(pos + 2) - '0');
+  }
+
+  /**
+   * Returns the URI of a request of the form 'method uri ...', or null if the request is not of that form.
+   */
+  private static String uri(String line, int start, int end) {
+    int pos = start;
+    while (pos < end && !isWhitespace(line.charAt(pos))) {
+      pos++;
+    }
+    // the method must not be empty, and must be followed by a whitespace
+    if (pos == start || pos >= end) {
+      return null;
+    }
+    int uriStart = pos + 1;
+    int uriEnd = uriStart;
+    while (uriEnd < end && !isWhitespace(line.charAt(uriEnd))) {
+      uriEnd++;
+    }
+    return uriEnd == uriStart ? null : line.substring(uriStart, uriEnd);
+  }
+
+  /**
+   * Returns whether the given range is an IPv4 address made of digits and dots, or of the form '::1'.
+   */
+  private static boolean isIp(String line, int start, int end) {
+    if (end - start == 3 && line.charAt(start) == ':' && line.charAt(start + 1) == ':') {
+      return isDigit(line.charAt(start + 2));
+    }
+    for (int i = start; i < end; i++) {
+      char c = line.charAt(i);
+      if (c != '.' && !isDigit(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  // same as the \s character class in regular expressions
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+}
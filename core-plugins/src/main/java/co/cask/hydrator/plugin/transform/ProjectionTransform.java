@@ -31,6 +31,8 @@ import co.cask.cdap.etl.api.TransformContext;
 import co.cask.hydrator.plugin.common.KeyValueListParser;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.Lists;
@@ -95,11 +97,14 @@ public class ProjectionTransform extends Transform<StructuredRecord, StructuredR
   }
 
   private static final Pattern fieldDelimiter = Pattern.compile("\\s*,\\s*");
+  // maximum number of input schemas to cache projections for
+  private static final int MAX_CACHED_SCHEMAS = 100;
   private Set<String> fieldsToDrop = Sets.newHashSet();
   private BiMap<String, String> fieldsToRename = HashBiMap.create();
   private Map<String, Schema.Type> fieldsToConvert = Maps.newHashMap();
-  // cache input schema hash to output schema so we don't have to build it each time
-  private Map<Schema, Schema> schemaCache = Maps.newHashMap();
+  // cache input schema to its projection so we don't have to build it each time
+  private final Cache<Schema, Projection> projectionCache =
+    CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SCHEMAS).build();
 
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) throws IllegalArgumentException {
@@ -109,7 +114,7 @@ public class ProjectionTransform extends Transform<StructuredRecord, StructuredR
     Schema outputSchema = null;
     if (pipelineConfigurer.getStageConfigurer().getInputSchema() != null) {
       //validate the input schema and get the output schema for it
-      outputSchema = getOutputSchema(pipelineConfigurer.getStageConfigurer().getInputSchema());
+      outputSchema = getProjection(pipelineConfigurer.getStageConfigurer().getInputSchema()).outputSchema;
     }
     pipelineConfigurer.getStageConfigurer().setOutputSchema(outputSchema);
   }
@@ -122,32 +127,7 @@ public class ProjectionTransform extends Transform<StructuredRecord, StructuredR
 
   @Override
   public void transform(StructuredRecord valueIn, Emitter<StructuredRecord> emitter) {
-    Schema inputSchema = valueIn.getSchema();
-    Schema outputSchema = getOutputSchema(inputSchema);
-    StructuredRecord.Builder builder = StructuredRecord.builder(outputSchema);
-    for (Schema.Field inputField : inputSchema.getFields()) {
-      String inputFieldName = inputField.getName();
-      if (fieldsToDrop.contains(inputFieldName)) {
-        continue;
-      }
-
-      // get the corresponding output field name
-      String outputFieldName = fieldsToRename.get(inputFieldName);
-      if (outputFieldName == null) {
-        outputFieldName = inputFieldName;
-      }
-
-      Schema.Field outputField = outputSchema.getField(outputFieldName);
-      Object inputVal = valueIn.get(inputFieldName);
-
-      // if we need to convert the value, convert it. otherwise just pass the value through
-      if (fieldsToConvert.containsKey(inputFieldName)) {
-        convertAndSet(builder, outputFieldName, inputVal, inputField.getSchema(), outputField.getSchema());
-      } else {
-        builder.set(outputFieldName, inputVal);
-      }
-    }
-    emitter.emit(builder.build());
+    emitter.emit(getProjection(valueIn.getSchema()).project(valueIn));
   }
 
   private void init() {
@@ -190,128 +170,15 @@ public class ProjectionTransform extends Transform<StructuredRecord, StructuredR
     }
   }
 
-  private void convertAndSet(StructuredRecord.Builder builder, String fieldName, Object val,
-                             Schema inputSchema, Schema outputSchema) {
-    // guaranteed that if the input type is nullable, the output type is also nullable.
-    Schema.Type inputType = inputSchema.getType();
-    Schema.Type outputType = outputSchema.getType();
-    if (inputSchema.isNullable()) {
-      if (val == null) {
-        builder.set(fieldName, null);
-        return;
-      }
-      inputType = inputSchema.getNonNullable().getType();
-      outputType = outputSchema.getNonNullable().getType();
-    }
-
-    // if the input is a string, try and do some sensible conversion
-    if (inputType == Schema.Type.STRING) {
-      builder.convertAndSet(fieldName, (String) val);
-    } else {
-      // otherwise, just try to cast it.
-      builder.set(fieldName, convertPrimitive(val, inputType, outputType));
-    }
-  }
-
-  private Object convertPrimitive(Object val, Schema.Type inputType, Schema.Type outputType) {
-    if (inputType == outputType) {
-      return val;
-    }
-
-    // guaranteed input and output types are non-null simple types
-    switch(inputType) {
-      // if input is bytes, try to convert the bytes to the correct type
-      case BYTES:
-        byte[] bytesVal;
-        if (val instanceof ByteBuffer) {
-          bytesVal = Bytes.toBytes((ByteBuffer) val);
-        } else {
-          bytesVal = (byte[]) val;
-        }
-        switch(outputType) {
-          case BOOLEAN:
-            return Bytes.toBoolean(bytesVal);
-          case INT:
-            return Bytes.toInt(bytesVal);
-          case LONG:
-            return Bytes.toLong(bytesVal);
-          case FLOAT:
-            return Bytes.toFloat(bytesVal);
-          case DOUBLE:
-            return Bytes.toDouble(bytesVal);
-          case STRING:
-            return Bytes.toString(bytesVal);
-        }
-        break;
-      case BOOLEAN:
-        Boolean boolVal = (Boolean) val;
-        switch (outputType) {
-          case STRING:
-            return String.valueOf(boolVal);
-          case BYTES:
-            return Bytes.toBytes(boolVal);
-        }
-        break;
-      case INT:
-        Integer intVal = (Integer) val;
-        switch (outputType) {
-          case LONG:
-            return intVal.longValue();
-          case FLOAT:
-            return intVal.floatValue();
-          case DOUBLE:
-            return intVal.doubleValue();
-          case STRING:
-            return String.valueOf(intVal);
-          case BYTES:
-            return Bytes.toBytes(intVal);
-        }
-        break;
-      case LONG:
-        Long longVal = (Long) val;
-        switch (outputType) {
-          case FLOAT:
-            return longVal.floatValue();
-          case DOUBLE:
-            return longVal.doubleValue();
-          case STRING:
-            return String.valueOf(longVal);
-          case BYTES:
-            return Bytes.toBytes(longVal);
-        }
-        break;
-      case FLOAT:
-        Float floatVal = (Float) val;
-        switch (outputType) {
-          case DOUBLE:
-            return floatVal.doubleValue();
-          case STRING:
-            return String.valueOf(floatVal);
-          case BYTES:
-            return Bytes.toBytes(floatVal);
-        }
-        break;
-      case DOUBLE:
-        Double doubleVal = (Double) val;
-        switch (outputType) {
-          case STRING:
-            return String.valueOf(doubleVal);
-          case BYTES:
-            return Bytes.toBytes(doubleVal);
-        }
-        break;
-    }
-
-    throw new IllegalArgumentException("Cannot convert type " + inputType + " to type " + outputType);
-  }
-
-  private Schema getOutputSchema(Schema inputSchema) {
-    Schema output = schemaCache.get(inputSchema);
-    if (output != null) {
-      return output;
+  private Projection getProjection(Schema inputSchema) {
+    Projection projection = projectionCache.getIfPresent(inputSchema);
+    if (projection != null) {
+      return projection;
     }
 
     List<Schema.Field> outputFields = Lists.newArrayList();
+    List<String> inputNames = Lists.newArrayList();
+    List<FieldConverter> converters = Lists.newArrayList();
     for (Schema.Field inputField : inputSchema.getFields()) {
       String inputFieldName = inputField.getName();
       if (fieldsToDrop.contains(inputFieldName)) {
@@ -319,9 +186,11 @@ public class ProjectionTransform extends Transform<StructuredRecord, StructuredR
       }
 
       Schema outputFieldSchema = inputField.getSchema();
+      FieldConverter converter = null;
       // if this is a field that will be converted, figure out the desired schema
       if (fieldsToConvert.containsKey(inputFieldName)) {
-        outputFieldSchema = Schema.of(fieldsToConvert.get(inputFieldName));
+        Schema.Type outputFieldType = fieldsToConvert.get(inputFieldName);
+        outputFieldSchema = Schema.of(outputFieldType);
         Schema inputFieldSchema = inputField.getSchema();
         Schema.Type inputFieldType = inputFieldSchema.getType();
 
@@ -334,6 +203,7 @@ public class ProjectionTransform extends Transform<StructuredRecord, StructuredR
         if (!inputFieldType.isSimpleType() || inputFieldType == Schema.Type.NULL) {
           throw new IllegalArgumentException("Field " + inputFieldName + " is of unconvertable type " + inputFieldType);
         }
+        converter = new FieldConverter(inputFieldSchema.isNullable(), inputFieldType, outputFieldType);
       }
 
       String outputFieldName = inputFieldName;
@@ -342,10 +212,279 @@ public class ProjectionTransform extends Transform<StructuredRecord, StructuredR
       }
 
       outputFields.add(Schema.Field.of(outputFieldName, outputFieldSchema));
+      inputNames.add(inputFieldName);
+      converters.add(converter);
+    }
+
+    Schema outputSchema = Schema.recordOf(inputSchema.getRecordName() + ".projected", outputFields);
+    projection = new Projection(outputSchema, inputNames, converters);
+    projectionCache.put(inputSchema, projection);
+    return projection;
+  }
+
+  /**
+   * Projection of records of one input schema, compiled once for the schema. The fields to keep, their output
+   * names and the converters for their values are stored in arrays, so that projecting a record does not need to
+   * look up the drop, rename and convert settings or the types of the fields again.
+   */
+  private static final class Projection {
+    private final Schema outputSchema;
+    private final String[] inputNames;
+    private final String[] outputNames;
+    // null for fields that are passed through as is
+    private final FieldConverter[] converters;
+
+    private Projection(Schema outputSchema, List<String> inputNames, List<FieldConverter> converters) {
+      this.outputSchema = outputSchema;
+      this.inputNames = inputNames.toArray(new String[inputNames.size()]);
+      this.outputNames = new String[this.inputNames.length];
+      for (int i = 0; i < outputNames.length; i++) {
+        outputNames[i] = outputSchema.getFields().get(i).getName();
+      }
+      this.converters = converters.toArray(new FieldConverter[converters.size()]);
+    }
+
+    private StructuredRecord project(StructuredRecord input) {
+      StructuredRecord.Builder builder = StructuredRecord.builder(outputSchema);
+      for (int i = 0; i < inputNames.length; i++) {
+        Object inputVal = input.get(inputNames[i]);
+        if (converters[i] == null) {
+          builder.set(outputNames[i], inputVal);
+        } else {
+          converters[i].convertAndSet(builder, outputNames[i], inputVal);
+        }
+      }
+      return builder.build();
+    }
+  }
+
+  /**
+   * Converts the value of a field to the type it should have in the output.
+   */
+  private static final class FieldConverter {
+    // guaranteed that if the input type is nullable, the output type is also nullable.
+    private final boolean nullable;
+    // null if the input is a string, which is converted by the record builder
+    @Nullable
+    private final ValueConverter valueConverter;
+
+    private FieldConverter(boolean nullable, Schema.Type inputType, Schema.Type outputType) {
+      this.nullable = nullable;
+      this.valueConverter = inputType == Schema.Type.STRING ? null : ValueConverter.of(inputType, outputType);
+    }
+
+    private void convertAndSet(StructuredRecord.Builder builder, String fieldName, Object val) {
+      if (nullable && val == null) {
+        builder.set(fieldName, null);
+      } else if (valueConverter == null) {
+        // if the input is a string, try and do some sensible conversion
+        builder.convertAndSet(fieldName, (String) val);
+      } else {
+        // otherwise, just try to cast it.
+        builder.set(fieldName, valueConverter.convert(val));
+      }
+    }
+  }
+
+  /**
+   * Converts a non-null value of a simple type to another simple type.
+   */
+  private abstract static class ValueConverter {
+    private static final ValueConverter IDENTITY = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return val;
+      }
+    };
+    private static final ValueConverter TO_STRING = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return String.valueOf(val);
+      }
+    };
+    private static final ValueConverter TO_LONG = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return ((Number) val).longValue();
+      }
+    };
+    private static final ValueConverter TO_FLOAT = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return ((Number) val).floatValue();
+      }
+    };
+    private static final ValueConverter TO_DOUBLE = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return ((Number) val).doubleValue();
+      }
+    };
+    private static final ValueConverter BOOLEAN_TO_BYTES = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toBytes((Boolean) val);
+      }
+    };
+    private static final ValueConverter INT_TO_BYTES = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toBytes((Integer) val);
+      }
+    };
+    private static final ValueConverter LONG_TO_BYTES = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toBytes((Long) val);
+      }
+    };
+    private static final ValueConverter FLOAT_TO_BYTES = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toBytes((Float) val);
+      }
+    };
+    private static final ValueConverter DOUBLE_TO_BYTES = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toBytes((Double) val);
+      }
+    };
+    private static final ValueConverter BYTES_TO_BOOLEAN = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toBoolean(toByteArray(val));
+      }
+    };
+    private static final ValueConverter BYTES_TO_INT = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toInt(toByteArray(val));
+      }
+    };
+    private static final ValueConverter BYTES_TO_LONG = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toLong(toByteArray(val));
+      }
+    };
+    private static final ValueConverter BYTES_TO_FLOAT = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toFloat(toByteArray(val));
+      }
+    };
+    private static final ValueConverter BYTES_TO_DOUBLE = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toDouble(toByteArray(val));
+      }
+    };
+    private static final ValueConverter BYTES_TO_STRING = new ValueConverter() {
+      @Override
+      Object convert(Object val) {
+        return Bytes.toString(toByteArray(val));
+      }
+    };
+
+    abstract Object convert(Object val);
+
+    /**
+     * Returns the converter from the given input type to the given output type. Both types are guaranteed to be
+     * non-null simple types.
+     */
+    private static ValueConverter of(final Schema.Type inputType, final Schema.Type outputType) {
+      if (inputType == outputType) {
+        return IDENTITY;
+      }
+
+      switch (inputType) {
+        // if input is bytes, try to convert the bytes to the correct type
+        case BYTES:
+          switch (outputType) {
+            case BOOLEAN:
+              return BYTES_TO_BOOLEAN;
+            case INT:
+              return BYTES_TO_INT;
+            case LONG:
+              return BYTES_TO_LONG;
+            case FLOAT:
+              return BYTES_TO_FLOAT;
+            case DOUBLE:
+              return BYTES_TO_DOUBLE;
+            case STRING:
+              return BYTES_TO_STRING;
+          }
+          break;
+        case BOOLEAN:
+          switch (outputType) {
+            case STRING:
+              return TO_STRING;
+            case BYTES:
+              return BOOLEAN_TO_BYTES;
+          }
+          break;
+        case INT:
+          switch (outputType) {
+            case LONG:
+              return TO_LONG;
+            case FLOAT:
+              return TO_FLOAT;
+            case DOUBLE:
+              return TO_DOUBLE;
+            case STRING:
+              return TO_STRING;
+            case BYTES:
+              return INT_TO_BYTES;
+          }
+          break;
+        case LONG:
+          switch (outputType) {
+            case FLOAT:
+              return TO_FLOAT;
+            case DOUBLE:
+              return TO_DOUBLE;
+            case STRING:
+              return TO_STRING;
+            case BYTES:
+              return LONG_TO_BYTES;
+          }
+          break;
+        case FLOAT:
+          switch (outputType) {
+            case DOUBLE:
+              return TO_DOUBLE;
+            case STRING:
+              return TO_STRING;
+            case BYTES:
+              return FLOAT_TO_BYTES;
+          }
+          break;
+        case DOUBLE:
+          switch (outputType) {
+            case STRING:
+              return TO_STRING;
+            case BYTES:
+              return DOUBLE_TO_BYTES;
+          }
+          break;
+      }
+
+      // the output schema can still be built for unsupported conversions,
+      // so only fail once a value actually needs to be converted
+      return new ValueConverter() {
+        @Override
+        Object convert(Object val) {
+          throw new IllegalArgumentException("Cannot convert type " + inputType + " to type " + outputType);
+        }
+      };
     }
 
-    output = Schema.recordOf(inputSchema.getRecordName() + ".projected", outputFields);
-    schemaCache.put(inputSchema, output);
-    return output;
+    private static byte[] toByteArray(Object val) {
+      if (val instanceof ByteBuffer) {
+        return Bytes.toBytes((ByteBuffer) val);
+      }
+      return (byte[]) val;
+    }
   }
 }
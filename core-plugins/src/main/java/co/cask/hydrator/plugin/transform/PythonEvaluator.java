@@ -30,22 +30,25 @@ import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
+import co.cask.hydrator.plugin.common.StructuredRecordMap;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.python.core.Py;
 import org.python.core.PyCode;
 import org.python.core.PyException;
+import org.python.core.PyObject;
 import org.python.util.PythonInterpreter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.annotation.Nullable;
 
 /**
@@ -55,15 +58,16 @@ import javax.annotation.Nullable;
 @Name("PythonEvaluator")
 @Description("Executes user-provided Python code that transforms one record into another.")
 public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecord> {
-  private static final String INPUT_STRUCTURED_RECORD_VARIABLE_NAME = "dont_name_your_variable_this1";
-  private static final String EMITTER_VARIABLE_NAME = "dont_name_your_variable_this2";
-  private static final String CONTEXT_NAME = "dont_name_your_context_this";
+  private static final String FUNCTION_NAME = "transform";
   private final Config config;
+  // the evaluator of every thread is also tracked in 'allEvaluators', so that destroy() can release all of them
+  private final Queue<Evaluator> allEvaluators = new ConcurrentLinkedQueue<>();
   private Schema schema;
   private StageMetrics metrics;
   private Logger logger;
-  private PythonInterpreter interpreter;
   private PyCode compiledScript;
+  private ScriptContext scriptContext;
+  private ThreadLocal<Evaluator> evaluators;
 
   /**
    * Configuration for the script transform.
@@ -111,24 +115,38 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
 
   @Override
   public void destroy() {
-    if (interpreter != null) {
-      interpreter.cleanup();
+    Evaluator evaluator;
+    while ((evaluator = allEvaluators.poll()) != null) {
+      evaluator.release();
     }
   }
 
+  /**
+   * @return the number of interpreters that have been created and not released yet
+   */
+  @VisibleForTesting
+  int getInterpreterCount() {
+    return allEvaluators.size();
+  }
+
   /**
    * Emitter to be used from within Python code
    */
   public final class PythonEmitter implements Emitter<Map> {
 
-    private final Emitter<StructuredRecord> emitter;
-    private final Schema schema;
+    private Emitter<StructuredRecord> emitter;
+    private Schema schema;
 
     public PythonEmitter(Emitter<StructuredRecord> emitter, Schema schema) {
       this.emitter = emitter;
       this.schema = schema;
     }
 
+    void reset(Emitter<StructuredRecord> emitter, Schema schema) {
+      this.emitter = emitter;
+      this.schema = schema;
+    }
+
     @Override
     public void emit(Map value) {
       emitter.emit(decode(value));
@@ -166,11 +184,9 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
   @Override
   public void transform(StructuredRecord input, final Emitter<StructuredRecord> emitter) {
     try {
-      Emitter<Map> pythonEmitter = new PythonEmitter(emitter, schema == null ? input.getSchema() : schema);
-      interpreter.set(INPUT_STRUCTURED_RECORD_VARIABLE_NAME, encode(input, input.getSchema()));
-      interpreter.set(EMITTER_VARIABLE_NAME, pythonEmitter);
-      Py.runCode(compiledScript, interpreter.getLocals(), interpreter.getLocals());
-
+      Evaluator evaluator = evaluators.get();
+      evaluator.emitter.reset(emitter, schema == null ? input.getSchema() : schema);
+      evaluator.function.__call__(Py.java2py(new StructuredRecordMap(input)), evaluator.pyEmitter, evaluator.pyContext);
     } catch (PyException e) {
       // We put the stack trace as the exception message, because otherwise the information from PyException is lost.
       // PyException only exposes the actual cause (Python stack trace) if printStackTrace() is called on it.
@@ -178,74 +194,6 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
     }
   }
 
-  private Object encode(Object object, Schema schema) {
-    Schema.Type type = schema.getType();
-
-    switch (type) {
-      case NULL:
-      case BOOLEAN:
-      case INT:
-      case LONG:
-      case FLOAT:
-      case DOUBLE:
-      case BYTES:
-      case STRING:
-        return object;
-      case ENUM:
-        break;
-      case ARRAY:
-        return encodeArray((List) object, schema.getComponentSchema());
-      case MAP:
-        Schema keySchema = schema.getMapSchema().getKey();
-        Schema valSchema = schema.getMapSchema().getValue();
-        // Should be fine to cast since schema tells us what it is.
-        //noinspection unchecked
-        return encodeMap((Map<Object, Object>) object, keySchema, valSchema);
-      case RECORD:
-        return encodeRecord((StructuredRecord) object, schema);
-      case UNION:
-        return encodeUnion(object, schema.getUnionSchemas());
-    }
-
-    throw new RuntimeException("Unable to encode object with schema " + schema);
-  }
-
-  private Object encodeRecord(StructuredRecord record, Schema schema) {
-    Map<String, Object> map = new HashMap<>();
-    for (Schema.Field field : schema.getFields()) {
-      map.put(field.getName(), encode(record.get(field.getName()), field.getSchema()));
-    }
-    return map;
-  }
-
-  private Object encodeUnion(Object object, List<Schema> unionSchemas) {
-    for (Schema schema : unionSchemas) {
-      try {
-        return encode(object, schema);
-      } catch (Exception e) {
-        // could be ok, just move on and try the next schema
-      }
-    }
-
-    throw new RuntimeException("Unable to encode union with schema " + unionSchemas);
-  }
-
-  private Object encodeMap(Map<Object, Object> map, Schema keySchema, Schema valSchema) {
-    Map<Object, Object> encoded = new HashMap<>();
-    for (Map.Entry<Object, Object> entry : map.entrySet()) {
-      encoded.put(encode(entry.getKey(), keySchema), encode(entry.getValue(), valSchema));
-    }
-    return encoded;
-  }
-
-  private Object encodeArray(List list, Schema componentSchema) {
-    List<Object> encoded = new ArrayList<>();
-    for (Object object : list) {
-      encoded.add(encode(object, componentSchema));
-    }
-    return encoded;
-  }
-
   private Object decode(Object object, Schema schema) {
     Schema.Type type = schema.getType();
 
@@ -346,8 +294,7 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
   }
 
   private void init() {
-    interpreter = new PythonInterpreter();
-    interpreter.set(CONTEXT_NAME, new ScriptContext(
+    scriptContext = new ScriptContext(
       logger, metrics,
       new LookupProvider() {
         @Override
@@ -361,20 +308,61 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
         public Object mapToJSObject(Map<?, ?> map) {
           return null;
         }
-      }));
-
-    // this is pretty ugly, but doing this so that we can pass the 'input' record into the transform function.
-    // that is, we want people to implement
-    // def transform(input, emitter, context): ...
-    // rather than def transform(): ...  and have them access the input, emitter, and context via global variables
+      });
 
-    String script = String.format("%s\ntransform(%s, %s, %s)",
-                                  config.script, INPUT_STRUCTURED_RECORD_VARIABLE_NAME,
-                                  EMITTER_VARIABLE_NAME, CONTEXT_NAME);
-    compiledScript = interpreter.compile(script);
+    // the script is only run once per interpreter, to define the transform function. The function is then
+    // called directly for every record, passing the input, emitter, and context as arguments.
+    PythonInterpreter interpreter = new PythonInterpreter();
+    compiledScript = interpreter.compile(config.script);
     if (config.schema != null) {
       schema = parseJson(config.schema);
     }
+    // use the interpreter for the current thread right away to fail if the script is invalid
+    Evaluator evaluator = new Evaluator(interpreter);
+
+    // each thread gets its own interpreter, so that records can be transformed concurrently
+    evaluators = new ThreadLocal<Evaluator>() {
+      @Override
+      protected Evaluator initialValue() {
+        return new Evaluator(new PythonInterpreter());
+      }
+    };
+    evaluators.set(evaluator);
+  }
+
+  /**
+   * An interpreter with the script loaded into it, along with the objects passed to the transform function.
+   */
+  private final class Evaluator {
+    private PythonInterpreter interpreter;
+    private PyObject function;
+    private PythonEmitter emitter;
+    private PyObject pyEmitter;
+    private PyObject pyContext;
+
+    private Evaluator(PythonInterpreter interpreter) {
+      this.interpreter = interpreter;
+      allEvaluators.add(this);
+      interpreter.exec(compiledScript);
+      function = interpreter.get(FUNCTION_NAME);
+      if (function == null || !function.isCallable()) {
+        throw new IllegalArgumentException("The script must define a function called '" + FUNCTION_NAME + "'.");
+      }
+      emitter = new PythonEmitter(null, schema);
+      pyEmitter = Py.java2py(emitter);
+      pyContext = Py.java2py(scriptContext);
+    }
+
+    // the thread local that holds this evaluator is only cleared when its thread ends, so drop everything it
+    // references, which includes the interpreter and the plugin itself
+    private void release() {
+      interpreter.cleanup();
+      interpreter = null;
+      function = null;
+      emitter = null;
+      pyEmitter = null;
+      pyContext = null;
+    }
   }
 
   private Schema parseJson(String schema) {
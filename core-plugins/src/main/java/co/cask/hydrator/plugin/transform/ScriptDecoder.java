@@ -0,0 +1,367 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.transform;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts objects returned by JavaScript into the Java objects expected by a {@link Schema}.
+ *
+ * A decoder is compiled once for a schema, as a tree with one decoder for each nested schema, so that decoding
+ * an object does not need to interpret the schema again. Unions are resolved by looking at the type of the object
+ * rather than by trying every branch.
+ */
+abstract class ScriptDecoder {
+
+  /**
+   * Decodes the given object returned by JavaScript.
+   */
+  abstract Object decode(Object object);
+
+  /**
+   * Returns whether the given object could be decoded by this decoder. Only used to pick the branch of a union.
+   */
+  abstract boolean accepts(Object object);
+
+  /**
+   * Compiles a decoder for the given record schema.
+   */
+  static RecordDecoder forRecord(Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD) {
+      throw new IllegalArgumentException("Unable decode object with schema " + schema);
+    }
+    return new RecordDecoder(schema);
+  }
+
+  private static ScriptDecoder forSchema(Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+        return new NullDecoder();
+      case BOOLEAN:
+        return new BooleanDecoder();
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return new NumberDecoder(schema.getType());
+      case BYTES:
+        return new BytesDecoder();
+      case STRING:
+        return new StringDecoder();
+      case ENUM:
+        return new EnumDecoder(schema);
+      case ARRAY:
+        return new ArrayDecoder(forSchema(schema.getComponentSchema()));
+      case MAP:
+        return new MapDecoder(forSchema(schema.getMapSchema().getKey()), forSchema(schema.getMapSchema().getValue()));
+      case RECORD:
+        return new RecordDecoder(schema);
+      case UNION:
+        return new UnionDecoder(schema);
+    }
+    throw new IllegalArgumentException("Unable decode object with schema " + schema);
+  }
+
+  /**
+   * Converts a JavaScript array into a {@link List}. Rhino arrays and objects passed in from Java are already lists,
+   * while Nashorn arrays are mirrored as a {@link Map} from index to element.
+   */
+  private static List<?> toList(Object object) {
+    if (object instanceof List) {
+      return (List<?>) object;
+    }
+    if (object instanceof Map) {
+      return new ArrayList<>(((Map<?, ?>) object).values());
+    }
+    throw new IllegalArgumentException("Unable to convert object of type " + object.getClass().getName() +
+                                         " to a list");
+  }
+
+  private static boolean isListLike(Object object) {
+    return object instanceof List || object instanceof Map;
+  }
+
+  /**
+   * Decoder for records.
+   */
+  static final class RecordDecoder extends ScriptDecoder {
+    private final Schema schema;
+    private final String[] names;
+    private final ScriptDecoder[] decoders;
+
+    private RecordDecoder(Schema schema) {
+      this.schema = schema;
+      List<Schema.Field> fields = schema.getFields();
+      this.names = new String[fields.size()];
+      this.decoders = new ScriptDecoder[fields.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = fields.get(i).getName();
+        decoders[i] = forSchema(fields.get(i).getSchema());
+      }
+    }
+
+    Schema getSchema() {
+      return schema;
+    }
+
+    @Override
+    StructuredRecord decode(Object object) {
+      Map<?, ?> nativeObject = (Map<?, ?>) object;
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      for (int i = 0; i < names.length; i++) {
+        builder.set(names[i], decoders[i].decode(nativeObject.get(names[i])));
+      }
+      return builder.build();
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return object instanceof Map;
+    }
+  }
+
+  /**
+   * Decoder for null.
+   */
+  private static final class NullDecoder extends ScriptDecoder {
+    @Override
+    Object decode(Object object) {
+      return null;
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return object == null;
+    }
+  }
+
+  /**
+   * Decoder for booleans.
+   */
+  private static final class BooleanDecoder extends ScriptDecoder {
+    @Override
+    Object decode(Object object) {
+      return (Boolean) object;
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return object instanceof Boolean;
+    }
+  }
+
+  /**
+   * Decoder for numbers. Since all JavaScript numbers are doubles, numbers can come back as any {@link Number}.
+   */
+  private static final class NumberDecoder extends ScriptDecoder {
+    private final Schema.Type type;
+
+    private NumberDecoder(Schema.Type type) {
+      this.type = type;
+    }
+
+    @Override
+    Object decode(Object object) {
+      Number number = (Number) object;
+      switch (type) {
+        case INT:
+          return number.intValue();
+        case LONG:
+          return number.longValue();
+        case FLOAT:
+          return number.floatValue();
+        default:
+          return number.doubleValue();
+      }
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return object instanceof Number;
+    }
+  }
+
+  /**
+   * Decoder for strings.
+   */
+  private static final class StringDecoder extends ScriptDecoder {
+    @Override
+    Object decode(Object object) {
+      // Nashorn can return strings built by concatenation as other CharSequences
+      return object instanceof CharSequence ? object.toString() : (String) object;
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return object instanceof CharSequence;
+    }
+  }
+
+  /**
+   * Decoder for enums, which cannot be returned by JavaScript. It never accepts an object, so that unions skip it
+   * and decode their other branches, and it only fails if a value actually has to be decoded as an enum.
+   */
+  private static final class EnumDecoder extends ScriptDecoder {
+    private final Schema schema;
+
+    private EnumDecoder(Schema schema) {
+      this.schema = schema;
+    }
+
+    @Override
+    Object decode(Object object) {
+      throw new IllegalArgumentException("Unable decode object with schema " + schema);
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return false;
+    }
+  }
+
+  /**
+   * Decoder for bytes, which can be returned as byte arrays or as arrays of numbers.
+   */
+  private static final class BytesDecoder extends ScriptDecoder {
+    @Override
+    Object decode(Object object) {
+      if (object instanceof byte[]) {
+        return object;
+      }
+      if (object instanceof ByteBuffer) {
+        return Bytes.toBytes((ByteBuffer) object);
+      }
+      List<?> byteArr = toList(object);
+      byte[] output = new byte[byteArr.size()];
+      for (int i = 0; i < output.length; i++) {
+        // everything is a number
+        output[i] = ((Number) byteArr.get(i)).byteValue();
+      }
+      return output;
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return object instanceof byte[] || object instanceof ByteBuffer || isListLike(object);
+    }
+  }
+
+  /**
+   * Decoder for arrays.
+   */
+  private static final class ArrayDecoder extends ScriptDecoder {
+    private final ScriptDecoder componentDecoder;
+
+    private ArrayDecoder(ScriptDecoder componentDecoder) {
+      this.componentDecoder = componentDecoder;
+    }
+
+    @Override
+    Object decode(Object object) {
+      List<?> nativeArray = toList(object);
+      List<Object> arr = new ArrayList<>(nativeArray.size());
+      for (Object arrObj : nativeArray) {
+        arr.add(componentDecoder.decode(arrObj));
+      }
+      return arr;
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return isListLike(object);
+    }
+  }
+
+  /**
+   * Decoder for maps.
+   */
+  private static final class MapDecoder extends ScriptDecoder {
+    private final ScriptDecoder keyDecoder;
+    private final ScriptDecoder valueDecoder;
+
+    private MapDecoder(ScriptDecoder keyDecoder, ScriptDecoder valueDecoder) {
+      this.keyDecoder = keyDecoder;
+      this.valueDecoder = valueDecoder;
+    }
+
+    @Override
+    Object decode(Object object) {
+      Map<?, ?> nativeMap = (Map<?, ?>) object;
+      Map<Object, Object> output = new HashMap<>();
+      for (Map.Entry<?, ?> entry : nativeMap.entrySet()) {
+        output.put(keyDecoder.decode(entry.getKey()), valueDecoder.decode(entry.getValue()));
+      }
+      return output;
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      return object instanceof Map;
+    }
+  }
+
+  /**
+   * Decoder for unions. Picks the first branch that accepts the type of the object, falling back to
+   * the next accepting branch if decoding fails, for example when a JavaScript object could be either
+   * a record or a map.
+   */
+  private static final class UnionDecoder extends ScriptDecoder {
+    private final Schema schema;
+    private final ScriptDecoder[] decoders;
+
+    private UnionDecoder(Schema schema) {
+      this.schema = schema;
+      List<Schema> schemas = schema.getUnionSchemas();
+      this.decoders = new ScriptDecoder[schemas.size()];
+      for (int i = 0; i < decoders.length; i++) {
+        decoders[i] = forSchema(schemas.get(i));
+      }
+    }
+
+    @Override
+    Object decode(Object object) {
+      for (ScriptDecoder decoder : decoders) {
+        if (decoder.accepts(object)) {
+          try {
+            return decoder.decode(object);
+          } catch (Exception e) {
+            // could be ok, just move on and try the next schema
+          }
+        }
+      }
+      throw new RuntimeException("Unable decode union with schema " + schema.getUnionSchemas());
+    }
+
+    @Override
+    boolean accepts(Object object) {
+      for (ScriptDecoder decoder : decoders) {
+        if (decoder.accepts(object)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.transform;
+
+import co.cask.hydrator.plugin.ScriptConstants;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * Pool of JavaScript {@link ScriptEngine}s that gives every thread its own engine, so that plugins which set
+ * global variables in the engine for each record can be called from multiple threads.
+ *
+ * Each engine is set up with the helper functions from {@link ScriptConstants#HELPER_DEFINITION} and then handed
+ * to an {@link Initializer}, which is expected to define the globals and evaluate the script used by the plugin.
+ * The engine for the thread that creates the pool is set up right away, so that an invalid script fails
+ * at construction time. Engines for other threads are created the first time they call {@link #get()}.
+ * Plugins must call {@link #close()} when they are destroyed, so that the engines are not kept alive
+ * by the threads that used them.
+ */
+public class ScriptEnginePool {
+  private static ScriptEngineFactory engineFactory;
+
+  private final Initializer initializer;
+  // the holder of each thread is also tracked in 'holders', so that close() can release the engines of all threads
+  private final ThreadLocal<AtomicReference<ScriptEngine>> engines;
+  private final Queue<AtomicReference<ScriptEngine>> holders;
+  private final AtomicInteger size;
+  private volatile boolean closed;
+
+  /**
+   * Sets up a newly created engine.
+   */
+  public interface Initializer {
+
+    /**
+     * Sets up the given engine. Called once for each engine in the pool.
+     *
+     * @param engine the engine to set up, with the helper functions already defined
+     * @param js the {@link JavaTypeConverters} implemented by the engine
+     * @throws ScriptException if there was an error evaluating a script in the engine
+     */
+    void initialize(ScriptEngine engine, JavaTypeConverters js) throws ScriptException;
+  }
+
+  public ScriptEnginePool(Initializer initializer) throws ScriptException {
+    this.initializer = initializer;
+    this.holders = new ConcurrentLinkedQueue<>();
+    this.engines = new ThreadLocal<AtomicReference<ScriptEngine>>() {
+      @Override
+      protected AtomicReference<ScriptEngine> initialValue() {
+        AtomicReference<ScriptEngine> holder = new AtomicReference<>();
+        holders.add(holder);
+        return holder;
+      }
+    };
+    this.size = new AtomicInteger();
+    engines.get().set(createEngine());
+  }
+
+  /**
+   * @return the engine for the calling thread, creating it if this is the first call from the thread
+   */
+  public ScriptEngine get() {
+    AtomicReference<ScriptEngine> holder = engines.get();
+    ScriptEngine engine = holder.get();
+    if (engine == null) {
+      if (closed) {
+        throw new IllegalStateException("The script engine pool is closed.");
+      }
+      try {
+        engine = createEngine();
+      } catch (ScriptException e) {
+        // shouldn't happen, since the same script was already evaluated when the pool was created
+        throw new IllegalStateException("Failed to initialize script engine: " + e.getMessage(), e);
+      }
+      holder.set(engine);
+    }
+    return engine;
+  }
+
+  /**
+   * Releases the engines of all threads. The pool cannot be used anymore after it is closed.
+   */
+  public void close() {
+    closed = true;
+    AtomicReference<ScriptEngine> holder;
+    while ((holder = holders.poll()) != null) {
+      ScriptEngine engine = holder.getAndSet(null);
+      if (engine != null) {
+        // drop the globals, which reference the plugin, in case something else still holds on to the engine
+        engine.getBindings(javax.script.ScriptContext.ENGINE_SCOPE).clear();
+      }
+    }
+    engines.remove();
+  }
+
+  /**
+   * @return the number of engines created by this pool
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * Evaluates the given script in the given engine, compiling it first if the engine supports it.
+   */
+  public static Object compileAndEval(ScriptEngine engine, String script) throws ScriptException {
+    if (engine instanceof Compilable) {
+      return ((Compilable) engine).compile(script).eval();
+    }
+    return engine.eval(script);
+  }
+
+  private ScriptEngine createEngine() throws ScriptException {
+    ScriptEngine engine = newEngine();
+    try {
+      engine.eval(ScriptConstants.HELPER_DEFINITION);
+    } catch (ScriptException e) {
+      // shouldn't happen
+      throw new IllegalStateException("Couldn't define helper functions", e);
+    }
+    JavaTypeConverters js = ((Invocable) engine).getInterface(
+      engine.get(ScriptConstants.HELPER_NAME), JavaTypeConverters.class);
+    initializer.initialize(engine, js);
+    size.incrementAndGet();
+    return engine;
+  }
+
+  // looking up the engine through the ScriptEngineManager scans the classpath for engine factories,
+  // so only do it once and create all subsequent engines directly from the factory.
+  private static synchronized ScriptEngine newEngine() {
+    if (engineFactory != null) {
+      return engineFactory.getScriptEngine();
+    }
+    ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+    if (engine == null) {
+      throw new IllegalStateException("No JavaScript engine is available.");
+    }
+    engineFactory = engine.getFactory();
+    return engine;
+  }
+}
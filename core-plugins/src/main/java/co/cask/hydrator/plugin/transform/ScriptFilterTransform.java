@@ -28,7 +28,6 @@ import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
-import co.cask.hydrator.plugin.ScriptConstants;
 import co.cask.hydrator.plugin.common.StructuredRecordSerializer;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
@@ -41,7 +40,6 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 /**
@@ -72,8 +70,7 @@ public class ScriptFilterTransform extends Transform<StructuredRecord, Structure
 
   private final ScriptFilterConfig scriptFilterConfig;
 
-  private ScriptEngine engine;
-  private Invocable invocable;
+  private ScriptEnginePool engines;
   private StageMetrics metrics;
   private Logger logger;
 
@@ -99,11 +96,19 @@ public class ScriptFilterTransform extends Transform<StructuredRecord, Structure
     init(context);
   }
 
+  @Override
+  public void destroy() {
+    if (engines != null) {
+      engines.close();
+    }
+  }
+
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) {
     try {
+      ScriptEngine engine = engines.get();
       engine.eval(String.format("var %s = %s;", VARIABLE_NAME, GSON.toJson(input)));
-      Boolean shouldFilter = (Boolean) invocable.invokeFunction(FUNCTION_NAME);
+      Boolean shouldFilter = (Boolean) ((Invocable) engine).invokeFunction(FUNCTION_NAME);
       if (!shouldFilter) {
         emitter.emit(input);
       } else {
@@ -115,41 +120,31 @@ public class ScriptFilterTransform extends Transform<StructuredRecord, Structure
     }
   }
 
-  private void init(LookupProvider lookupProvider) {
-    ScriptEngineManager manager = new ScriptEngineManager();
-    engine = manager.getEngineByName("JavaScript");
-    try {
-      engine.eval(ScriptConstants.HELPER_DEFINITION);
-    } catch (ScriptException e) {
-      // shouldn't happen
-      throw new IllegalStateException("Couldn't define helper functions", e);
-    }
-
-    JavaTypeConverters js = ((Invocable) engine).getInterface(
-      engine.get(ScriptConstants.HELPER_NAME), JavaTypeConverters.class);
-
-    LookupConfig lookupConfig;
+  private void init(final LookupProvider lookupProvider) {
+    final LookupConfig lookupConfig;
     try {
       lookupConfig = GSON.fromJson(scriptFilterConfig.lookup, LookupConfig.class);
     } catch (JsonSyntaxException e) {
       throw new IllegalArgumentException("Invalid lookup config. Expected map of string to string", e);
     }
 
-    engine.put(CONTEXT_NAME, new ScriptContext(
-      logger, metrics, lookupProvider, lookupConfig, js));
-
     // this is pretty ugly, but doing this so that we can pass the 'input' json into the shouldFilter function.
     // that is, we want people to implement
     // function shouldFilter(input) { ... }
     // rather than function shouldFilter() { ... } and have them access a global variable in the function
+    final String script = String.format("function %s() { return shouldFilter(%s, %s); }\n%s",
+      FUNCTION_NAME, VARIABLE_NAME, CONTEXT_NAME, scriptFilterConfig.script);
     try {
-      String script = String.format("function %s() { return shouldFilter(%s, %s); }\n%s",
-        FUNCTION_NAME, VARIABLE_NAME, CONTEXT_NAME, scriptFilterConfig.script);
-      engine.eval(script);
+      engines = new ScriptEnginePool(new ScriptEnginePool.Initializer() {
+        @Override
+        public void initialize(ScriptEngine engine, JavaTypeConverters js) throws ScriptException {
+          engine.put(CONTEXT_NAME, new ScriptContext(logger, metrics, lookupProvider, lookupConfig, js));
+          ScriptEnginePool.compileAndEval(engine, script);
+        }
+      });
     } catch (ScriptException e) {
       throw new IllegalArgumentException("Invalid script: " + e.getMessage(), e);
     }
-    invocable = (Invocable) engine;
   }
 
   /**
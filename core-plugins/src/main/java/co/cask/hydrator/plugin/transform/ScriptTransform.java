@@ -29,7 +29,6 @@ import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
-import co.cask.hydrator.plugin.ScriptConstants;
 import co.cask.hydrator.plugin.common.StructuredRecordSerializer;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -47,7 +46,6 @@ import java.util.Map;
 import javax.annotation.Nullable;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 /**
@@ -66,8 +64,7 @@ public class ScriptTransform extends Transform<StructuredRecord, StructuredRecor
   private static final String FUNCTION_NAME = "dont_name_your_function_this";
   private static final String VARIABLE_NAME = "dont_name_your_variable_this";
   private static final String CONTEXT_NAME = "dont_name_your_context_this";
-  private ScriptEngine engine;
-  private Invocable invocable;
+  private ScriptEnginePool engines;
   private Schema schema;
   private final Config config;
   private StageMetrics metrics;
@@ -147,11 +144,19 @@ public class ScriptTransform extends Transform<StructuredRecord, StructuredRecor
     init(context);
   }
 
+  @Override
+  public void destroy() {
+    if (engines != null) {
+      engines.close();
+    }
+  }
+
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) {
     try {
+      ScriptEngine engine = engines.get();
       engine.eval(String.format("var %s = %s;", VARIABLE_NAME, GSON.toJson(input)));
-      Map scriptOutput = (Map) invocable.invokeFunction(FUNCTION_NAME);
+      Map scriptOutput = (Map) ((Invocable) engine).invokeFunction(FUNCTION_NAME);
       StructuredRecord output = decodeRecord(scriptOutput, schema == null ? input.getSchema() : schema);
       emitter.emit(output);
     } catch (Exception e) {
@@ -274,41 +279,31 @@ public class ScriptTransform extends Transform<StructuredRecord, StructuredRecor
     throw new RuntimeException("Unable decode union with schema " + schemas);
   }
 
-  private void init(LookupProvider lookup) {
-    ScriptEngineManager manager = new ScriptEngineManager();
-    engine = manager.getEngineByName("JavaScript");
-    try {
-      engine.eval(ScriptConstants.HELPER_DEFINITION);
-    } catch (ScriptException e) {
-      // shouldn't happen
-      throw new IllegalStateException("Couldn't define helper functions", e);
-    }
-
-    JavaTypeConverters js = ((Invocable) engine).getInterface(
-      engine.get(ScriptConstants.HELPER_NAME), JavaTypeConverters.class);
-
-    LookupConfig lookupConfig;
+  private void init(final LookupProvider lookup) {
+    final LookupConfig lookupConfig;
     try {
       lookupConfig = GSON.fromJson(config.lookup, LookupConfig.class);
     } catch (JsonSyntaxException e) {
       throw new IllegalArgumentException("Invalid lookup config. Expected map of string to string", e);
     }
 
-    engine.put(CONTEXT_NAME, new ScriptContext(LOG, metrics, lookup, lookupConfig, js));
-
+    // this is pretty ugly, but doing this so that we can pass the 'input' json into the transform function.
+    // that is, we want people to implement
+    // function transform(input) { ... }
+    // rather than function transform() { ... } and have them access a global variable in the function
+    final String script = String.format("function %s() { return transform(%s, %s); }\n%s",
+      FUNCTION_NAME, VARIABLE_NAME, CONTEXT_NAME, config.script);
     try {
-      // this is pretty ugly, but doing this so that we can pass the 'input' json into the transform function.
-      // that is, we want people to implement
-      // function transform(input) { ... }
-      // rather than function transform() { ... } and have them access a global variable in the function
-
-      String script = String.format("function %s() { return transform(%s, %s); }\n%s",
-        FUNCTION_NAME, VARIABLE_NAME, CONTEXT_NAME, config.script);
-      engine.eval(script);
+      engines = new ScriptEnginePool(new ScriptEnginePool.Initializer() {
+        @Override
+        public void initialize(ScriptEngine engine, JavaTypeConverters js) throws ScriptException {
+          engine.put(CONTEXT_NAME, new ScriptContext(LOG, metrics, lookup, lookupConfig, js));
+          ScriptEnginePool.compileAndEval(engine, script);
+        }
+      });
     } catch (ScriptException e) {
       throw new IllegalArgumentException("Invalid script: " + e.getMessage(), e);
     }
-    invocable = (Invocable) engine;
     if (config.schema != null) {
       try {
         schema = Schema.parseJson(config.schema);
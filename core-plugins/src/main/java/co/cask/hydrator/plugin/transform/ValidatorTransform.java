@@ -31,7 +31,6 @@ import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
 import co.cask.cdap.etl.api.Validator;
-import co.cask.hydrator.plugin.ScriptConstants;
 import co.cask.hydrator.plugin.common.StructuredRecordSerializer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -49,7 +48,6 @@ import java.util.Map;
 import javax.annotation.Nullable;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 /**
@@ -102,8 +100,7 @@ public class ValidatorTransform extends Transform<StructuredRecord, StructuredRe
 
   private final ValidatorConfig config;
   private StageMetrics metrics;
-  private Invocable invocable;
-  private ScriptEngine engine;
+  private ScriptEnginePool engines;
 
   // for unit tests, otherwise config is injected by plugin framework.
   public ValidatorTransform(ValidatorConfig config) {
@@ -147,11 +144,19 @@ public class ValidatorTransform extends Transform<StructuredRecord, StructuredRe
     init(validators, context);
   }
 
+  @Override
+  public void destroy() {
+    if (engines != null) {
+      engines.close();
+    }
+  }
+
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) throws Exception {
     try {
+      ScriptEngine engine = engines.get();
       engine.eval(String.format("var %s = %s;", VARIABLE_NAME, GSON.toJson(input)));
-      Map result = (Map) invocable.invokeFunction(FUNCTION_NAME);
+      Map result = (Map) ((Invocable) engine).invokeFunction(FUNCTION_NAME);
 
       Preconditions.checkState(result.containsKey("isValid"),
                                "Result map returned by isValid function did not contain an entry for 'isValid'");
@@ -191,47 +196,40 @@ public class ValidatorTransform extends Transform<StructuredRecord, StructuredRe
     return new InvalidEntry<>(errorCodeInt, (String) result.get("errorMsg"), input);
   }
 
-  private void init(List<Validator> validators, LookupProvider lookup) throws ScriptException {
-    ScriptEngineManager manager = new ScriptEngineManager();
-    engine = manager.getEngineByName("JavaScript");
-    try {
-      engine.eval(ScriptConstants.HELPER_DEFINITION);
-    } catch (ScriptException e) {
-      // shouldn't happen
-      throw new IllegalStateException("Couldn't define helper functions", e);
-    }
-
-    JavaTypeConverters js = ((Invocable) engine).getInterface(
-      engine.get(ScriptConstants.HELPER_NAME), JavaTypeConverters.class);
-
+  private void init(List<Validator> validators, final LookupProvider lookup) throws ScriptException {
     String scriptStr = config.validationScript;
     Preconditions.checkArgument(!Strings.isNullOrEmpty(scriptStr), "Filter script must be specified.");
 
-    Map<String, Object> validatorMap = new HashMap<>();
+    final Map<String, Object> validatorMap = new HashMap<>();
     for (Validator validator : validators) {
-      // NOTE : This has been kept for backward compatibility, can be removed after deprecation.
-      engine.put(validator.getValidatorName(), validator.getValidator());
       validatorMap.put(validator.getValidatorName(), validator.getValidator());
     }
 
-    LookupConfig lookupConfig;
+    final LookupConfig lookupConfig;
     try {
       lookupConfig = GSON.fromJson(config.lookup, LookupConfig.class);
     } catch (JsonSyntaxException e) {
       throw new IllegalArgumentException("Invalid lookup config. Expected map of string to string", e);
     }
 
-    engine.put(CONTEXT_NAME, new ValidatorScriptContext(LOG, metrics, lookup, lookupConfig, js, validatorMap));
-
     // this is pretty ugly, but doing this so that we can pass the 'input' json into the isValid function.
     // that is, we want people to implement
     // function isValid(input) { ... }
     // rather than function isValid() { ... } with the input record assigned to the global variable
     // and have them access the global variable in the function
-    String script = String.format("function %s() { return isValid(%s, %s); }\n%s",
+    final String script = String.format("function %s() { return isValid(%s, %s); }\n%s",
       FUNCTION_NAME, VARIABLE_NAME, CONTEXT_NAME, config.validationScript);
-    engine.eval(script);
-    invocable = (Invocable) engine;
+    engines = new ScriptEnginePool(new ScriptEnginePool.Initializer() {
+      @Override
+      public void initialize(ScriptEngine engine, JavaTypeConverters js) throws ScriptException {
+        for (Map.Entry<String, Object> validator : validatorMap.entrySet()) {
+          // NOTE : This has been kept for backward compatibility, can be removed after deprecation.
+          engine.put(validator.getKey(), validator.getValue());
+        }
+        engine.put(CONTEXT_NAME, new ValidatorScriptContext(LOG, metrics, lookup, lookupConfig, js, validatorMap));
+        ScriptEnginePool.compileAndEval(engine, script);
+      }
+    });
   }
 
   /**
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.transform;
+
+import co.cask.cdap.etl.api.Transform;
+import co.cask.hydrator.common.test.MockEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Calls an initialized {@link Transform} from several threads at the same time, to test plugins that are
+ * expected to be usable from multiple threads.
+ */
+public final class ConcurrentTransforms {
+  private static final int NUM_THREADS = 4;
+  private static final int NUM_RECORDS = 100;
+
+  /**
+   * Checks the output of a single call to {@link Transform#transform}.
+   *
+   * @param <IN> the type of input
+   * @param <OUT> the type of output
+   */
+  public interface Check<IN, OUT> {
+
+    /**
+     * Checks what the transform emitted for the given input, failing with an {@link AssertionError} if it is wrong.
+     */
+    void check(IN input, MockEmitter<OUT> emitter);
+  }
+
+  private ConcurrentTransforms() {
+  }
+
+  /**
+   * Transforms the given inputs, in turn, from several threads that all start at the same time,
+   * and checks the output of every call.
+   */
+  public static <IN, OUT> void transform(final Transform<IN, OUT> transform, final List<IN> inputs,
+                                         final Check<IN, OUT> check) throws Exception {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < NUM_THREADS; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            startLatch.await();
+            for (int j = 0; j < NUM_RECORDS; j++) {
+              IN input = inputs.get(j % inputs.size());
+              MockEmitter<OUT> emitter = new MockEmitter<>();
+              transform.transform(input, emitter);
+              check.check(input, emitter);
+            }
+            return null;
+          }
+        }));
+      }
+      startLatch.countDown();
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // rethrow failed checks as they are, so that they are reported as test failures
+          if (e.getCause() instanceof AssertionError) {
+            throw (AssertionError) e.getCause();
+          }
+          throw e;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
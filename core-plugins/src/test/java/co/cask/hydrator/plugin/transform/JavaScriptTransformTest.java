@@ -33,6 +33,7 @@ import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -117,6 +118,16 @@ public class JavaScriptTransformTest {
     .set("stringField", "zzz")
     .build();
 
+  // checks that intField of the single output was multiplied by 1024
+  private static final ConcurrentTransforms.Check<StructuredRecord, StructuredRecord> MULTIPLY_CHECK =
+    new ConcurrentTransforms.Check<StructuredRecord, StructuredRecord>() {
+      @Override
+      public void check(StructuredRecord input, MockEmitter<StructuredRecord> emitter) {
+        Assert.assertEquals(1, emitter.getEmitted().size());
+        Assert.assertEquals((Integer) input.get("intField") * 1024, emitter.getEmitted().get(0).get("intField"));
+      }
+    };
+
   @Test
   public void testSimple() throws Exception {
     JavaScriptTransform.Config config = new JavaScriptTransform.Config(
@@ -164,6 +175,193 @@ public class JavaScriptTransformTest {
     Assert.assertEquals(expectedListField, output.get("arrayField"));
   }
 
+  @Test
+  public void testNativeInputMode() throws Exception {
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(x, emitter, context) { " +
+        "x.intField = x.intField * 1024; " +
+        "if (x.arrayField.size() > 1) { x.stringField = x.stringField + x.arrayField.get(1); } " +
+        "emitter.emit(x); }",
+      null, null, "native");
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(RECORD1, emitter);
+    StructuredRecord output = emitter.getEmitted().get(0);
+    Assert.assertEquals(SCHEMA, output.getSchema());
+    Assert.assertTrue((Boolean) output.get("booleanField"));
+    Assert.assertEquals(28 * 1024, output.get("intField"));
+    Assert.assertEquals(99L, output.get("longField"));
+    Assert.assertTrue(Math.abs(2.71f - (Float) output.get("floatField")) < 0.000001);
+    Assert.assertTrue(Math.abs(3.14 - (Double) output.get("doubleField")) < 0.000001);
+    Assert.assertArrayEquals(Bytes.toBytes("foo"), (byte[]) output.get("bytesField"));
+    Assert.assertEquals("barbar", output.get("stringField"));
+    Assert.assertEquals("baz", output.get("nullableField"));
+    Assert.assertEquals("hello", output.get("unionField"));
+    Assert.assertEquals(ImmutableMap.of("foo", 13, "bar", 17), output.get("mapField"));
+    Assert.assertEquals(ImmutableList.of("foo", "bar", "baz"), output.get("arrayField"));
+    // the input record should not be modified by the script
+    Assert.assertEquals(28, RECORD1.get("intField"));
+    emitter.clear();
+
+    transform.transform(RECORD2, emitter);
+    output = emitter.getEmitted().get(0);
+    Assert.assertEquals(-28 * 1024, output.get("intField"));
+    Assert.assertNull(output.get("nullableField"));
+    Assert.assertEquals(3, output.get("unionField"));
+  }
+
+  @Test
+  public void testNativeInputModeMatchesJson() throws Exception {
+    String script = "function transform(x, emitter, context) { " +
+      "x.intField = x.intField * 1024; " +
+      "x.stringField = x.stringField + '!'; " +
+      "if (x.nullableField == null) { x.nullableField = 'was null'; } " +
+      "emitter.emit(x); " +
+      "if (!x.booleanField) { emitter.emit(x); } }";
+    List<StructuredRecord> jsonOutput = transformAll(new JavaScriptTransform.Config(script, null, null, "json"));
+    List<StructuredRecord> nativeOutput = transformAll(new JavaScriptTransform.Config(script, null, null, "native"));
+
+    Assert.assertEquals(3, jsonOutput.size());
+    Assert.assertEquals(jsonOutput.size(), nativeOutput.size());
+    for (int i = 0; i < jsonOutput.size(); i++) {
+      StructuredRecord expected = jsonOutput.get(i);
+      StructuredRecord actual = nativeOutput.get(i);
+      Assert.assertEquals(expected.getSchema(), actual.getSchema());
+      for (Schema.Field field : SCHEMA.getFields()) {
+        Object expectedValue = expected.get(field.getName());
+        Object actualValue = actual.get(field.getName());
+        if (expectedValue instanceof byte[]) {
+          Assert.assertArrayEquals((byte[]) expectedValue, (byte[]) actualValue);
+        } else {
+          Assert.assertEquals(field.getName(), expectedValue, actualValue);
+        }
+      }
+    }
+  }
+
+  private static List<StructuredRecord> transformAll(JavaScriptTransform.Config config) throws Exception {
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(RECORD1, emitter);
+    transform.transform(RECORD2, emitter);
+    return new ArrayList<>(emitter.getEmitted());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidInputMode() throws Exception {
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(x, emitter, context) { emitter.emit(x); }", null, null, "xml");
+    new JavaScriptTransform(config).initialize(new MockTransformContext());
+  }
+
+  @Test
+  public void testEmitsDuringEachCall() throws Exception {
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(x, emitter, context) { x.intField = x.intField * 1024; emitter.emit(x); }",
+      null, null, "native");
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    // The output of every record is emitted to the emitter of its own call, since nothing reads it afterwards
+    List<MockEmitter<StructuredRecord>> emitters = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+      transform.transform(i % 2 == 0 ? RECORD1 : RECORD2, emitter);
+      Assert.assertEquals(1, emitter.getEmitted().size());
+      Assert.assertEquals(i % 2 == 0 ? 28 * 1024 : -28 * 1024, emitter.getEmitted().get(0).get("intField"));
+      emitters.add(emitter);
+    }
+
+    // Nothing is left to be emitted when the stage is stopped
+    transform.destroy();
+    for (MockEmitter<StructuredRecord> emitter : emitters) {
+      Assert.assertEquals(1, emitter.getEmitted().size());
+    }
+  }
+
+  @Test
+  public void testMultipleThreads() throws Exception {
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(x, emitter, context) { x.intField = x.intField * 1024; emitter.emit(x); }", null, null);
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+    try {
+      ConcurrentTransforms.transform(transform, ImmutableList.of(RECORD1, RECORD2), MULTIPLY_CHECK);
+    } finally {
+      transform.destroy();
+    }
+  }
+
+  @Test
+  public void testUnionOutput() throws Exception {
+    Schema innerSchema = Schema.recordOf("inner", Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    Schema outputSchema = Schema.recordOf(
+      "output",
+      Schema.Field.of("inner", Schema.nullableOf(innerSchema)),
+      Schema.Field.of("value", Schema.unionOf(Schema.of(Schema.Type.NULL), Schema.of(Schema.Type.BOOLEAN),
+                                              Schema.of(Schema.Type.LONG), Schema.of(Schema.Type.STRING))));
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(input, emitter, context) { " +
+        "emitter.emit({ 'inner': { 'name': input.stringField }, 'value': input.intField }); " +
+        "emitter.emit({ 'inner': null, 'value': input.stringField + '!' }); " +
+        "emitter.emit({ 'value': input.booleanField }); }",
+      outputSchema.toString(), null);
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(RECORD1, emitter);
+    Assert.assertEquals(3, emitter.getEmitted().size());
+    StructuredRecord output = emitter.getEmitted().get(0);
+    Assert.assertEquals("bar", ((StructuredRecord) output.get("inner")).get("name"));
+    Assert.assertEquals(28L, output.get("value"));
+    output = emitter.getEmitted().get(1);
+    Assert.assertNull(output.get("inner"));
+    Assert.assertEquals("bar!", output.get("value"));
+    output = emitter.getEmitted().get(2);
+    Assert.assertNull(output.get("inner"));
+    Assert.assertEquals(true, output.get("value"));
+  }
+
+  @Test
+  public void testEnumOutput() throws Exception {
+    Schema enumSchema = Schema.enumWith("A", "B");
+    Schema outputSchema = Schema.recordOf(
+      "output",
+      Schema.Field.of("value", Schema.unionOf(enumSchema, Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("nullableEnum", Schema.nullableOf(enumSchema)));
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(input, emitter, context) { " +
+        "emitter.emit({ 'value': input.stringField, 'nullableEnum': null }); }",
+      outputSchema.toString(), null);
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    // enum branches are skipped when decoding unions
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(RECORD1, emitter);
+    StructuredRecord output = emitter.getEmitted().get(0);
+    Assert.assertEquals("bar", output.get("value"));
+    Assert.assertNull(output.get("nullableEnum"));
+
+    // decoding a value as an enum fails
+    config = new JavaScriptTransform.Config(
+      "function transform(input, emitter, context) { " +
+        "emitter.emit({ 'value': input.stringField, 'nullableEnum': 'A' }); }",
+      outputSchema.toString(), null);
+    transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+    try {
+      transform.transform(RECORD1, emitter);
+      Assert.fail("Expected enum decoding to fail.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
   @Test
   public void testSchemaValidation() throws Exception {
     Schema outputSchema = Schema.recordOf(
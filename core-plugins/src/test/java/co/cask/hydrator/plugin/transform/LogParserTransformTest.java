@@ -21,7 +21,9 @@ import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.hydrator.common.test.MockEmitter;
+import co.cask.hydrator.common.test.MockTransformContext;
 import org.junit.Assert;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
@@ -56,6 +58,13 @@ public class LogParserTransformTest {
     Schema.Field.of("httpStatus", Schema.of(Schema.Type.INT)),
     Schema.Field.of("ts", Schema.of(Schema.Type.LONG)));
 
+  @BeforeClass
+  public static void setupTransforms() throws Exception {
+    S3_TRANSFORM.initialize(new MockTransformContext());
+    CLF_TRANSFORM.initialize(new MockTransformContext());
+    CLOUDFRONT_TRANSFORM.initialize(new MockTransformContext());
+  }
+
   @Test
   public void testConfigurePipelineSchemaValidation() throws Exception {
     Schema inputSchemaString = Schema.recordOf(
@@ -199,4 +208,95 @@ public class LogParserTransformTest {
     Assert.assertEquals(200, output.get("httpStatus"));
     Assert.assertEquals(971211336000L, output.get("ts"));
   }
+
+  @Test
+  public void testUserAgentCache() throws Exception {
+    StructuredRecord record = StructuredRecord.builder(STRING_SCHEMA)
+      .set("body", "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif HTTP/1.0\" 200 2326 " +
+        "\"http://www.example.com/start.html\" \"Mozilla/5.0 Gecko/20100115 Firefox/3.6\"")
+      .build();
+
+    Transform<StructuredRecord, StructuredRecord> transform =
+      new LogParserTransform(new LogParserTransform.LogParserConfig("CLF", "body", 10));
+    MockTransformContext context = new MockTransformContext();
+    transform.initialize(context);
+
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(record, emitter);
+    transform.transform(record, emitter);
+    transform.transform(record, emitter);
+    Assert.assertEquals(3, emitter.getEmitted().size());
+    for (StructuredRecord output : emitter.getEmitted()) {
+      Assert.assertEquals("Firefox", output.get("browser"));
+      Assert.assertEquals("Personal computer", output.get("device"));
+      Assert.assertEquals(971211336000L, output.get("ts"));
+    }
+    Assert.assertEquals(1, context.getMockMetrics().getCount("useragent.cache.misses"));
+    Assert.assertEquals(2, context.getMockMetrics().getCount("useragent.cache.hits"));
+  }
+
+  @Test
+  public void testFastParser() throws Exception {
+    assertSameOutput("S3",
+                     "13a9f69e4a00effd6b4b891dcbcabef632ef9a9da7c localhost [22/Jan/2015:11:03:21 +0000] " +
+                       "122.122.111.11 - 6006CA0AE4 REST.GET.OBJECT ubuntu/this/is/some/folder " +
+                       "\"GET /my/uri.gif releases/dists/precise/releases/i18n/Translation-en HTTP/1.1\" " +
+                       "403 AccessDenied 231 - 10 - \"-\" \"Debian APT-HTTP/1.3 (0.8.16~exp12ubuntu10.  17)\" -",
+                     "13a9f69e4a00effd6b4b891dcef632ef9afe38cc8b0 localhost [31/Jan/2015:21:57:57 +0000] " +
+                       "133.133.133.133 - 0E94306589 REST.GET.OBJECT downloads/file.zip " +
+                       "\"GET /my/uri.jpg HTTP/1.1\" 304 - - 195750039 198 - " +
+                       "\"-\" \"Mozilla/5.0 Gecko/20100115 Firefox/3.6\" -",
+                     // invalid ip
+                     "13a9f69e localhost [31/Jan/2015:21:57:57 +0000] host - 0E94306589 REST.GET.OBJECT key " +
+                       "\"GET /my/uri.jpg HTTP/1.1\" 304 - - 195750039 198 - \"-\" \"Firefox/3.6\" -",
+                     // missing version id
+                     "13a9f69e localhost [31/Jan/2015:21:57:57 +0000] 1.1.1.1 - 0E94306589 REST.GET.OBJECT key " +
+                       "\"GET /my/uri.jpg HTTP/1.1\" 304 - - 195750039 198 - \"-\" \"Firefox/3.6\"");
+
+    assertSameOutput("CLF",
+                     "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif HTTP/1.0\" 200 2326 " +
+                       "\"http://www.example.com/start.html\" \"Mozilla/5.0 Gecko/20100115 Firefox/3.6\"",
+                     "::1 - - [10/Oct/2000:13:55:36 -0700] \"GET /index.html HTTP/1.0\" 404 - \"-\" \"curl/7.43\"",
+                     // invalid status code
+                     "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif HTTP/1.0\" 20 2326 " +
+                       "\"-\" \"Firefox/3.6\"",
+                     // request without a uri
+                     "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET\" 200 2326 \"-\" \"Firefox/3.6\"",
+                     // trailing characters
+                     "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET / HTTP/1.0\" 200 2326 \"-\" \"Firefox\" x",
+                     "");
+
+    assertSameOutput("Cloudfront",
+                     "2015-04-17\t13:35:48\tSFO20\t582123\t11.111.111.11\tGET\texample.cloudfront.net" +
+                       "\t/coopr-standalone-vm/0.9.8/coopr-standalone-vm-0.9.8.ova\t200\t-\tMozilla/5.0" +
+                       "\t-\tError\tsCmB94WPP5v\texample.co\thttp\t264\t0.984",
+                     "2015-04-17\t13:35:48\tSFO20\t582123\t11.111.111.11\tGET\texample.cloudfront.net" +
+                       "\t/index.html\t304\t-\tcurl/7.43",
+                     "#Fields: date time x-edge-location sc-bytes c-ip cs-method cs(Host) cs-uri-stem sc-status");
+  }
+
+  private static void assertSameOutput(String logFormat, String... logs) throws Exception {
+    Transform<StructuredRecord, StructuredRecord> regexTransform =
+      new LogParserTransform(new LogParserTransform.LogParserConfig(logFormat, "body", 0, false));
+    Transform<StructuredRecord, StructuredRecord> fastTransform =
+      new LogParserTransform(new LogParserTransform.LogParserConfig(logFormat, "body", 0, true));
+    regexTransform.initialize(new MockTransformContext());
+    fastTransform.initialize(new MockTransformContext());
+
+    for (String log : logs) {
+      StructuredRecord record = StructuredRecord.builder(STRING_SCHEMA).set("body", log).build();
+      MockEmitter<StructuredRecord> regexEmitter = new MockEmitter<>();
+      MockEmitter<StructuredRecord> fastEmitter = new MockEmitter<>();
+      regexTransform.transform(record, regexEmitter);
+      fastTransform.transform(record, fastEmitter);
+
+      Assert.assertEquals(log, regexEmitter.getEmitted().size(), fastEmitter.getEmitted().size());
+      for (int i = 0; i < regexEmitter.getEmitted().size(); i++) {
+        for (Schema.Field field : LOG_SCHEMA.getFields()) {
+          Assert.assertEquals(log, regexEmitter.getEmitted().get(i).get(field.getName()),
+                              fastEmitter.getEmitted().get(i).get(field.getName()));
+        }
+      }
+    }
+  }
 }
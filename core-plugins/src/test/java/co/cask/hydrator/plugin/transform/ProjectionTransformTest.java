@@ -140,6 +140,39 @@ public class ProjectionTransformTest {
     transform.transform(input, emitter);
   }
 
+  @Test
+  public void testMultipleInputSchemas() throws Exception {
+    Schema intSchema = Schema.recordOf("ints", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    Schema stringSchema = Schema.recordOf("strings",
+                                          Schema.Field.of("x", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                          Schema.Field.of("z", Schema.of(Schema.Type.STRING)));
+    StructuredRecord intInput = StructuredRecord.builder(intSchema).set("x", 5).build();
+    StructuredRecord stringInput = StructuredRecord.builder(stringSchema).set("x", "7").set("z", "z").build();
+
+    ProjectionTransform.ProjectionTransformConfig config = new ProjectionTransform
+      .ProjectionTransformConfig("z", "x:y", "x:long");
+    Transform<StructuredRecord, StructuredRecord> transform = new ProjectionTransform(config);
+    TransformContext transformContext = new MockTransformContext();
+    transform.initialize(transformContext);
+
+    // the projection for each schema is built once and reused when records of the same schema come again
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(intInput, emitter);
+    transform.transform(stringInput, emitter);
+    transform.transform(intInput, emitter);
+
+    Schema expectedIntSchema = Schema.recordOf("ints.projected", Schema.Field.of("y", Schema.of(Schema.Type.LONG)));
+    Schema expectedStringSchema = Schema.recordOf("strings.projected",
+                                                  Schema.Field.of("y", Schema.nullableOf(Schema.of(Schema.Type.LONG))));
+    Assert.assertEquals(3, emitter.getEmitted().size());
+    Assert.assertEquals(expectedIntSchema, emitter.getEmitted().get(0).getSchema());
+    Assert.assertEquals(5L, emitter.getEmitted().get(0).get("y"));
+    Assert.assertEquals(expectedStringSchema, emitter.getEmitted().get(1).getSchema());
+    Assert.assertEquals(7L, emitter.getEmitted().get(1).get("y"));
+    Assert.assertEquals(expectedIntSchema, emitter.getEmitted().get(2).getSchema());
+    Assert.assertEquals(5L, emitter.getEmitted().get(2).get("y"));
+  }
+
   @Test
   public void testDropFields() throws Exception {
     Schema schema = Schema.recordOf("three",
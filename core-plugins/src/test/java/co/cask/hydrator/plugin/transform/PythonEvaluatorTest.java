@@ -132,6 +132,51 @@ public class PythonEvaluatorTest {
     Assert.assertEquals(expectedListField, output.get("arrayField"));
   }
 
+  @Test
+  public void testInterpreterPerThread() throws Exception {
+    // the script keeps a count in a global variable, which must not be shared by different threads
+    PythonEvaluator.Config config = new PythonEvaluator.Config(
+      "count = 0\n" +
+      "def transform(x, emitter, context):\n" +
+      "  global count\n" +
+      "  count += 1\n" +
+      "  x['intField'] = count\n" +
+      "  emitter.emit(x)",
+      null);
+    PythonEvaluator transform = new PythonEvaluator(config);
+    transform.initialize(new MockTransformContext());
+    Assert.assertEquals(1, transform.getInterpreterCount());
+
+    final ThreadLocal<Integer> expectedCount = new ThreadLocal<Integer>() {
+      @Override
+      protected Integer initialValue() {
+        return 0;
+      }
+    };
+    try {
+      ConcurrentTransforms.transform(
+        transform, ImmutableList.of(RECORD1, RECORD2),
+        new ConcurrentTransforms.Check<StructuredRecord, StructuredRecord>() {
+          @Override
+          public void check(StructuredRecord input, MockEmitter<StructuredRecord> emitter) {
+            expectedCount.set(expectedCount.get() + 1);
+            Assert.assertEquals(expectedCount.get(), emitter.getEmitted().get(0).get("intField"));
+          }
+        });
+      // one interpreter for the thread that initialized the transform, and one for each thread that used it
+      Assert.assertTrue(transform.getInterpreterCount() > 1);
+    } finally {
+      transform.destroy();
+    }
+    Assert.assertEquals(0, transform.getInterpreterCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingTransformFunction() throws Exception {
+    PythonEvaluator.Config config = new PythonEvaluator.Config("def transfrom(x, emitter, context):\n  pass", null);
+    new PythonEvaluator(config).initialize(new MockTransformContext());
+  }
+
   @Test(expected = Exception.class)
   public void testScriptCompilationValidation() throws Exception {
     Schema outputSchema = Schema.recordOf(
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.transform;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * Test case for {@link ScriptEnginePool}.
+ */
+public class ScriptEnginePoolTest {
+
+  @Test
+  public void testCloseReleasesAllThreads() throws Exception {
+    final ScriptEnginePool pool = new ScriptEnginePool(new ScriptEnginePool.Initializer() {
+      @Override
+      public void initialize(ScriptEngine engine, JavaTypeConverters js) throws ScriptException {
+        engine.put("plugin", "some state");
+      }
+    });
+    ScriptEngine engine = pool.get();
+    Assert.assertSame(engine, pool.get());
+
+    // an engine created by another thread, which keeps running after the pool is closed
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Callable<ScriptEngine> getEngine = new Callable<ScriptEngine>() {
+        @Override
+        public ScriptEngine call() throws Exception {
+          return pool.get();
+        }
+      };
+      ScriptEngine otherEngine = executor.submit(getEngine).get();
+      Assert.assertNotSame(engine, otherEngine);
+      Assert.assertEquals(2, pool.size());
+
+      pool.close();
+      Assert.assertNull(engine.get("plugin"));
+      Assert.assertNull(otherEngine.get("plugin"));
+
+      // the other thread can no longer get its engine from the pool
+      try {
+        executor.submit(getEngine).get();
+        Assert.fail("Expected the pool to be closed.");
+      } catch (Exception e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    try {
+      pool.get();
+      Assert.fail("Expected the pool to be closed.");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -22,6 +22,7 @@ import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
 import co.cask.hydrator.common.test.MockEmitter;
 import co.cask.hydrator.common.test.MockTransformContext;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.junit.Assert;
@@ -78,6 +79,30 @@ public class ScriptFilterTransformTest {
     Assert.assertEquals(input, emitter.getEmitted().iterator().next());
   }
 
+  @Test
+  public void testMultipleThreads() throws Exception {
+    ScriptFilterTransform.ScriptFilterConfig config = new ScriptFilterTransform.ScriptFilterConfig();
+    config.script = "function shouldFilter(inputRecord) { return inputRecord.x * 1024 < 2048; }";
+    Schema schema = Schema.recordOf("number", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    Transform<StructuredRecord, StructuredRecord> transform = new ScriptFilterTransform(config);
+    transform.initialize(new MockTransformContext());
+    try {
+      ConcurrentTransforms.transform(
+        transform,
+        ImmutableList.of(StructuredRecord.builder(schema).set("x", 1).build(),
+                         StructuredRecord.builder(schema).set("x", 2).build()),
+        new ConcurrentTransforms.Check<StructuredRecord, StructuredRecord>() {
+          @Override
+          public void check(StructuredRecord input, MockEmitter<StructuredRecord> emitter) {
+            boolean filtered = (Integer) input.get("x") < 2;
+            Assert.assertEquals(filtered, emitter.getEmitted().isEmpty());
+          }
+        });
+    } finally {
+      transform.destroy();
+    }
+  }
+
   @Test
   public void testComplex() throws Exception {
     Schema inner2Schema = Schema.recordOf(
@@ -165,6 +165,27 @@ public class ScriptTransformTest {
     Assert.assertEquals(expectedListField, output.get("arrayField"));
   }
 
+  @Test
+  public void testMultipleThreads() throws Exception {
+    ScriptTransform.Config config = new ScriptTransform.Config(
+      "function transform(x, context) { x.intField = x.intField * 1024; return x; }", null, null);
+    Transform<StructuredRecord, StructuredRecord> transform = new ScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+    try {
+      ConcurrentTransforms.transform(
+        transform, ImmutableList.of(RECORD1, RECORD2),
+        new ConcurrentTransforms.Check<StructuredRecord, StructuredRecord>() {
+          @Override
+          public void check(StructuredRecord input, MockEmitter<StructuredRecord> emitter) {
+            Assert.assertEquals(1, emitter.getEmitted().size());
+            Assert.assertEquals((Integer) input.get("intField") * 1024, emitter.getEmitted().get(0).get("intField"));
+          }
+        });
+    } finally {
+      transform.destroy();
+    }
+  }
+
   @Test
   public void testSchemaValidation() throws Exception {
     Schema outputSchema = Schema.recordOf(
@@ -100,6 +100,52 @@ public class ValidatorTransformTest {
     Assert.assertEquals(4, mockContext.getMockMetrics().getPipelineCount("validator.1.total.processed"));
   }
 
+  @Test
+  public void testMultipleThreads() throws Exception {
+    ValidatorTransform.ValidatorConfig config = new ValidatorTransform.ValidatorConfig();
+    config.validationScript =
+      "   function isValid(input, context) { " +
+        "      var coreValidator = context.getValidator(\"coreValidator\");" +
+        "      if (!coreValidator.isInRange(input.content_length, 0, 1024 * 1024)) {" +
+        "         return {'isValid': false, 'errorCode': 10, 'errorMsg': input.url}; " +
+        "      }" +
+        "      return {'isValid': true, 'errorCode': 0, 'errorMsg': ''}; " +
+        "   };";
+    config.validators = "core";
+
+    ValidatorTransform transform = new ValidatorTransform(config);
+    transform.setUpInitialScript(new MockTransformContext(), ImmutableList.<Validator>of(new CoreValidator()));
+    StructuredRecord validRecord = StructuredRecord.builder(SCHEMA)
+      .set("date", "1/2/1988")
+      .set("url", "http://xyz.com")
+      .set("content_length", 120)
+      .build();
+    StructuredRecord invalidRecord = StructuredRecord.builder(SCHEMA)
+      .set("date", "1/2/1988")
+      .set("url", "http://abc.com")
+      .set("content_length", 1025 * 1024)
+      .build();
+    try {
+      ConcurrentTransforms.transform(
+        transform, ImmutableList.of(validRecord, invalidRecord),
+        new ConcurrentTransforms.Check<StructuredRecord, StructuredRecord>() {
+          @Override
+          public void check(StructuredRecord input, MockEmitter<StructuredRecord> emitter) {
+            if ((Integer) input.get("content_length") > 1024 * 1024) {
+              Assert.assertTrue(emitter.getEmitted().isEmpty());
+              Assert.assertEquals(1, emitter.getErrors().size());
+              Assert.assertEquals(input.get("url"), emitter.getErrors().get(0).getErrorMsg());
+            } else {
+              Assert.assertEquals(ImmutableList.of(input), emitter.getEmitted());
+              Assert.assertTrue(emitter.getErrors().isEmpty());
+            }
+          }
+        });
+    } finally {
+      transform.destroy();
+    }
+  }
+
   @Test
   public void testSchemaValidation() throws Exception {
     ValidatorTransform.ValidatorConfig config = new ValidatorTransform.ValidatorConfig();
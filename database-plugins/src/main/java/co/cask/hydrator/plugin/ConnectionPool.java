@@ -0,0 +1,437 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Pool of the JDBC connections to a database, shared by all the Database plugins running in the same JVM that
+ * connect with the same driver, connection string, user and pool settings. Closing a connection of the pool returns
+ * it to the pool, which keeps up to a maximum number of idle connections, for up to an idle timeout, so that
+ * the splits and stages that run one after the other in a container do not each open their own connections.
+ *
+ * Connections are opened with the JDBC driver directly, so the driver does not need to be registered with
+ * {@link DriverManager} through a {@link JDBCDriverShim}. Pooling is disabled if the maximum number
+ * of idle connections is 0, in which case closing a connection closes it. Idle connections are closed by
+ * a background thread once they time out, which only runs while there are idle connections, so pools do not
+ * need to be closed by the stages that use them. The connections are also counted for the stages that use them,
+ * which emit the counts in their metrics.
+ */
+public final class ConnectionPool {
+  /**
+   * Maximum number of idle connections kept open by a pool. Defaults to 0, which disables pooling.
+   */
+  public static final String MAX_IDLE = "co.cask.hydrator.db.pool.max.idle";
+  /**
+   * Milliseconds after which an idle connection is closed. Defaults to {@link #DEFAULT_IDLE_TIMEOUT_MS}.
+   */
+  public static final String IDLE_TIMEOUT = "co.cask.hydrator.db.pool.idle.timeout.ms";
+  public static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+  /**
+   * Name of the stage that uses the connections, which counts them in its metrics. Optional.
+   */
+  public static final String STAGE_NAME = "co.cask.hydrator.db.pool.stage.name";
+
+  // Names of the metrics of a pool
+  public static final String CONNECTIONS_OPENED = "connections.opened";
+  public static final String CONNECTIONS_REUSED = "connections.reused";
+  public static final String CONNECTIONS_EXPIRED = "connections.expired";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+  private static final ConcurrentMap<Key, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+  // One instance of each driver class, shared by all the pools that use it
+  private static final ConcurrentMap<Class<? extends Driver>, Driver> DRIVERS = new ConcurrentHashMap<>();
+  // Connections counted for each stage since its metrics were last taken, keyed by stage name
+  private static final ConcurrentMap<String, ConnectionCounts> STAGE_COUNTS = new ConcurrentHashMap<>();
+  // Closes the idle connections that time out. Its thread stops once it has no more connections to expire.
+  private static final ScheduledThreadPoolExecutor EXPIRY_EXECUTOR = createExpiryExecutor();
+
+  private final Key key;
+  private final Driver driver;
+  // Idle connections, with the most recently used first
+  private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+  private final ConnectionCounts counts = new ConnectionCounts();
+  // Settings of the connections when they are opened, which are restored when they are released
+  private boolean defaultsRecorded;
+  private int defaultTransactionIsolation;
+  private boolean defaultReadOnly;
+  private final Runnable expireConnections = new Runnable() {
+    @Override
+    public void run() {
+      removeExpiredConnections();
+    }
+  };
+
+  private ConnectionPool(Key key, Driver driver) {
+    this.key = key;
+    this.driver = driver;
+  }
+
+  /**
+   * Returns a connection to the database in the given configuration of an input or output format, from the pool
+   * with the settings in the configuration.
+   */
+  public static Connection getConnection(Configuration conf) throws SQLException {
+    return get(conf).getConnection(conf.get(STAGE_NAME));
+  }
+
+  /**
+   * Returns the pool of the database in the given configuration of an input or output format, with the settings
+   * in the configuration.
+   */
+  public static ConnectionPool get(Configuration conf) throws SQLException {
+    Class<? extends Driver> driverClass;
+    try {
+      @SuppressWarnings("unchecked")
+      Class<? extends Driver> loadedClass =
+        (Class<? extends Driver>) conf.getClassLoader().loadClass(conf.get(DBConfiguration.DRIVER_CLASS_PROPERTY));
+      driverClass = loadedClass;
+    } catch (ClassNotFoundException e) {
+      throw new SQLException(e);
+    }
+    return get(driverClass, conf.get(DBConfiguration.URL_PROPERTY), conf.get(DBConfiguration.USERNAME_PROPERTY),
+               conf.get(DBConfiguration.PASSWORD_PROPERTY), conf.getInt(MAX_IDLE, 0),
+               conf.getLong(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT_MS));
+  }
+
+  /**
+   * Returns the pool of the given driver, connection string, user and settings, which is created if it does not
+   * exist yet. Callers that use different settings for the same database get different pools.
+   *
+   * @param driverClass the JDBC driver class
+   * @param url the connection string of the database
+   * @param user the user to connect as, or null if the database does not need authentication
+   * @param password the password of the user
+   * @param maxIdle maximum number of idle connections kept open by the pool. If 0, pooling is disabled.
+   * @param idleTimeoutMillis milliseconds after which an idle connection is closed
+   */
+  public static ConnectionPool get(Class<? extends Driver> driverClass, String url, @Nullable String user,
+                                   @Nullable String password, int maxIdle, long idleTimeoutMillis) throws SQLException {
+    Key key = new Key(driverClass, url, user, password, maxIdle, idleTimeoutMillis);
+    ConnectionPool pool = POOLS.get(key);
+    if (pool == null) {
+      ConnectionPool newPool = new ConnectionPool(key, getDriver(driverClass, url));
+      pool = POOLS.putIfAbsent(key, newPool);
+      if (pool == null) {
+        pool = newPool;
+      }
+    }
+    return pool;
+  }
+
+  private static ScheduledThreadPoolExecutor createExpiryExecutor() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "connection-pool-expiry");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static Driver getDriver(Class<? extends Driver> driverClass, String url) throws SQLException {
+    Driver driver = DRIVERS.get(driverClass);
+    if (driver != null) {
+      return driver;
+    }
+    boolean registered;
+    try {
+      // throws SQLException if no suitable driver is found
+      DriverManager.getDriver(url);
+      registered = true;
+    } catch (SQLException e) {
+      registered = false;
+    }
+    try {
+      driver = driverClass.newInstance();
+      if (!registered) {
+        // De-register the default driver that gets registered when driver class is loaded.
+        DBUtils.deregisterAllDrivers(driverClass);
+      }
+    } catch (Exception e) {
+      throw new SQLException("Unable to load JDBC driver " + driverClass.getName(), e);
+    }
+    Driver existing = DRIVERS.putIfAbsent(driverClass, driver);
+    return existing == null ? driver : existing;
+  }
+
+  /**
+   * Returns a connection of the pool. Closing it returns it to the pool.
+   */
+  public Connection getConnection() throws SQLException {
+    return getConnection((String) null);
+  }
+
+  /**
+   * Returns a connection of the pool, which is counted in the metrics of the given stage. Closing it returns it to
+   * the pool.
+   *
+   * @param stageName the name of the stage that uses the connection, or null if it is not used by a stage
+   * @see #takeStageMetrics(String)
+   */
+  public Connection getConnection(@Nullable String stageName) throws SQLException {
+    Connection connection = null;
+    synchronized (this) {
+      removeExpiredConnections();
+      IdleConnection idleConnection = idleConnections.pollFirst();
+      if (idleConnection != null) {
+        connection = idleConnection.connection;
+      }
+    }
+
+    if (connection != null) {
+      count(stageName).reused.incrementAndGet();
+      counts.reused.incrementAndGet();
+    } else {
+      connection = openConnection(stageName);
+    }
+    return key.maxIdle > 0 ? new PooledConnection(connection, this, stageName) : connection;
+  }
+
+  /**
+   * Returns the number of connections opened, reused and expired by the pool so far, keyed by the names of
+   * the metrics.
+   */
+  public Map<String, Long> getMetrics() {
+    return counts.get();
+  }
+
+  /**
+   * Returns the number of connections opened and reused by the given stage, and of the connections that it
+   * released that expired, since this method was last called for the stage, keyed by the names of the metrics.
+   * The counts include the connections of all the pools, so that they are only emitted once by the stage, however
+   * many pools it uses.
+   */
+  public static Map<String, Long> takeStageMetrics(String stageName) {
+    return count(stageName).take();
+  }
+
+  private static ConnectionCounts count(@Nullable String stageName) {
+    if (stageName == null) {
+      // The connections are only counted by the pool
+      return new ConnectionCounts();
+    }
+    ConnectionCounts stageCounts = STAGE_COUNTS.get(stageName);
+    if (stageCounts == null) {
+      ConnectionCounts newCounts = new ConnectionCounts();
+      stageCounts = STAGE_COUNTS.putIfAbsent(stageName, newCounts);
+      if (stageCounts == null) {
+        stageCounts = newCounts;
+      }
+    }
+    return stageCounts;
+  }
+
+  private Connection openConnection(@Nullable String stageName) throws SQLException {
+    Properties properties = new Properties();
+    if (key.user != null) {
+      properties.put("user", key.user);
+    }
+    if (key.password != null) {
+      properties.put("password", key.password);
+    }
+    Connection connection = driver.connect(key.url, properties);
+    if (connection == null) {
+      throw new SQLException(String.format("JDBC driver %s does not accept the connection string %s.",
+                                           key.driverClass.getName(), key.url));
+    }
+    if (key.maxIdle > 0) {
+      recordDefaults(connection);
+    }
+    count(stageName).opened.incrementAndGet();
+    long opened = counts.opened.incrementAndGet();
+    LOG.debug("Opened connection {} to {}, {}", opened, key.url, getMetrics());
+    return connection;
+  }
+
+  /**
+   * Returns a connection released by the given stage to the pool. It is closed instead if the pool already has
+   * as many idle connections as it can keep.
+   */
+  void release(Connection connection, @Nullable String stageName) {
+    try {
+      reset(connection);
+      synchronized (this) {
+        removeExpiredConnections();
+        if (idleConnections.size() < key.maxIdle) {
+          idleConnections.addFirst(new IdleConnection(connection, System.nanoTime(), stageName));
+          EXPIRY_EXECUTOR.schedule(expireConnections, key.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+          return;
+        }
+      }
+    } catch (SQLException e) {
+      LOG.debug("Unable to reset connection to {}, closing it.", key.url, e);
+    }
+    closeQuietly(connection);
+  }
+
+  private synchronized void recordDefaults(Connection connection) throws SQLException {
+    if (!defaultsRecorded) {
+      defaultTransactionIsolation = connection.getTransactionIsolation();
+      defaultReadOnly = connection.isReadOnly();
+      defaultsRecorded = true;
+    }
+  }
+
+  /**
+   * Resets a connection to the state of a new connection, so that the next user of the connection does not get
+   * the settings of the previous one.
+   */
+  private void reset(Connection connection) throws SQLException {
+    if (!connection.getAutoCommit()) {
+      // Discard anything that was not committed
+      connection.rollback();
+      connection.setAutoCommit(true);
+    }
+    int transactionIsolation;
+    boolean readOnly;
+    synchronized (this) {
+      transactionIsolation = defaultTransactionIsolation;
+      readOnly = defaultReadOnly;
+    }
+    if (connection.getTransactionIsolation() != transactionIsolation) {
+      connection.setTransactionIsolation(transactionIsolation);
+    }
+    if (connection.isReadOnly() != readOnly) {
+      connection.setReadOnly(readOnly);
+    }
+  }
+
+  private synchronized void removeExpiredConnections() {
+    long now = System.nanoTime();
+    long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(key.idleTimeoutMillis);
+    while (!idleConnections.isEmpty() && now - idleConnections.peekLast().lastUsed >= idleTimeoutNanos) {
+      IdleConnection idleConnection = idleConnections.pollLast();
+      closeQuietly(idleConnection.connection);
+      count(idleConnection.stageName).expired.incrementAndGet();
+      counts.expired.incrementAndGet();
+    }
+  }
+
+  private static void closeQuietly(Connection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      LOG.debug("Exception while closing connection. Ignoring.", e);
+    }
+  }
+
+  /**
+   * A connection in a pool, when it was last used, in nanoseconds, and the stage that released it.
+   */
+  private static final class IdleConnection {
+    private final Connection connection;
+    private final long lastUsed;
+    private final String stageName;
+
+    private IdleConnection(Connection connection, long lastUsed, @Nullable String stageName) {
+      this.connection = connection;
+      this.lastUsed = lastUsed;
+      this.stageName = stageName;
+    }
+  }
+
+  /**
+   * Numbers of connections opened, reused and expired.
+   */
+  private static final class ConnectionCounts {
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    private Map<String, Long> get() {
+      return ImmutableMap.of(CONNECTIONS_OPENED, opened.get(),
+                             CONNECTIONS_REUSED, reused.get(),
+                             CONNECTIONS_EXPIRED, expired.get());
+    }
+
+    /**
+     * Returns the counts, and resets them.
+     */
+    private Map<String, Long> take() {
+      return ImmutableMap.of(CONNECTIONS_OPENED, opened.getAndSet(0),
+                             CONNECTIONS_REUSED, reused.getAndSet(0),
+                             CONNECTIONS_EXPIRED, expired.getAndSet(0));
+    }
+  }
+
+  /**
+   * Identifies the pool of the connections to a database.
+   */
+  private static final class Key {
+    private final Class<? extends Driver> driverClass;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxIdle;
+    private final long idleTimeoutMillis;
+
+    private Key(Class<? extends Driver> driverClass, String url, @Nullable String user, @Nullable String password,
+                int maxIdle, long idleTimeoutMillis) {
+      this.driverClass = driverClass;
+      this.url = url;
+      this.user = user;
+      this.password = password;
+      this.maxIdle = maxIdle;
+      this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key other = (Key) o;
+      return driverClass == other.driverClass && url.equals(other.url) &&
+        Objects.equal(user, other.user) && Objects.equal(password, other.password) &&
+        maxIdle == other.maxIdle && idleTimeoutMillis == other.idleTimeoutMillis;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(driverClass, url, user, password, maxIdle, idleTimeoutMillis);
+    }
+  }
+}
@@ -19,6 +19,10 @@ package co.cask.hydrator.plugin;
 import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.plugin.PluginConfig;
 
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -56,10 +60,93 @@ public class DBConfig extends PluginConfig {
   @Nullable
   public String columnNameCase;
 
+  @Description("Transaction isolation level of the connections to the database. One of " +
+    "'TRANSACTION_READ_UNCOMMITTED', 'TRANSACTION_READ_COMMITTED', 'TRANSACTION_REPEATABLE_READ' or " +
+    "'TRANSACTION_SERIALIZABLE'. Defaults to 'TRANSACTION_SERIALIZABLE'.")
+  @Nullable
+  public String transactionIsolationLevel;
+
+  @Description("Whether the connections to the database commit after every statement. Defaults to false.")
+  @Nullable
+  public Boolean autoCommit;
+
+  @Description("Number of rows to fetch from the database at a time when reading. If not set, the default of " +
+    "the JDBC driver is used. Some drivers only use the fetch size if auto-commit is disabled, and MySQL rows are " +
+    "always streamed one at a time.")
+  @Nullable
+  public Integer fetchSize;
+
+  @Description("Maximum number of idle connections to the database kept open in each container, so that they can " +
+    "be reused by the splits and stages that run after the ones that opened them. Defaults to 0, which disables " +
+    "connection pooling.")
+  @Nullable
+  public Integer connectionPoolSize;
+
+  @Description("Number of seconds after which an idle connection of the pool is closed. Defaults to 60.")
+  @Nullable
+  public Integer connectionIdleTimeout;
+
   public DBConfig() {
     jdbcPluginType = "jdbc";
   }
 
+  /**
+   * Returns the transaction isolation level of the connections to the database, as one of the
+   * {@link Connection} constants.
+   *
+   * @throws IllegalArgumentException if the configured transaction isolation level is not valid
+   */
+  public int getTransactionIsolationLevel() {
+    if (transactionIsolationLevel == null) {
+      return Connection.TRANSACTION_SERIALIZABLE;
+    }
+    switch (transactionIsolationLevel.trim().toUpperCase()) {
+      case "TRANSACTION_READ_UNCOMMITTED":
+        return Connection.TRANSACTION_READ_UNCOMMITTED;
+      case "TRANSACTION_READ_COMMITTED":
+        return Connection.TRANSACTION_READ_COMMITTED;
+      case "TRANSACTION_REPEATABLE_READ":
+        return Connection.TRANSACTION_REPEATABLE_READ;
+      case "TRANSACTION_SERIALIZABLE":
+        return Connection.TRANSACTION_SERIALIZABLE;
+      default:
+        throw new IllegalArgumentException("Invalid transaction isolation level: " + transactionIsolationLevel);
+    }
+  }
+
+  /**
+   * Returns the maximum number of idle connections to the database kept open by the connection pool.
+   */
+  public int getConnectionPoolSize() {
+    return connectionPoolSize == null ? 0 : connectionPoolSize;
+  }
+
+  public long getConnectionIdleTimeoutMillis() {
+    return connectionIdleTimeout == null ?
+      ConnectionPool.DEFAULT_IDLE_TIMEOUT_MS : TimeUnit.SECONDS.toMillis(connectionIdleTimeout);
+  }
+
+  /**
+   * Returns the settings of the connections to the database, to pass to the input and output formats
+   * in their configuration.
+   *
+   * @param stageName the name of the stage, which counts the connections of the formats in its metrics
+   */
+  public Map<String, String> getConnectionProperties(String stageName) {
+    Map<String, String> properties = new HashMap<>();
+    properties.put(DBUtils.TRANSACTION_ISOLATION_LEVEL, String.valueOf(getTransactionIsolationLevel()));
+    if (autoCommit != null) {
+      properties.put(DBUtils.AUTO_COMMIT, String.valueOf(autoCommit));
+    }
+    if (fetchSize != null) {
+      properties.put(DBUtils.FETCH_SIZE, String.valueOf(fetchSize));
+    }
+    properties.put(ConnectionPool.MAX_IDLE, String.valueOf(getConnectionPoolSize()));
+    properties.put(ConnectionPool.IDLE_TIMEOUT, String.valueOf(getConnectionIdleTimeoutMillis()));
+    properties.put(ConnectionPool.STAGE_NAME, stageName);
+    return properties;
+  }
+
   protected String cleanQuery(String query) {
     query = query.trim();
     // find the last character that is not whitespace or a semicolon
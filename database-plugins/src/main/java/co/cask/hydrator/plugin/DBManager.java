@@ -19,6 +19,7 @@ package co.cask.hydrator.plugin;
 import co.cask.cdap.api.plugin.PluginProperties;
 import co.cask.cdap.etl.api.Destroyable;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import org.slf4j.Logger;
@@ -30,6 +31,7 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 /**
  * Class to manage common database operations for Database source and sink plugins.
@@ -38,6 +40,8 @@ public class DBManager implements Destroyable {
   private static final Logger LOG = LoggerFactory.getLogger(DBManager.class);
   private final DBConfig dbConfig;
   private JDBCDriverShim driverShim;
+  private String stageName;
+  private StageMetrics metrics;
 
   public DBManager(DBConfig dbConfig) {
     this.dbConfig = dbConfig;
@@ -50,6 +54,13 @@ public class DBManager implements Destroyable {
     Preconditions.checkArgument(!(dbConfig.user != null && dbConfig.password == null),
                                 "password is null. Please provide both user name and password if database requires" +
                                   "authentication. If not, please remove dbUser and retry.");
+    // Fails if the transaction isolation level is invalid
+    dbConfig.getTransactionIsolationLevel();
+    Preconditions.checkArgument(dbConfig.getConnectionPoolSize() >= 0,
+                                "Connection pool size must not be negative, found %s.", dbConfig.connectionPoolSize);
+    Preconditions.checkArgument(dbConfig.getConnectionIdleTimeoutMillis() >= 0,
+                                "Connection idle timeout must not be negative, found %s.",
+                                dbConfig.connectionIdleTimeout);
     Class<? extends Driver> jdbcDriverClass = pipelineConfigurer.usePluginClass(dbConfig.jdbcPluginType,
                                                                                 dbConfig.jdbcPluginName,
                                                                                 jdbcPluginId,
@@ -115,8 +126,38 @@ public class DBManager implements Destroyable {
     }
   }
 
+  /**
+   * Returns a connection from the pool of the database, which is counted in the metrics of the stage once they are
+   * initialized.
+   */
+  public Connection getConnection(Class<? extends Driver> jdbcDriverClass) throws SQLException {
+    return ConnectionPool.get(jdbcDriverClass, dbConfig.connectionString, dbConfig.user, dbConfig.password,
+                              dbConfig.getConnectionPoolSize(), dbConfig.getConnectionIdleTimeoutMillis())
+      .getConnection(stageName);
+  }
+
+  /**
+   * Counts the connections opened and reused by the given stage while it runs, and the connections it released
+   * that expired. They are emitted through the given metrics of the stage when it is destroyed.
+   */
+  public void initializeMetrics(String stageName, StageMetrics metrics) {
+    this.stageName = stageName;
+    this.metrics = metrics;
+  }
+
   @Override
   public void destroy() {
+    if (metrics != null) {
+      for (Map.Entry<String, Long> stageMetric : ConnectionPool.takeStageMetrics(stageName).entrySet()) {
+        // Metrics are counted with ints
+        long count = stageMetric.getValue();
+        while (count > 0) {
+          int delta = (int) Math.min(count, Integer.MAX_VALUE);
+          metrics.count(stageMetric.getKey(), delta);
+          count -= delta;
+        }
+      }
+    }
     try {
       // DriverManager handles nulls
       DriverManager.deregisterDriver(driverShim);
@@ -54,20 +54,38 @@ public class DBRecord implements Writable, DBWritable {
 
   private StructuredRecord record;
   /**
+   * The schema derived from the last {@link ResultSet} this record was read from. The record readers of the input
+   * formats read every row of their {@link ResultSet} into the same DBRecord, so it is only derived once per split.
+   */
+  private ResultSetSchema resultSetSchema;
+  /**
+   * The fields of the {@link #record} that are written to the columns of a table, with the types of the columns.
    * Need to cache {@link ResultSetMetaData} of the record for use during writing to a table.
    * This is because we cannot rely on JDBC drivers to properly set metadata in the {@link PreparedStatement}
    * passed to the #write method in this class.
    */
-  private int [] columnTypes;
+  private FieldMapping fieldMapping;
 
   /**
    * Used to construct a DBRecord from a StructuredRecord in the ETL Pipeline
    *
    * @param record the {@link StructuredRecord} to construct the {@link DBRecord} from
+   * @param columnTypes the SQL types of the columns, one for each field of the record
    */
   public DBRecord(StructuredRecord record, int [] columnTypes) {
+    this(record, new FieldMapping(record.getSchema(), getFieldNames(record.getSchema()), columnTypes));
+  }
+
+  /**
+   * Used to construct a DBRecord that writes some of the fields of a StructuredRecord in the ETL Pipeline,
+   * without building a record of just these fields.
+   *
+   * @param record the {@link StructuredRecord} to construct the {@link DBRecord} from
+   * @param fieldMapping the fields of the record to write, derived from the schema of the record
+   */
+  public DBRecord(StructuredRecord record, FieldMapping fieldMapping) {
     this.record = record;
-    this.columnTypes = columnTypes;
+    this.fieldMapping = fieldMapping;
   }
 
   /**
@@ -85,7 +103,15 @@ public class DBRecord implements Writable, DBWritable {
    * @return the {@link StructuredRecord} contained in this object
    */
   public StructuredRecord getRecord() {
-    return record;
+    if (fieldMapping == null || fieldMapping.projectedSchema == fieldMapping.schema) {
+      return record;
+    }
+    // Only the mapped fields are part of this record
+    StructuredRecord.Builder builder = StructuredRecord.builder(fieldMapping.projectedSchema);
+    for (String fieldName : fieldMapping.fieldNames) {
+      builder.set(fieldName, record.get(fieldName));
+    }
+    return builder.build();
   }
 
   /**
@@ -94,30 +120,27 @@ public class DBRecord implements Writable, DBWritable {
    * @param resultSet the {@link ResultSet} to build the {@link StructuredRecord} from
    */
   public void readFields(ResultSet resultSet) throws SQLException {
-    List<Schema.Field> schemaFields = Lists.newArrayList();
-    ResultSetMetaData metadata = resultSet.getMetaData();
-    // ResultSetMetadata columns are numbered starting with 1
-    for (int i = 1; i <= metadata.getColumnCount(); i++) {
-      String columnName = metadata.getColumnName(i);
-      int columnSqlType = metadata.getColumnType(i);
-      Schema columnSchema = Schema.of(getType(columnSqlType));
-      if (ResultSetMetaData.columnNullable == metadata.isNullable(i)) {
-        columnSchema = Schema.nullableOf(columnSchema);
-      }
-      Schema.Field field = Schema.Field.of(columnName, columnSchema);
-      schemaFields.add(field);
+    if (resultSetSchema == null || resultSetSchema.resultSet != resultSet) {
+      resultSetSchema = new ResultSetSchema(resultSet);
     }
-    Schema schema = Schema.recordOf("dbRecord", schemaFields);
-    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
-    for (int i = 0; i < schemaFields.size(); i++) {
-      Schema.Field field = schemaFields.get(i);
-      int sqlColumnType = metadata.getColumnType(i + 1);
-      recordBuilder.set(field.getName(), transformValue(sqlColumnType, resultSet.getObject(field.getName())));
+
+    String[] fieldNames = resultSetSchema.fieldNames;
+    int[] sqlColumnTypes = resultSetSchema.columnTypes;
+    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(resultSetSchema.schema);
+    for (int i = 0; i < fieldNames.length; i++) {
+      // ResultSet columns are numbered starting with 1
+      recordBuilder.set(fieldNames[i], transformValue(sqlColumnTypes[i], resultSet.getObject(i + 1)));
     }
     record = recordBuilder.build();
   }
 
   public void write(DataOutput out) throws IOException {
+    if (fieldMapping != null) {
+      for (int i = 0; i < fieldMapping.fieldNames.length; i++) {
+        writeToDataOut(out, fieldMapping.fieldTypes[i], record.get(fieldMapping.fieldNames[i]));
+      }
+      return;
+    }
     Schema recordSchema = record.getSchema();
     List<Schema.Field> schemaFields = recordSchema.getFields();
     for (Schema.Field field : schemaFields) {
@@ -135,18 +158,31 @@ public class DBRecord implements Writable, DBWritable {
    * @param stmt the {@link PreparedStatement} to write the {@link StructuredRecord} to
    */
   public void write(PreparedStatement stmt) throws SQLException {
-    Schema recordSchema = record.getSchema();
-    List<Schema.Field> schemaFields = recordSchema.getFields();
-    for (int i = 0; i < schemaFields.size(); i++) {
-      Schema.Field field = schemaFields.get(i);
-      String fieldName = field.getName();
-      Schema.Type fieldType = getNonNullableType(field);
-      Object fieldValue = record.get(fieldName);
-      writeToDB(stmt, fieldType, fieldValue, i);
+    // Records read from a ResultSet have no column types to write them with
+    Preconditions.checkState(fieldMapping != null, "Only records constructed with column types can be written.");
+    String[] fieldNames = fieldMapping.fieldNames;
+    int[] columnTypes = fieldMapping.columnTypes;
+    FieldBinder[] binders = fieldMapping.getBinders();
+    for (int i = 0; i < fieldNames.length; i++) {
+      Object fieldValue = record.get(fieldNames[i]);
+      // In JDBC, parameter indices start with 1
+      if (fieldValue == null) {
+        stmt.setNull(i + 1, columnTypes[i]);
+      } else {
+        binders[i].bind(stmt, i + 1, fieldValue);
+      }
+    }
+  }
+
+  private static List<String> getFieldNames(Schema schema) {
+    List<String> fieldNames = Lists.newArrayListWithCapacity(schema.getFields().size());
+    for (Schema.Field field : schema.getFields()) {
+      fieldNames.add(field.getName());
     }
+    return fieldNames;
   }
 
-  private Schema.Type getType(int sqlType) throws SQLException {
+  private static Schema.Type getType(int sqlType) throws SQLException {
     // Type.STRING covers sql types - VARCHAR,CHAR,CLOB,LONGNVARCHAR,LONGVARCHAR,NCHAR,NCLOB,NVARCHAR
     Schema.Type type = Schema.Type.STRING;
     switch (sqlType) {
@@ -208,7 +244,7 @@ public class DBRecord implements Writable, DBWritable {
     return type;
   }
 
-  private Schema.Type getNonNullableType(Schema.Field field) {
+  private static Schema.Type getNonNullableType(Schema.Field field) {
     Schema.Type type;
     if (field.getSchema().isNullable()) {
       type = field.getSchema().getNonNullable().getType();
@@ -300,79 +336,215 @@ public class DBRecord implements Writable, DBWritable {
     }
   }
 
-  private void writeToDB(PreparedStatement stmt, Schema.Type fieldType, Object fieldValue,
-                         int fieldIndex) throws SQLException {
-    int sqlIndex = fieldIndex + 1;
-    switch (fieldType) {
-      case NULL:
-        stmt.setNull(sqlIndex, fieldIndex);
-        break;
-      case STRING:
-        // clob can also be written to as setString
-        stmt.setString(sqlIndex, (String) fieldValue);
-        break;
-      case BOOLEAN:
-        stmt.setBoolean(sqlIndex, (Boolean) fieldValue);
-        break;
-      case INT:
-        // write short or int appropriately
-        writeInt(stmt, fieldIndex, sqlIndex, fieldValue);
-        break;
-      case LONG:
-        // write date, timestamp or long appropriately
-        writeLong(stmt, fieldIndex, sqlIndex, fieldValue);
-        break;
-      case FLOAT:
-        // both real and float are set with the same method on prepared statement
-        stmt.setFloat(sqlIndex, (Float) fieldValue);
-        break;
-      case DOUBLE:
-        stmt.setDouble(sqlIndex, (Double) fieldValue);
-        break;
-      case BYTES:
-        writeBytes(stmt, fieldIndex, sqlIndex, fieldValue);
-        break;
-      default:
-        throw new SQLException(String.format("Unsupported datatype: %s with value: %s.", fieldType, fieldValue));
+  /**
+   * The fields of the records of a schema that are written to the columns of a table, in the order of the columns.
+   * It is derived once per schema, so that each record can be written by index without projecting it to a record
+   * of just these fields.
+   */
+  public static final class FieldMapping {
+    private final Schema schema;
+    private final Schema projectedSchema;
+    private final String[] fieldNames;
+    private final Schema.Type[] fieldTypes;
+    private final int[] columnTypes;
+    private FieldBinder[] binders;
+
+    /**
+     * @param schema the schema of the records
+     * @param columns the columns of the table, which must all be fields of the schema
+     * @param columnTypes the SQL types of the columns
+     */
+    public FieldMapping(Schema schema, List<String> columns, int[] columnTypes) {
+      List<Schema.Field> projectedFields = Lists.newArrayListWithCapacity(columns.size());
+      this.fieldNames = new String[columns.size()];
+      this.fieldTypes = new Schema.Type[columns.size()];
+      for (int i = 0; i < fieldNames.length; i++) {
+        String column = columns.get(i);
+        Schema.Field field = schema.getField(column);
+        Preconditions.checkNotNull(field, "Missing schema field for column '%s'", column);
+        projectedFields.add(field);
+        fieldNames[i] = column;
+        fieldTypes[i] = getNonNullableType(field);
+      }
+      this.schema = schema;
+      // The record itself is the projection if all its fields are written, in order
+      this.projectedSchema = projectedFields.equals(schema.getFields()) ?
+        schema : Schema.recordOf(schema.getRecordName(), projectedFields);
+      this.columnTypes = columnTypes;
     }
-  }
 
-  private void writeBytes(PreparedStatement stmt, int fieldIndex, int sqlIndex, Object fieldValue) throws SQLException {
-    byte [] byteValue = (byte []) fieldValue;
-    int parameterType = columnTypes[fieldIndex];
-    if (Types.BLOB == parameterType) {
-      stmt.setBlob(sqlIndex, new SerialBlob(byteValue));
-      return;
+    /**
+     * @return the schema of the records this mapping was derived from
+     */
+    public Schema getSchema() {
+      return schema;
+    }
+
+    // Created on first use, since the column types are only known when writing to a table
+    private FieldBinder[] getBinders() {
+      if (binders == null) {
+        FieldBinder[] fieldBinders = new FieldBinder[fieldTypes.length];
+        for (int i = 0; i < fieldBinders.length; i++) {
+          fieldBinders[i] = FieldBinder.of(fieldTypes[i], columnTypes[i]);
+        }
+        binders = fieldBinders;
+      }
+      return binders;
     }
-    // handles BINARY, VARBINARY and LOGVARBINARY
-    stmt.setBytes(sqlIndex, (byte []) fieldValue);
   }
 
-  private void writeInt(PreparedStatement stmt, int fieldIndex, int sqlIndex, Object fieldValue) throws SQLException {
-    Integer intValue = (Integer) fieldValue;
-    int parameterType = columnTypes[fieldIndex];
-    if (Types.TINYINT == parameterType || Types.SMALLINT == parameterType) {
-      stmt.setShort(sqlIndex, intValue.shortValue());
-      return;
+  /**
+   * Sets a non-null field value to a {@link PreparedStatement} parameter, with the setter that matches both
+   * the type of the field and the SQL type of the column. It is chosen once per column, instead of for every value.
+   */
+  private enum FieldBinder {
+    STRING {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        // clob can also be written to as setString
+        stmt.setString(sqlIndex, (String) value);
+      }
+    },
+    BOOLEAN {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setBoolean(sqlIndex, (Boolean) value);
+      }
+    },
+    SHORT {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setShort(sqlIndex, ((Integer) value).shortValue());
+      }
+    },
+    INT {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setInt(sqlIndex, (Integer) value);
+      }
+    },
+    LONG {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setLong(sqlIndex, (Long) value);
+      }
+    },
+    DATE {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setDate(sqlIndex, new Date((Long) value));
+      }
+    },
+    TIME {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setTime(sqlIndex, new Time((Long) value));
+      }
+    },
+    TIMESTAMP {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setTimestamp(sqlIndex, new Timestamp((Long) value));
+      }
+    },
+    FLOAT {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        // both real and float are set with the same method on prepared statement
+        stmt.setFloat(sqlIndex, (Float) value);
+      }
+    },
+    DOUBLE {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setDouble(sqlIndex, (Double) value);
+      }
+    },
+    BYTES {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        // handles BINARY, VARBINARY and LONGVARBINARY
+        stmt.setBytes(sqlIndex, (byte []) value);
+      }
+    },
+    BLOB {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        stmt.setBlob(sqlIndex, new SerialBlob((byte []) value));
+      }
+    },
+    NULL {
+      @Override
+      void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException {
+        // only null values are written to null fields
+        throw new SQLException(String.format("Unsupported value %s for a field of type null.", value));
+      }
+    };
+
+    abstract void bind(PreparedStatement stmt, int sqlIndex, Object value) throws SQLException;
+
+    static FieldBinder of(Schema.Type fieldType, int columnType) {
+      switch (fieldType) {
+        case NULL:
+          return NULL;
+        case STRING:
+          return STRING;
+        case BOOLEAN:
+          return BOOLEAN;
+        case INT:
+          // write short or int appropriately
+          return Types.TINYINT == columnType || Types.SMALLINT == columnType ? SHORT : INT;
+        case LONG:
+          // write date, timestamp or long appropriately
+          switch (columnType) {
+            case Types.DATE:
+              return DATE;
+            case Types.TIME:
+              return TIME;
+            case Types.TIMESTAMP:
+              return TIMESTAMP;
+            default:
+              return LONG;
+          }
+        case FLOAT:
+          return FLOAT;
+        case DOUBLE:
+          return DOUBLE;
+        case BYTES:
+          return Types.BLOB == columnType ? BLOB : BYTES;
+        default:
+          throw new IllegalArgumentException(String.format("Unsupported datatype: %s.", fieldType));
+      }
     }
-    stmt.setInt(sqlIndex, intValue);
   }
 
-  private void writeLong(PreparedStatement stmt, int fieldIndex, int sqlIndex, Object fieldValue) throws SQLException {
-    Long longValue = (Long) fieldValue;
-    switch (columnTypes[fieldIndex]) {
-      case Types.DATE:
-        stmt.setDate(sqlIndex, new Date(longValue));
-        break;
-      case Types.TIME:
-        stmt.setTime(sqlIndex, new Time(longValue));
-        break;
-      case Types.TIMESTAMP:
-        stmt.setTimestamp(sqlIndex, new Timestamp(longValue));
-        break;
-      default:
-        stmt.setLong(sqlIndex, longValue);
-        break;
+  /**
+   * The schema of the records read from a {@link ResultSet}, derived from its {@link ResultSetMetaData}.
+   */
+  private static final class ResultSetSchema {
+    private final ResultSet resultSet;
+    private final Schema schema;
+    private final String[] fieldNames;
+    private final int[] columnTypes;
+
+    private ResultSetSchema(ResultSet resultSet) throws SQLException {
+      this.resultSet = resultSet;
+      ResultSetMetaData metadata = resultSet.getMetaData();
+      int columnCount = metadata.getColumnCount();
+      List<Schema.Field> schemaFields = Lists.newArrayListWithCapacity(columnCount);
+      this.fieldNames = new String[columnCount];
+      this.columnTypes = new int[columnCount];
+      // ResultSetMetadata columns are numbered starting with 1
+      for (int i = 0; i < columnCount; i++) {
+        fieldNames[i] = metadata.getColumnName(i + 1);
+        columnTypes[i] = metadata.getColumnType(i + 1);
+        Schema columnSchema = Schema.of(getType(columnTypes[i]));
+        if (ResultSetMetaData.columnNullable == metadata.isNullable(i + 1)) {
+          columnSchema = Schema.nullableOf(columnSchema);
+        }
+        schemaFields.add(Schema.Field.of(fieldNames[i], columnSchema));
+      }
+      this.schema = Schema.recordOf("dbRecord", schemaFields);
     }
   }
 }
@@ -16,16 +16,27 @@
 
 package co.cask.hydrator.plugin;
 
+import org.apache.hadoop.conf.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
 import java.sql.Driver;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.Hashtable;
 import java.util.List;
+import javax.annotation.Nullable;
 import javax.management.InstanceNotFoundException;
 import javax.management.IntrospectionException;
 import javax.management.MBeanRegistrationException;
@@ -38,6 +49,21 @@ import javax.management.ReflectionException;
  * Utility methods for Database plugins shared by Database plugins.
  */
 public final class DBUtils {
+  /**
+   * Whether connections commit after each statement. Defaults to false.
+   */
+  public static final String AUTO_COMMIT = "co.cask.hydrator.db.auto.commit";
+  /**
+   * Transaction isolation level of connections, as one of the {@link Connection} constants.
+   * Defaults to {@link Connection#TRANSACTION_SERIALIZABLE}.
+   */
+  public static final String TRANSACTION_ISOLATION_LEVEL = "co.cask.hydrator.db.transaction.isolation.level";
+  /**
+   * Number of rows fetched from the database at a time by the queries of the input formats. Defaults to the default
+   * of the driver. It is not used with MySQL, whose rows the input formats stream one at a time.
+   */
+  public static final String FETCH_SIZE = "co.cask.hydrator.db.fetch.size";
+
   private static final Logger LOG = LoggerFactory.getLogger(DBUtils.class);
 
   /**
@@ -57,6 +83,91 @@ public final class DBUtils {
     unregisterOracleMBean(pluginClassLoader);
   }
 
+  /**
+   * Configures a connection with the auto-commit and transaction isolation level settings in the given configuration.
+   */
+  public static void configureConnection(Connection connection, Configuration conf) throws SQLException {
+    connection.setAutoCommit(conf.getBoolean(AUTO_COMMIT, false));
+    connection.setTransactionIsolation(conf.getInt(TRANSACTION_ISOLATION_LEVEL, Connection.TRANSACTION_SERIALIZABLE));
+  }
+
+  /**
+   * Prepares a query of a record reader the way the Hadoop record readers do, with the given fetch size.
+   */
+  public static PreparedStatement prepareQuery(Connection connection, String query,
+                                               int fetchSize) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                                                              ResultSet.CONCUR_READ_ONLY);
+    statement.setFetchSize(fetchSize);
+    return statement;
+  }
+
+  /**
+   * Returns whether the values of the given SQL type can be put in a query by {@link #getSQLLiteral}, which is only
+   * the case of numbers, dates and times. Strings are not, since quoting them is not enough to prevent SQL injection
+   * on the databases where backslashes escape quotes, such as MySQL.
+   *
+   * @param type the SQL type, as one of the {@link Types} constants
+   */
+  public static boolean hasSQLLiteral(int type) {
+    switch (type) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+      case Types.DATE:
+      case Types.TIME:
+      case Types.TIMESTAMP:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns the value of a column of the current row of a result set as a SQL literal that can be put in a query,
+   * or null if it is null. Dates and times use the JDBC escape syntax, which every driver translates to its own.
+   *
+   * @param resultSet the result set, positioned on a row
+   * @param column the index of the column, starting with 1
+   * @throws IllegalArgumentException if the type of the column is not one of the types that
+   *         {@link #hasSQLLiteral} accepts
+   */
+  @Nullable
+  public static String getSQLLiteral(ResultSet resultSet, int column) throws SQLException {
+    int type = resultSet.getMetaData().getColumnType(column);
+    switch (type) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        BigDecimal number = resultSet.getBigDecimal(column);
+        return number == null ? null : number.toPlainString();
+      case Types.DATE:
+        Date date = resultSet.getDate(column);
+        return date == null ? null : String.format("{d '%s'}", date);
+      case Types.TIME:
+        Time time = resultSet.getTime(column);
+        return time == null ? null : String.format("{t '%s'}", time);
+      case Types.TIMESTAMP:
+        Timestamp timestamp = resultSet.getTimestamp(column);
+        return timestamp == null ? null : String.format("{ts '%s'}", timestamp);
+      default:
+        throw new IllegalArgumentException(String.format("Values of SQL type %s cannot be used as SQL literals.",
+                                                         resultSet.getMetaData().getColumnTypeName(column)));
+    }
+  }
+
   /**
    * De-register all SQL drivers that are associated with the class
    */
@@ -16,10 +16,16 @@
 
 package co.cask.hydrator.plugin;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ObjectArrays;
+import com.google.common.hash.Hashing;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
 import org.apache.hadoop.mapreduce.lib.db.DBOutputFormat;
 import org.apache.hadoop.mapreduce.lib.db.DBWritable;
@@ -29,10 +35,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class that extends {@link DBOutputFormat} to load the database driver class correctly.
@@ -43,112 +51,341 @@ import java.sql.SQLException;
  * {@inheritDoc}
  */
 public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<K, V> {
+  /**
+   * Number of rows to send to the database with each executeBatch. If 0 or less, all the rows are sent at close.
+   */
+  public static final String BATCH_SIZE = "co.cask.hydrator.db.output.batch.size";
+  /**
+   * Number of executed batches after which the rows are committed. If 0 or less, the rows are committed at close.
+   */
+  public static final String COMMIT_INTERVAL = "co.cask.hydrator.db.output.commit.interval";
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  /**
+   * How the rows are written to the table, one of the {@link WriteMode} values. Defaults to {@link WriteMode#INSERT}.
+   */
+  public static final String WRITE_MODE = "co.cask.hydrator.db.output.write.mode";
+  /**
+   * Comma-separated fields that identify a row, required by the {@link WriteMode#UPSERT} and {@link WriteMode#STAGED}
+   * write modes.
+   */
+  public static final String KEY_FIELDS = "co.cask.hydrator.db.output.key.fields";
+
+  // Counters for the rows written to the database, and the time spent in executeBatch
+  public static final String COUNTER_GROUP = "DBSink";
+  public static final String ROWS_WRITTEN_COUNTER = "rows.written";
+  public static final String BATCHES_EXECUTED_COUNTER = "batches.executed";
+  public static final String BATCH_TIME_COUNTER = "batch.time.ms";
+
   private static final Logger LOG = LoggerFactory.getLogger(ETLDBOutputFormat.class);
-  private Driver driver;
-  private JDBCDriverShim driverShim;
+  // Length of the prefix of the staging table names taken from the table name, which leaves 21 characters
+  // for the 'stg_' prefix and the unique suffix
+  private static final int STAGING_PREFIX_LENGTH = 9;
 
   @Override
   public RecordWriter<K, V> getRecordWriter(TaskAttemptContext context) throws IOException {
     Configuration conf = context.getConfiguration();
     DBConfiguration dbConf = new DBConfiguration(conf);
-    String tableName = dbConf.getOutputTableName();
+    final String tableName = dbConf.getOutputTableName();
     String[] fieldNames = dbConf.getOutputFieldNames();
 
     if (fieldNames == null) {
       fieldNames = new String[dbConf.getOutputFieldCount()];
     }
 
+    final int batchSize = conf.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+    final int commitInterval = conf.getInt(COMMIT_INTERVAL, 0);
+    final boolean autoCommit = conf.getBoolean(DBUtils.AUTO_COMMIT, false);
+    final Counter rowsWritten = context.getCounter(COUNTER_GROUP, ROWS_WRITTEN_COUNTER);
+    final Counter batchesExecuted = context.getCounter(COUNTER_GROUP, BATCHES_EXECUTED_COUNTER);
+    final Counter batchTime = context.getCounter(COUNTER_GROUP, BATCH_TIME_COUNTER);
+    WriteMode writeMode = WriteMode.toWriteMode(conf.get(WRITE_MODE));
+    List<String> keyFields = new ArrayList<>(conf.getTrimmedStringCollection(KEY_FIELDS));
+
+    Connection connection = null;
     try {
-      Connection connection = getConnection(conf);
-      PreparedStatement statement = connection.prepareStatement(constructQuery(tableName, fieldNames));
+      connection = getConnection(conf);
+      final SQLDialect dialect = SQLDialect.fromProductName(connection.getMetaData().getDatabaseProductName());
+      String query;
+      // Name of the table the rows are written to before being merged into the table, if the write mode is staged
+      final String stagingTable;
+      switch (writeMode) {
+        case UPSERT:
+          fieldNames = trim(fieldNames);
+          // Only the standard MERGE needs the types of its parameters
+          String[] types = dialect == SQLDialect.STANDARD ? getColumnTypes(connection, tableName, fieldNames) : null;
+          query = dialect.upsertQuery(tableName, fieldNames, keyFields, types);
+          stagingTable = null;
+          break;
+        case STAGED:
+          fieldNames = trim(fieldNames);
+          stagingTable = getStagingTableName(tableName, context.getTaskAttemptID());
+          createStagingTable(connection, dialect, stagingTable, tableName, fieldNames, autoCommit);
+          // The rows are numbered in the order they are written, after their fields
+          query = constructQuery(stagingTable, ObjectArrays.concat(fieldNames, SQLDialect.SEQUENCE_COLUMN));
+          break;
+        default:
+          query = constructQuery(tableName, fieldNames);
+          stagingTable = null;
+      }
+      LOG.debug("Writing rows to table {} with query {}", tableName, query);
+
+      final String mergeQuery = stagingTable == null ? null :
+        dialect.mergeStagingTableQuery(tableName, stagingTable, fieldNames, keyFields);
+      PreparedStatement statement;
+      try {
+        statement = connection.prepareStatement(query);
+      } catch (SQLException e) {
+        if (stagingTable != null) {
+          dropStagingTable(connection, dialect.dropStagingTableQuery(stagingTable), autoCommit);
+        }
+        throw e;
+      }
+      final int sequenceIndex = fieldNames.length + 1;
       return new DBRecordWriter(connection, statement) {
 
         private boolean emptyData = true;
+        // Number of rows written to the staging table, in the staged write mode
+        private long stagedRows;
+        // Number of rows added to the statement since the last executeBatch
+        private int batchedRows;
+        // Number of batches executed since the last commit
+        private int uncommittedBatches;
 
-        //Implementation of the close method below is the exact implementation in DBOutputFormat except that
+        //Implementation of the close method below is based on the one in DBOutputFormat, except that
         //we check if there is any data to be written and if not, we skip executeBatch call.
         //There might be reducers that don't receive any data and thus this check is necessary to prevent
         //empty data to be committed (since some Databases doesn't support that).
+        //It also executes the last partial batch, merges and drops the staging table in the staged write mode,
+        //and leaves the commits to the database with auto-commit. Each task merges and commits its own staging table
+        //here, independently of the other tasks, rather than in the output committer.
         @Override
         public void close(TaskAttemptContext context) throws IOException {
           try {
             if (!emptyData) {
-              getStatement().executeBatch();
-              getConnection().commit();
+              if (batchedRows > 0) {
+                executeBatch();
+              }
+              if (mergeQuery != null) {
+                mergeStagingTable();
+              }
+              commit();
             }
           } catch (SQLException e) {
-            try {
-              getConnection().rollback();
-            } catch (SQLException ex) {
-              LOG.warn(StringUtils.stringifyException(ex));
-            }
-            throw new IOException(e.getMessage());
+            rollback();
+            throw new IOException(e.getMessage(), e);
           } finally {
             try {
-              getStatement().close();
-              getConnection().close();
-            } catch (SQLException ex) {
-              throw new IOException(ex.getMessage());
+              if (stagingTable != null) {
+                dropStagingTable(getConnection(), dialect.dropStagingTableQuery(stagingTable), autoCommit);
+              }
+            } finally {
+              try {
+                getStatement().close();
+              } catch (SQLException ex) {
+                throw new IOException(ex.getMessage(), ex);
+              } finally {
+                try {
+                  getConnection().close();
+                } catch (SQLException ex) {
+                  throw new IOException(ex.getMessage(), ex);
+                }
+              }
+            }
+          }
+        }
+
+        @Override
+        public void write(K key, V value) throws IOException {
+          if (stagingTable == null) {
+            super.write(key, value);
+          } else {
+            stage(key);
+          }
+          emptyData = false;
+          batchedRows++;
+          if (batchSize <= 0 || batchedRows < batchSize) {
+            return;
+          }
+
+          // Send the rows to the database every batchSize rows, so that they are not all buffered by the driver
+          try {
+            executeBatch();
+            if (commitInterval > 0 && uncommittedBatches >= commitInterval) {
+              commit();
+              uncommittedBatches = 0;
             }
+          } catch (SQLException e) {
+            rollback();
+            throw new IOException(e.getMessage(), e);
           }
+        }
 
+        // Adds the row to the batch with its sequence number, so that the last row written for a key is merged
+        private void stage(K key) throws IOException {
           try {
-            DriverManager.deregisterDriver(driverShim);
+            key.write(getStatement());
+            getStatement().setLong(sequenceIndex, ++stagedRows);
+            getStatement().addBatch();
           } catch (SQLException e) {
-            throw new IOException(e);
+            throw new IOException(e.getMessage(), e);
           }
         }
 
-        @Override
-        public void write(K key, V value) throws IOException {
-          super.write(key, value);
-          emptyData = false;
+        // With auto-commit, statements are committed as they are executed, and there is nothing to commit or rollback
+        private void commit() throws SQLException {
+          if (!autoCommit) {
+            getConnection().commit();
+          }
+        }
+
+        private void rollback() {
+          if (autoCommit) {
+            return;
+          }
+          try {
+            getConnection().rollback();
+          } catch (SQLException ex) {
+            LOG.warn(StringUtils.stringifyException(ex));
+          }
+        }
+
+        // Upserts all the staged rows with a single set-based statement
+        private void mergeStagingTable() throws SQLException {
+          long startTime = System.currentTimeMillis();
+          try (Statement merge = getConnection().createStatement()) {
+            merge.executeUpdate(mergeQuery);
+          }
+          LOG.debug("Merged staging table {} into table {} in {} ms",
+                    stagingTable, tableName, System.currentTimeMillis() - startTime);
+        }
+
+        private void executeBatch() throws SQLException {
+          long startTime = System.currentTimeMillis();
+          getStatement().executeBatch();
+          long elapsed = System.currentTimeMillis() - startTime;
+          LOG.trace("Executed batch of {} rows in {} ms", batchedRows, elapsed);
+
+          rowsWritten.increment(batchedRows);
+          batchesExecuted.increment(1);
+          batchTime.increment(elapsed);
+          batchedRows = 0;
+          uncommittedBatches++;
         }
       };
     } catch (Exception ex) {
-      throw new IOException(ex.getMessage());
+      // No record writer owns the connection, so it is released here, with anything it did rolled back
+      if (connection != null) {
+        closeOnFailure(connection, autoCommit, ex);
+      }
+      throw new IOException(ex.getMessage(), ex);
     }
   }
 
-  private Connection getConnection(Configuration conf) {
-    Connection connection;
+  // Failures to roll back or close the connection are added to the failure that is thrown, rather than hiding it
+  private static void closeOnFailure(Connection connection, boolean autoCommit, Exception failure) {
     try {
-      String url = conf.get(DBConfiguration.URL_PROPERTY);
+      if (!autoCommit) {
+        connection.rollback();
+      }
+    } catch (SQLException e) {
+      failure.addSuppressed(e);
+    }
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  private static String[] trim(String[] fieldNames) {
+    String[] trimmed = new String[fieldNames.length];
+    for (int i = 0; i < fieldNames.length; i++) {
+      trimmed[i] = fieldNames[i].trim();
+    }
+    return trimmed;
+  }
+
+  private static String[] getColumnTypes(Connection connection, String tableName,
+                                         String[] fieldNames) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         // Run a query against the DB table that returns 0 records, but returns the types of the columns
+         ResultSet rs = statement.executeQuery(String.format("SELECT %s FROM %s WHERE 1 = 0",
+                                                             Joiner.on(", ").join(fieldNames), tableName))
+    ) {
+      return SQLDialect.getColumnTypes(rs.getMetaData());
+    }
+  }
+
+  // The staging table is committed right away, so that it can be dropped even if writing to it is rolled back
+  private static void createStagingTable(Connection connection, SQLDialect dialect, String stagingTable,
+                                         String tableName, String[] fieldNames,
+                                         boolean autoCommit) throws SQLException {
+    String query = dialect.createStagingTableQuery(stagingTable, tableName, fieldNames);
+    LOG.debug("Creating staging table with query {}", query);
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate(query);
+      if (!autoCommit) {
+        connection.commit();
+      }
       try {
-        // throws SQLException if no suitable driver is found
-        DriverManager.getDriver(url);
+        statement.executeUpdate(dialect.addSequenceColumnQuery(stagingTable));
       } catch (SQLException e) {
-        if (driverShim == null) {
-          if (driver == null) {
-            ClassLoader classLoader = conf.getClassLoader();
-            @SuppressWarnings("unchecked")
-            Class<? extends Driver> driverClass =
-              (Class<? extends Driver>) classLoader.loadClass(conf.get(DBConfiguration.DRIVER_CLASS_PROPERTY));
-            driver = driverClass.newInstance();
-
-            // De-register the default driver that gets registered when driver class is loaded.
-            DBUtils.deregisterAllDrivers(driverClass);
-          }
-
-          driverShim = new JDBCDriverShim(driver);
-          DriverManager.registerDriver(driverShim);
-          LOG.debug("Registered JDBC driver via shim {}. Actual Driver {}.", driverShim, driver);
+        if (!autoCommit) {
+          connection.rollback();
         }
+        dropStagingTable(connection, dialect.dropStagingTableQuery(stagingTable), autoCommit);
+        throw e;
       }
+    }
+    if (!autoCommit) {
+      connection.commit();
+    }
+  }
 
-      if (conf.get(DBConfiguration.USERNAME_PROPERTY) == null) {
-        connection = DriverManager.getConnection(url);
-      } else {
-        connection = DriverManager.getConnection(url,
-                                                 conf.get(DBConfiguration.USERNAME_PROPERTY),
-                                                 conf.get(DBConfiguration.PASSWORD_PROPERTY));
+  // A failure to drop the staging table must not hide the failure to write the rows, so it is only logged
+  private static void dropStagingTable(Connection connection, String query, boolean autoCommit) {
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate(query);
+      if (!autoCommit) {
+        connection.commit();
       }
-      connection.setAutoCommit(false);
-      connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-    } catch (Exception e) {
+    } catch (SQLException e) {
+      LOG.warn("Unable to drop staging table with query {}. It must be dropped manually.", query, e);
+    }
+  }
+
+  /**
+   * Returns the name of the staging table of a task attempt, which is unique across clusters and short enough
+   * for the identifier length limits of databases, 30 characters for Oracle. The staging table is created in
+   * the same schema as the table, and its name starts with the name of the table, without any quotes.
+   */
+  static String getStagingTableName(String tableName, TaskAttemptID attemptId) {
+    // The schema is whatever comes before the last dot that is not quoted
+    int schemaEnd = -1;
+    boolean quoted = false;
+    for (int i = 0; i < tableName.length(); i++) {
+      char c = tableName.charAt(i);
+      if (c == '"' || c == '`' || c == '[' || c == ']') {
+        quoted = c != ']' && !quoted;
+      } else if (c == '.' && !quoted) {
+        schemaEnd = i;
+      }
+    }
+    String prefix = tableName.substring(schemaEnd + 1).replaceAll("[^A-Za-z0-9_]", "");
+    // The attempt ID includes the identifier of the cluster, as well as the job, task and attempt numbers
+    long hash = Hashing.md5().hashBytes(attemptId.toString().getBytes(Charsets.UTF_8)).asLong();
+    return String.format("%sstg_%s_%016x", tableName.substring(0, schemaEnd + 1),
+                         prefix.substring(0, Math.min(prefix.length(), STAGING_PREFIX_LENGTH)), hash);
+  }
+
+  private Connection getConnection(Configuration conf) {
+    try {
+      Connection connection = ConnectionPool.getConnection(conf);
+      DBUtils.configureConnection(connection, conf);
+      return connection;
+    } catch (SQLException e) {
       throw Throwables.propagate(e);
     }
-    return connection;
   }
 
   @Override
@@ -0,0 +1,309 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import com.google.common.base.Joiner;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SQL statements that differ between databases, used to upsert rows and to merge staging tables.
+ * Databases without a dialect of their own use the SQL standard MERGE statement.
+ */
+public enum SQLDialect {
+  MYSQL {
+    @Override
+    public String upsertQuery(String table, String[] fields, List<String> keys, String[] types) {
+      return insertQuery(table, fields, "VALUES (" + placeholders(fields.length) + ")") + onDuplicateKey(fields, keys);
+    }
+
+    @Override
+    public String createStagingTableQuery(String stagingTable, String table, String[] fields) {
+      return String.format("CREATE TABLE %s AS SELECT %s FROM %s WHERE 1 = 0",
+                           stagingTable, JOINER.join(fields), table);
+    }
+
+    @Override
+    public String mergeStagingTableQuery(String table, String stagingTable, String[] fields, List<String> keys) {
+      return insertQuery(table, fields, selectLatest(stagingTable, fields, keys)) + onDuplicateKey(fields, keys);
+    }
+
+    private String onDuplicateKey(String[] fields, List<String> keys) {
+      List<String> updates = new ArrayList<>();
+      for (String field : nonKeys(fields, keys)) {
+        updates.add(String.format("%s = VALUES(%s)", field, field));
+      }
+      if (updates.isEmpty()) {
+        // All the fields are part of the key, so there is nothing to update
+        updates.add(String.format("%s = %s", fields[0], fields[0]));
+      }
+      return " ON DUPLICATE KEY UPDATE " + JOINER.join(updates);
+    }
+  },
+
+  POSTGRESQL {
+    @Override
+    public String upsertQuery(String table, String[] fields, List<String> keys, String[] types) {
+      return insertQuery(table, fields, "VALUES (" + placeholders(fields.length) + ")") + onConflict(fields, keys);
+    }
+
+    @Override
+    public String mergeStagingTableQuery(String table, String stagingTable, String[] fields, List<String> keys) {
+      return insertQuery(table, fields, selectLatest(stagingTable, fields, keys)) + onConflict(fields, keys);
+    }
+
+    private String onConflict(String[] fields, List<String> keys) {
+      List<String> updates = new ArrayList<>();
+      for (String field : nonKeys(fields, keys)) {
+        updates.add(String.format("%s = EXCLUDED.%s", field, field));
+      }
+      String action = updates.isEmpty() ? "NOTHING" : "UPDATE SET " + JOINER.join(updates);
+      return String.format(" ON CONFLICT (%s) DO %s", JOINER.join(keys), action);
+    }
+  },
+
+  ORACLE {
+    @Override
+    public String upsertQuery(String table, String[] fields, List<String> keys, String[] types) {
+      List<String> values = new ArrayList<>();
+      for (String field : fields) {
+        values.add("? " + field);
+      }
+      return merge(table, String.format("(SELECT %s FROM dual) s", JOINER.join(values)), fields, keys);
+    }
+
+    @Override
+    public String createStagingTableQuery(String stagingTable, String table, String[] fields) {
+      return MYSQL.createStagingTableQuery(stagingTable, table, fields);
+    }
+
+    @Override
+    public String addSequenceColumnQuery(String stagingTable) {
+      return String.format("ALTER TABLE %s ADD (%s NUMBER(19))", stagingTable, SEQUENCE_COLUMN);
+    }
+  },
+
+  SQLSERVER {
+    @Override
+    public String upsertQuery(String table, String[] fields, List<String> keys, String[] types) {
+      // The parameter types are inferred from the target columns, and MERGE must be terminated by a semicolon
+      return merge(table, valuesSource(fields, null), fields, keys) + ";";
+    }
+
+    @Override
+    public String createStagingTableQuery(String stagingTable, String table, String[] fields) {
+      return String.format("SELECT %s INTO %s FROM %s WHERE 1 = 0", JOINER.join(fields), stagingTable, table);
+    }
+
+    @Override
+    public String addSequenceColumnQuery(String stagingTable) {
+      return String.format("ALTER TABLE %s ADD %s BIGINT", stagingTable, SEQUENCE_COLUMN);
+    }
+
+    @Override
+    public String mergeStagingTableQuery(String table, String stagingTable, String[] fields, List<String> keys) {
+      return super.mergeStagingTableQuery(table, stagingTable, fields, keys) + ";";
+    }
+  },
+
+  STANDARD;
+
+  /**
+   * Column of the staging table that numbers the rows in the order they are written, so that only the last row
+   * written for each key is merged into the table.
+   */
+  public static final String SEQUENCE_COLUMN = "stg_seq";
+
+  private static final Joiner JOINER = Joiner.on(", ");
+
+  /**
+   * Returns the dialect of the database with the given product name, as returned by
+   * {@link java.sql.DatabaseMetaData#getDatabaseProductName()}.
+   */
+  public static SQLDialect fromProductName(String productName) {
+    String name = productName.toLowerCase();
+    if (name.contains("mysql") || name.contains("mariadb")) {
+      return MYSQL;
+    }
+    if (name.contains("postgresql")) {
+      return POSTGRESQL;
+    }
+    if (name.contains("oracle")) {
+      return ORACLE;
+    }
+    if (name.contains("microsoft sql server")) {
+      return SQLSERVER;
+    }
+    return STANDARD;
+  }
+
+  /**
+   * Returns the types of the columns in the given metadata, in a form that parameters can be cast to.
+   */
+  public static String[] getColumnTypes(ResultSetMetaData metadata) throws SQLException {
+    String[] types = new String[metadata.getColumnCount()];
+    for (int i = 0; i < types.length; i++) {
+      // JDBC driver column indices start with 1
+      String type = metadata.getColumnTypeName(i + 1);
+      int precision = metadata.getPrecision(i + 1);
+      switch (metadata.getColumnType(i + 1)) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.BINARY:
+        case Types.VARBINARY:
+          if (precision > 0) {
+            type = String.format("%s(%d)", type, precision);
+          }
+          break;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+          if (precision > 0) {
+            type = String.format("%s(%d, %d)", type, precision, metadata.getScale(i + 1));
+          }
+          break;
+        default:
+          break;
+      }
+      types[i] = type;
+    }
+    return types;
+  }
+
+  /**
+   * Returns the query that inserts a row into the table, or updates the row that has the same key fields.
+   * The query has a parameter for each of the fields, in the same order.
+   *
+   * @param table the table to write to
+   * @param fields the fields of the row
+   * @param keys the fields that identify the row
+   * @param types the SQL types of the fields, used by dialects that can not infer the parameter types
+   */
+  public String upsertQuery(String table, String[] fields, List<String> keys, String[] types) {
+    return merge(table, valuesSource(fields, types), fields, keys);
+  }
+
+  /**
+   * Returns the query that creates an empty staging table with the given fields of the table.
+   */
+  public String createStagingTableQuery(String stagingTable, String table, String[] fields) {
+    return String.format("CREATE TABLE %s AS (SELECT %s FROM %s) WITH NO DATA",
+                         stagingTable, JOINER.join(fields), table);
+  }
+
+  /**
+   * Returns the query that adds the {@link #SEQUENCE_COLUMN} to a staging table created with
+   * {@link #createStagingTableQuery(String, String, String[])}.
+   */
+  public String addSequenceColumnQuery(String stagingTable) {
+    return String.format("ALTER TABLE %s ADD COLUMN %s BIGINT", stagingTable, SEQUENCE_COLUMN);
+  }
+
+  /**
+   * Returns the query that upserts the rows of the staging table into the table, in a single statement.
+   * Of the rows that have the same key fields, only the one with the highest {@link #SEQUENCE_COLUMN} is upserted,
+   * since MERGE and its equivalents fail or are undefined when several source rows match the same row.
+   */
+  public String mergeStagingTableQuery(String table, String stagingTable, String[] fields, List<String> keys) {
+    return merge(table, String.format("(%s) s", selectLatest(stagingTable, fields, keys)), fields, keys);
+  }
+
+  public String dropStagingTableQuery(String stagingTable) {
+    return "DROP TABLE " + stagingTable;
+  }
+
+  /**
+   * Returns a MERGE statement from the given source, which must be aliased as 's'.
+   */
+  static String merge(String table, String source, String[] fields, List<String> keys) {
+    List<String> conditions = new ArrayList<>();
+    for (String key : keys) {
+      conditions.add(String.format("t.%s = s.%s", key, key));
+    }
+    List<String> updates = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    for (String field : fields) {
+      values.add("s." + field);
+      if (!keys.contains(field)) {
+        updates.add(String.format("t.%s = s.%s", field, field));
+      }
+    }
+
+    StringBuilder query = new StringBuilder()
+      .append("MERGE INTO ").append(table).append(" t USING ").append(source)
+      .append(" ON (").append(Joiner.on(" AND ").join(conditions)).append(")");
+    if (!updates.isEmpty()) {
+      query.append(" WHEN MATCHED THEN UPDATE SET ").append(JOINER.join(updates));
+    }
+    return query.append(" WHEN NOT MATCHED THEN INSERT (").append(JOINER.join(fields))
+      .append(") VALUES (").append(JOINER.join(values)).append(")").toString();
+  }
+
+  /**
+   * Returns a source of a single row made of parameters, cast to the given types if they are not null.
+   */
+  static String valuesSource(String[] fields, String[] types) {
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < fields.length; i++) {
+      values.add(types == null ? "?" : String.format("CAST(? AS %s)", types[i]));
+    }
+    return String.format("(VALUES (%s)) AS s (%s)", JOINER.join(values), JOINER.join(fields));
+  }
+
+  static String insertQuery(String table, String[] fields, String values) {
+    return String.format("INSERT INTO %s (%s) %s", table, JOINER.join(fields), values);
+  }
+
+  /**
+   * Returns a query that selects the rows of the staging table that no row with the same keys follows.
+   */
+  static String selectLatest(String stagingTable, String[] fields, List<String> keys) {
+    List<String> columns = new ArrayList<>();
+    for (String field : fields) {
+      columns.add("r." + field);
+    }
+    List<String> conditions = new ArrayList<>();
+    for (String key : keys) {
+      conditions.add(String.format("l.%s = r.%s", key, key));
+    }
+    conditions.add(String.format("l.%s > r.%s", SEQUENCE_COLUMN, SEQUENCE_COLUMN));
+    return String.format("SELECT %s FROM %s r WHERE NOT EXISTS (SELECT 1 FROM %s l WHERE %s)",
+                         JOINER.join(columns), stagingTable, stagingTable, Joiner.on(" AND ").join(conditions));
+  }
+
+  static String placeholders(int count) {
+    String[] placeholders = new String[count];
+    Arrays.fill(placeholders, "?");
+    return JOINER.join(placeholders);
+  }
+
+  static List<String> nonKeys(String[] fields, List<String> keys) {
+    List<String> nonKeys = new ArrayList<>();
+    for (String field : fields) {
+      if (!keys.contains(field)) {
+        nonKeys.add(field);
+      }
+    }
+    return nonKeys;
+  }
+}
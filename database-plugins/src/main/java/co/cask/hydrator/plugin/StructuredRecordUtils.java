@@ -20,9 +20,9 @@ import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Utils class that contains StructuredRecord related transformations.
@@ -37,29 +37,71 @@ public class StructuredRecordUtils {
    * @throws Exception if there is a conflict in the field names while converting the case
    */
   public static StructuredRecord convertCase(StructuredRecord input, FieldCase fieldCase) throws Exception {
-    if (fieldCase.equals(FieldCase.NONE)) {
-      return input;
+    return new FieldCaseConverter(fieldCase).convert(input);
+  }
+
+  /**
+   * Converts the field names of {@link StructuredRecord}s to a desired case. The converted schema and the mapping
+   * between the field names are only computed again when the schema of the records changes, so a converter should
+   * be reused for all the records of a source.
+   */
+  public static final class FieldCaseConverter {
+    private final FieldCase fieldCase;
+    private Schema inputSchema;
+    private Schema outputSchema;
+    private String[] inputNames;
+    private String[] outputNames;
+
+    public FieldCaseConverter(FieldCase fieldCase) {
+      this.fieldCase = fieldCase;
     }
 
-    Schema oldSchema = input.getSchema();
-    Map<String, String> fieldNameMap = new HashMap<>();
-    List<Schema.Field> newFields = new ArrayList<>();
-    for (Schema.Field field : oldSchema.getFields()) {
-      String newName = changeName(field.getName(), fieldCase);
-      if (fieldNameMap.containsValue(newName)) {
-        // field name used already. indication of field names conflict. can't do anything.
-        throw new IllegalStateException(String.format(
-          "Duplicate field/column name %s found when trying to confirm to the chosen case option %s. " +
-            "Check Database Table schema.", field.getName(), fieldCase));
+    /**
+     * Converts the field names in the input {@link StructuredRecord} to the case of this converter.
+     *
+     * @throws IllegalStateException if there is a conflict in the field names while converting the case
+     */
+    public StructuredRecord convert(StructuredRecord input) {
+      if (fieldCase.equals(FieldCase.NONE)) {
+        return input;
       }
-      fieldNameMap.put(field.getName(), newName);
-      newFields.add(Schema.Field.of(newName, field.getSchema()));
+
+      Schema schema = input.getSchema();
+      // Records read from the same result set share the same schema instance, so the equals is rarely needed
+      if (schema != inputSchema && !schema.equals(inputSchema)) {
+        convertSchema(schema);
+      }
+      StructuredRecord.Builder recordBuilder = StructuredRecord.builder(outputSchema);
+      for (int i = 0; i < inputNames.length; i++) {
+        recordBuilder.set(outputNames[i], input.get(inputNames[i]));
+      }
+      return recordBuilder.build();
     }
-    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(Schema.recordOf("dbRecord", newFields));
-    for (Map.Entry<String, String> nameMap : fieldNameMap.entrySet()) {
-      recordBuilder.set(nameMap.getValue(), input.get(nameMap.getKey()));
+
+    private void convertSchema(Schema schema) {
+      List<Schema.Field> fields = schema.getFields();
+      Set<String> newNames = new HashSet<>();
+      List<Schema.Field> newFields = new ArrayList<>(fields.size());
+      String[] oldNames = new String[fields.size()];
+      String[] convertedNames = new String[fields.size()];
+      for (int i = 0; i < oldNames.length; i++) {
+        Schema.Field field = fields.get(i);
+        String newName = changeName(field.getName(), fieldCase);
+        if (!newNames.add(newName)) {
+          // field name used already. indication of field names conflict. can't do anything.
+          throw new IllegalStateException(String.format(
+            "Duplicate field/column name %s found when trying to confirm to the chosen case option %s. " +
+              "Check Database Table schema.", field.getName(), fieldCase));
+        }
+        oldNames[i] = field.getName();
+        convertedNames[i] = newName;
+        newFields.add(Schema.Field.of(newName, field.getSchema()));
+      }
+      outputSchema = Schema.recordOf("dbRecord", newFields);
+      inputNames = oldNames;
+      outputNames = convertedNames;
+      inputSchema = schema;
     }
-    return recordBuilder.build();
   }
 
   private StructuredRecordUtils() {
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import com.google.common.base.Strings;
+
+/**
+ * Enum to denote how the rows are written to a database table.
+ */
+public enum WriteMode {
+  /**
+   * Rows are inserted into the table.
+   */
+  INSERT,
+  /**
+   * Rows are inserted into the table, or update the rows with the same key.
+   */
+  UPSERT,
+  /**
+   * Rows are inserted into a staging table, which is merged into the table when the task finishes.
+   */
+  STAGED;
+
+  public static WriteMode toWriteMode(String writeMode) {
+    if (Strings.isNullOrEmpty(writeMode)) {
+      return WriteMode.INSERT;
+    }
+
+    try {
+      return WriteMode.valueOf(writeMode.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format("Invalid write mode '%s'. Must be one of 'insert', 'upsert' " +
+                                                         "or 'staged'.", writeMode), e);
+    }
+  }
+}
@@ -35,9 +35,11 @@ import co.cask.hydrator.plugin.DBRecord;
 import co.cask.hydrator.plugin.DBUtils;
 import co.cask.hydrator.plugin.ETLDBOutputFormat;
 import co.cask.hydrator.plugin.FieldCase;
+import co.cask.hydrator.plugin.WriteMode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.lib.db.DBConfiguration;
@@ -46,14 +48,13 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Sink that can be configured to export data to a database table.
@@ -69,6 +70,8 @@ public class DBSink extends BatchSink<StructuredRecord, DBRecord, NullWritable>
   private Class<? extends Driver> driverClass;
   private int [] columnTypes;
   private List<String> columns;
+  // Derived from the schema of the last input record
+  private DBRecord.FieldMapping fieldMapping;
 
   public DBSink(DBSinkConfig dbSinkConfig) {
     this.dbSinkConfig = dbSinkConfig;
@@ -82,13 +85,15 @@ public class DBSink extends BatchSink<StructuredRecord, DBRecord, NullWritable>
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     dbManager.validateJDBCPluginPipeline(pipelineConfigurer, getJDBCPluginId());
+    dbSinkConfig.validate();
   }
 
   @Override
   public void prepareRun(BatchSinkContext context) {
-    LOG.debug("tableName = {}; pluginType = {}; pluginName = {}; connectionString = {}; columns = {}",
+    LOG.debug("tableName = {}; pluginType = {}; pluginName = {}; connectionString = {}; columns = {}; " +
+                "writeMode = {}; keyColumns = {}",
               dbSinkConfig.tableName, dbSinkConfig.jdbcPluginType, dbSinkConfig.jdbcPluginName,
-              dbSinkConfig.connectionString, dbSinkConfig.columns);
+              dbSinkConfig.connectionString, dbSinkConfig.columns, dbSinkConfig.writeMode, dbSinkConfig.keyColumns);
 
     // Load the plugin class to make sure it is available.
     Class<? extends Driver> driverClass = context.loadPluginClass(getJDBCPluginId());
@@ -103,32 +108,27 @@ public class DBSink extends BatchSink<StructuredRecord, DBRecord, NullWritable>
       DBUtils.cleanup(driverClass);
     }
 
-    context.addOutput(dbSinkConfig.tableName, new DBOutputFormatProvider(dbSinkConfig, driverClass));
+    context.addOutput(dbSinkConfig.tableName,
+                      new DBOutputFormatProvider(dbSinkConfig, driverClass, context.getStageName()));
   }
 
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
     driverClass = context.loadPluginClass(getJDBCPluginId());
+    dbManager.initializeMetrics(context.getStageName(), context.getMetrics());
     setResultSetMetadata();
   }
 
   @Override
   public void transform(StructuredRecord input, Emitter<KeyValue<DBRecord, NullWritable>> emitter) throws Exception {
-    // Create StructuredRecord that only has the columns in this.columns
-    List<Schema.Field> outputFields = new ArrayList<>();
-    for (String column : columns) {
-      Schema.Field field = input.getSchema().getField(column);
-      Preconditions.checkNotNull(field, "Missing schema field for column '%s'", column);
-      outputFields.add(field);
+    // Map the columns in this.columns to the fields of the input once per schema, instead of creating
+    // a StructuredRecord that only has these columns for every input
+    Schema schema = input.getSchema();
+    if (fieldMapping == null || (fieldMapping.getSchema() != schema && !fieldMapping.getSchema().equals(schema))) {
+      fieldMapping = new DBRecord.FieldMapping(schema, columns, columnTypes);
     }
-    StructuredRecord.Builder output = StructuredRecord.builder(
-      Schema.recordOf(input.getSchema().getRecordName(), outputFields));
-    for (String column : columns) {
-      output.set(column, input.get(column));
-    }
-
-    emitter.emit(new KeyValue<DBRecord, NullWritable>(new DBRecord(output.build(), columnTypes), null));
+    emitter.emit(new KeyValue<DBRecord, NullWritable>(new DBRecord(input, fieldMapping), null));
   }
 
   @Override
@@ -140,17 +140,13 @@ public class DBSink extends BatchSink<StructuredRecord, DBRecord, NullWritable>
   @VisibleForTesting
   void setColumns(List<String> columns) {
     this.columns = ImmutableList.copyOf(columns);
+    this.fieldMapping = null;
   }
 
   private void setResultSetMetadata() throws Exception {
-    dbManager.ensureJDBCDriverIsAvailable(driverClass);
     Map<String, Integer> columnToType = new HashMap<>();
-    Connection connection;
-    if (dbSinkConfig.user == null) {
-      connection = DriverManager.getConnection(dbSinkConfig.connectionString);
-    } else {
-      connection = DriverManager.getConnection(dbSinkConfig.connectionString, dbSinkConfig.user, dbSinkConfig.password);
-    }
+    // The connection is returned to the pool when closed, so that the output format can reuse it
+    Connection connection = dbManager.getConnection(driverClass);
 
     try {
       try (Statement statement = connection.createStatement();
@@ -195,12 +191,56 @@ public class DBSink extends BatchSink<StructuredRecord, DBRecord, NullWritable>
 
     @Description("Name of the database table to write to.")
     public String tableName;
+
+    @Description("Number of rows to send to the database in each batch. Defaults to 1000. If 0 or less, all the " +
+      "rows written by a task are sent in a single batch when the task finishes.")
+    @Nullable
+    public Integer batchSize;
+
+    @Description("Number of batches after which the rows written so far are committed. If not set, the rows " +
+      "written by a task are committed once when the task finishes. Note that rows committed before a task " +
+      "fails are not rolled back, so they may be written again if the task is retried.")
+    @Nullable
+    public Integer commitInterval;
+
+    @Description("How the rows are written to the table. 'insert' inserts the rows. 'upsert' inserts the rows, " +
+      "or updates the existing rows that have the same key columns. 'staged' inserts the rows written by each task " +
+      "into a staging table, which is upserted into the table with a single statement when the task finishes, " +
+      "keeping the last row written for each key. Defaults to 'insert'.")
+    @Nullable
+    public String writeMode;
+
+    @Description("Comma-separated list of the columns that identify a row, used to find the existing rows to " +
+      "update. Required if the write mode is 'upsert' or 'staged'. Depending on the database, the columns may have " +
+      "to be the primary key or a unique key of the table.")
+    @Nullable
+    public String keyColumns;
+
+    public WriteMode getWriteMode() {
+      return WriteMode.toWriteMode(writeMode);
+    }
+
+    private void validate() {
+      // Fails if the write mode is invalid
+      if (getWriteMode() == WriteMode.INSERT) {
+        return;
+      }
+      Splitter splitter = Splitter.on(",").omitEmptyStrings().trimResults();
+      List<String> keys = ImmutableList.copyOf(splitter.split(Strings.nullToEmpty(keyColumns)));
+      Preconditions.checkArgument(!keys.isEmpty(), "Key columns must be set if the write mode is '%s'.", writeMode);
+      List<String> columnList = ImmutableList.copyOf(splitter.split(columns));
+      for (String key : keys) {
+        Preconditions.checkArgument(columnList.contains(key), "Key column '%s' is not one of the columns '%s'.",
+                                    key, columns);
+      }
+    }
   }
 
   private static class DBOutputFormatProvider implements OutputFormatProvider {
     private final Map<String, String> conf;
 
-    public DBOutputFormatProvider(DBSinkConfig dbSinkConfig, Class<? extends Driver> driverClass) {
+    public DBOutputFormatProvider(DBSinkConfig dbSinkConfig, Class<? extends Driver> driverClass,
+                                  String stageName) {
       this.conf = new HashMap<>();
 
       conf.put(DBConfiguration.DRIVER_CLASS_PROPERTY, driverClass.getName());
@@ -211,6 +251,17 @@ public class DBSink extends BatchSink<StructuredRecord, DBRecord, NullWritable>
       }
       conf.put(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, dbSinkConfig.tableName);
       conf.put(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, dbSinkConfig.columns);
+      conf.putAll(dbSinkConfig.getConnectionProperties(stageName));
+      if (dbSinkConfig.batchSize != null) {
+        conf.put(ETLDBOutputFormat.BATCH_SIZE, String.valueOf(dbSinkConfig.batchSize));
+      }
+      if (dbSinkConfig.commitInterval != null) {
+        conf.put(ETLDBOutputFormat.COMMIT_INTERVAL, String.valueOf(dbSinkConfig.commitInterval));
+      }
+      conf.put(ETLDBOutputFormat.WRITE_MODE, dbSinkConfig.getWriteMode().name());
+      if (dbSinkConfig.keyColumns != null) {
+        conf.put(ETLDBOutputFormat.KEY_FIELDS, dbSinkConfig.keyColumns);
+      }
     }
 
     @Override
@@ -19,8 +19,11 @@ package co.cask.hydrator.plugin.db.batch.source;
 import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.PipelineConfigurer;
@@ -34,15 +37,25 @@ import co.cask.hydrator.plugin.DBRecord;
 import co.cask.hydrator.plugin.DBUtils;
 import co.cask.hydrator.plugin.FieldCase;
 import co.cask.hydrator.plugin.StructuredRecordUtils;
+import co.cask.hydrator.plugin.teradata.batch.source.DataDrivenETLDBInputFormat;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Batch source to read from a Database table
@@ -53,10 +66,21 @@ import java.sql.Driver;
   " Outputs one record for each row returned by the query.")
 public class DBSource extends BatchSource<LongWritable, DBRecord, StructuredRecord> {
   private static final Logger LOG = LoggerFactory.getLogger(DBSource.class);
+  /**
+   * Key of the highest value of the incremental column read so far, in the last value table. It is kept as a
+   * SQL literal, as returned by {@link DBUtils#getSQLLiteral}.
+   */
+  public static final String LAST_VALUE = "last.value";
+  private static final String LAST_VALUE_PLACEHOLDER = "$LAST_VALUE";
+  private static final String CONDITIONS_PLACEHOLDER = "$CONDITIONS";
 
   private final DBSourceConfig dbSourceConfig;
   private final DBManager dbManager;
   private Class<? extends Driver> driverClass;
+  private StructuredRecordUtils.FieldCaseConverter fieldCaseConverter;
+  private KeyValueTable lastValueTable;
+  // The highest value of the incremental column read by this run, saved if the run succeeds
+  private String nextLastValue;
 
   public DBSource(DBSourceConfig dbSourceConfig) {
     this.dbSourceConfig = dbSourceConfig;
@@ -66,14 +90,19 @@ public class DBSource extends BatchSource<LongWritable, DBRecord, StructuredReco
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     dbManager.validateJDBCPluginPipeline(pipelineConfigurer, getJDBCPluginId());
+    dbSourceConfig.validate();
+    if (dbSourceConfig.hasIncrementalColumn()) {
+      pipelineConfigurer.createDataset(dbSourceConfig.lastValueTable, KeyValueTable.class, DatasetProperties.EMPTY);
+    }
   }
 
   @Override
   public void prepareRun(BatchSourceContext context) throws Exception {
     LOG.debug("pluginType = {}; pluginName = {}; connectionString = {}; importQuery = {}; " +
-                "countQuery = {}",
+                "countQuery = {}; boundingQuery = {}; splitBy = {}; numSplits = {}",
               dbSourceConfig.jdbcPluginType, dbSourceConfig.jdbcPluginName,
-              dbSourceConfig.connectionString, dbSourceConfig.getImportQuery(), dbSourceConfig.getCountQuery());
+              dbSourceConfig.connectionString, dbSourceConfig.getImportQuery(), dbSourceConfig.getCountQuery(),
+              dbSourceConfig.getBoundingQuery(), dbSourceConfig.splitBy, dbSourceConfig.numSplits);
 
     Job job = Job.getInstance();
     Configuration hConf = job.getConfiguration();
@@ -87,20 +116,73 @@ public class DBSource extends BatchSource<LongWritable, DBRecord, StructuredReco
       DBConfiguration.configureDB(hConf, driverClass.getName(), dbSourceConfig.connectionString,
                                   dbSourceConfig.user, dbSourceConfig.password);
     }
-    ETLDBInputFormat.setInput(hConf, DBRecord.class, dbSourceConfig.getImportQuery(), dbSourceConfig.getCountQuery());
-    context.setInput(new SourceInputFormatProvider(ETLDBInputFormat.class, hConf));
+    Map<String, String> connectionProperties = dbSourceConfig.getConnectionProperties(context.getStageName());
+    for (Map.Entry<String, String> property : connectionProperties.entrySet()) {
+      hConf.set(property.getKey(), property.getValue());
+    }
+
+    String importQuery = dbSourceConfig.getImportQuery();
+    String countQuery = dbSourceConfig.getCountQuery();
+    String boundingQuery = dbSourceConfig.getBoundingQuery();
+    if (dbSourceConfig.hasIncrementalColumn()) {
+      // Only read the rows added since the last successful run, up to the highest value when the run starts
+      lastValueTable = context.getDataset(dbSourceConfig.lastValueTable);
+      String lastValue = Bytes.toString(lastValueTable.read(LAST_VALUE));
+      if (lastValue == null) {
+        lastValue = dbSourceConfig.initialLastValue;
+      }
+      importQuery = importQuery.replace(LAST_VALUE_PLACEHOLDER, lastValue);
+      countQuery = countQuery == null ? null : countQuery.replace(LAST_VALUE_PLACEHOLDER, lastValue);
+      boundingQuery = boundingQuery == null ? null : boundingQuery.replace(LAST_VALUE_PLACEHOLDER, lastValue);
+      try {
+        nextLastValue = getMaxValue(driverClass, importQuery);
+      } finally {
+        DBUtils.cleanup(driverClass);
+      }
+      LOG.info("Reading the rows with {} greater than {}, up to {}",
+               dbSourceConfig.incrementalColumn, lastValue, nextLastValue);
+      // Rows added after the highest value was read are left to the next run. If there were no rows to read,
+      // the bound is the last value, so that no rows are read.
+      importQuery = String.format("SELECT * FROM (%s) t WHERE %s <= %s", importQuery, dbSourceConfig.incrementalColumn,
+                                  nextLastValue == null ? lastValue : nextLastValue);
+    }
+
+    if (!dbSourceConfig.hasSplitBy()) {
+      ETLDBInputFormat.setInput(hConf, DBRecord.class, importQuery, countQuery);
+      context.setInput(new SourceInputFormatProvider(ETLDBInputFormat.class, hConf));
+      return;
+    }
+
+    // Split by ranges of the splitBy field, so that each split only reads its own rows
+    DataDrivenETLDBInputFormat.setInput(job, DBRecord.class, importQuery, boundingQuery);
+    hConf.set(DBConfiguration.INPUT_ORDER_BY_PROPERTY, dbSourceConfig.splitBy);
+    if (dbSourceConfig.numSplits != null) {
+      // The data driven input format creates as many splits as there are map tasks
+      hConf.setInt(MRJobConfig.NUM_MAPS, dbSourceConfig.numSplits);
+    }
+    context.setInput(new SourceInputFormatProvider(DataDrivenETLDBInputFormat.class, hConf));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    // The next run reads the rows after the ones read by this run, unless it failed
+    if (succeeded && lastValueTable != null && nextLastValue != null) {
+      lastValueTable.write(LAST_VALUE, nextLastValue);
+    }
   }
 
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
     driverClass = context.loadPluginClass(getJDBCPluginId());
+    dbManager.initializeMetrics(context.getStageName(), context.getMetrics());
+    FieldCase fieldCase = FieldCase.toFieldCase(dbSourceConfig.columnNameCase);
+    fieldCaseConverter = new StructuredRecordUtils.FieldCaseConverter(fieldCase);
   }
 
   @Override
   public void transform(KeyValue<LongWritable, DBRecord> input, Emitter<StructuredRecord> emitter) throws Exception {
-    emitter.emit(StructuredRecordUtils.convertCase(
-      input.getValue().getRecord(), FieldCase.toFieldCase(dbSourceConfig.columnNameCase)));
+    emitter.emit(fieldCaseConverter.convert(input.getValue().getRecord()));
   }
 
   @Override
@@ -112,6 +194,30 @@ public class DBSource extends BatchSource<LongWritable, DBRecord, StructuredReco
     }
   }
 
+  /**
+   * Returns the highest value of the incremental column in the rows returned by the given query as a SQL literal,
+   * or null if it returns no rows.
+   *
+   * @throws IllegalArgumentException if the incremental column is not a number, a date, a time or a timestamp
+   */
+  @Nullable
+  private String getMaxValue(Class<? extends Driver> driverClass, String importQuery) throws SQLException {
+    // All the splits together read the rows of the query without conditions
+    String query = String.format("SELECT MAX(%s) FROM (%s) t", dbSourceConfig.incrementalColumn,
+                                 importQuery.replace(CONDITIONS_PLACEHOLDER, "(1 = 1)"));
+    try (Connection connection = dbManager.getConnection(driverClass);
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(query)) {
+      // The highest value is put in the queries of the next run, which is only safe for numbers, dates and times
+      ResultSetMetaData metaData = resultSet.getMetaData();
+      Preconditions.checkArgument(DBUtils.hasSQLLiteral(metaData.getColumnType(1)),
+                                  "Incremental column '%s' must be a number, a date, a time or a timestamp, " +
+                                    "but its type is %s.", dbSourceConfig.incrementalColumn,
+                                  metaData.getColumnTypeName(1));
+      return resultSet.next() ? DBUtils.getSQLLiteral(resultSet, 1) : null;
+    }
+  }
+
   private String getJDBCPluginId() {
     return String.format("%s.%s.%s", "source", dbSourceConfig.jdbcPluginType, dbSourceConfig.jdbcPluginName);
   }
@@ -120,24 +226,115 @@ public class DBSource extends BatchSource<LongWritable, DBRecord, StructuredReco
    * {@link PluginConfig} for {@link DBSource}
    */
   public static class DBSourceConfig extends DBConfig {
+    public static final String COUNT_QUERY = "countQuery";
+    public static final String BOUNDING_QUERY = "boundingQuery";
+    public static final String SPLIT_BY = "splitBy";
+    public static final String NUM_SPLITS = "numSplits";
+    public static final String INCREMENTAL_COLUMN = "incrementalColumn";
+    public static final String LAST_VALUE_TABLE = "lastValueTable";
+    public static final String INITIAL_LAST_VALUE = "initialLastValue";
+
     @Description("The SELECT query to use to import data from the specified " +
       "table. You can specify an arbitrary number of columns to import, or import all columns using *. " +
       "You can also specify a number of WHERE clauses or ORDER BY clauses. However, LIMIT and OFFSET clauses " +
-      "should not be used in this query.")
+      "should not be used in this query. If 'splitBy' is set, the query must contain the '$CONDITIONS' string, " +
+      "which will be replaced by the range of the 'splitBy' field read by each split. " +
+      "For example, 'SELECT * FROM table WHERE $CONDITIONS'.")
     String importQuery;
 
+    @Name(COUNT_QUERY)
     @Description("The SELECT query to use to get the count of records to " +
       "import from the specified table. Examples: SELECT COUNT(*) from <my_table> where <my_column> 1, " +
       "SELECT COUNT(my_column) from my_table. NOTE: Please include the same WHERE clauses in this query as the ones " +
-      "used in the import query to reflect an accurate number of records to import.")
+      "used in the import query to reflect an accurate number of records to import. Required unless 'splitBy' " +
+      "is set.")
+    @Nullable
     String countQuery;
 
+    @Name(BOUNDING_QUERY)
+    @Description("The SELECT query that returns the minimum and maximum values of the 'splitBy' field. " +
+      "For example, 'SELECT MIN(id),MAX(id) FROM table'. Required if 'splitBy' is set.")
+    @Nullable
+    String boundingQuery;
+
+    @Name(SPLIT_BY)
+    @Description("Name of the field used to generate splits. If set, the rows are read in parallel by splits " +
+      "that each read a range of values of this field, instead of splits that each skip the rows read by the " +
+      "splits before them.")
+    @Nullable
+    String splitBy;
+
+    @Name(NUM_SPLITS)
+    @Description("Number of splits to generate if 'splitBy' is set. Defaults to the number of map tasks " +
+      "of the pipeline.")
+    @Nullable
+    Integer numSplits;
+
+    @Name(INCREMENTAL_COLUMN)
+    @Description("Name of a column returned by the import query whose values only increase as rows are added, " +
+      "such as an id or a creation timestamp. If set, each run only reads the rows added since the last successful " +
+      "run: the '$LAST_VALUE' string in the queries is replaced by the highest value of this column read so far, " +
+      "so the import query must contain a condition like 'WHERE id > $LAST_VALUE'. Rows with a value higher than " +
+      "the highest one when the run starts are left to the next run. The column must be a number, a date, a time " +
+      "or a timestamp.")
+    @Nullable
+    String incrementalColumn;
+
+    @Name(LAST_VALUE_TABLE)
+    @Description("Name of the Table that keeps track of the highest value of the incremental column read so far. " +
+      "Required if 'incrementalColumn' is set.")
+    @Nullable
+    String lastValueTable;
+
+    @Name(INITIAL_LAST_VALUE)
+    @Description("Value that '$LAST_VALUE' is replaced by in the first run, before any value has been read, " +
+      "as a SQL literal, such as 0 or {ts '2016-01-01 00:00:00'}. Required if 'incrementalColumn' is set.")
+    @Nullable
+    String initialLastValue;
+
     public String getImportQuery() {
       return cleanQuery(importQuery);
     }
 
+    @Nullable
     public String getCountQuery() {
-      return cleanQuery(countQuery);
+      return countQuery == null ? null : cleanQuery(countQuery);
+    }
+
+    @Nullable
+    public String getBoundingQuery() {
+      return boundingQuery == null ? null : cleanQuery(boundingQuery);
+    }
+
+    boolean hasIncrementalColumn() {
+      return !Strings.isNullOrEmpty(incrementalColumn);
+    }
+
+    boolean hasSplitBy() {
+      return !Strings.isNullOrEmpty(splitBy);
+    }
+
+    private void validate() {
+      Preconditions.checkArgument(hasSplitBy() == !Strings.isNullOrEmpty(boundingQuery),
+                                  "Either both '%s' and '%s' must be set, or none of them.", SPLIT_BY, BOUNDING_QUERY);
+      if (hasSplitBy()) {
+        Preconditions.checkArgument(getImportQuery().contains(CONDITIONS_PLACEHOLDER),
+                                    "Import Query %s must contain the string '$CONDITIONS' if '%s' is set.",
+                                    importQuery, SPLIT_BY);
+      } else {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(countQuery),
+                                    "'%s' must be set if '%s' is not set.", COUNT_QUERY, SPLIT_BY);
+      }
+      Preconditions.checkArgument(numSplits == null || numSplits > 0,
+                                  "'%s' must be a positive number, found %s.", NUM_SPLITS, numSplits);
+      if (hasIncrementalColumn()) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(lastValueTable) && !Strings.isNullOrEmpty(initialLastValue),
+                                    "Both '%s' and '%s' must be set if '%s' is set.",
+                                    LAST_VALUE_TABLE, INITIAL_LAST_VALUE, INCREMENTAL_COLUMN);
+        Preconditions.checkArgument(getImportQuery().contains(LAST_VALUE_PLACEHOLDER),
+                                    "Import Query %s must contain the string '%s' if '%s' is set.",
+                                    importQuery, LAST_VALUE_PLACEHOLDER, INCREMENTAL_COLUMN);
+      }
     }
   }
 }
@@ -16,32 +16,28 @@
 
 package co.cask.hydrator.plugin.db.batch.source;
 
+import co.cask.hydrator.plugin.ConnectionPool;
 import co.cask.hydrator.plugin.DBUtils;
-import co.cask.hydrator.plugin.JDBCDriverShim;
+import co.cask.hydrator.plugin.ETLDBRecordReader;
 import com.google.common.base.Throwables;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.RecordReader;
-import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
 import org.apache.hadoop.mapreduce.lib.db.DBInputFormat;
+import org.apache.hadoop.mapreduce.lib.db.DBRecordReader;
 import org.apache.hadoop.mapreduce.lib.db.DBWritable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.hadoop.mapreduce.lib.db.OracleDBRecordReader;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /**
  * Class that extends {@link DBInputFormat} to load the database driver class correctly.
  */
 public class ETLDBInputFormat extends DBInputFormat {
-  private static final Logger LOG = LoggerFactory.getLogger(ETLDBInputFormat.class);
-  private Driver driver;
-  private JDBCDriverShim driverShim;
 
   public static void setInput(Configuration conf,
                               Class<? extends DBWritable> inputClass,
@@ -54,94 +50,59 @@ public class ETLDBInputFormat extends DBInputFormat {
 
   @Override
   public Connection getConnection() {
-    if (this.connection == null) {
-      Configuration conf = getConf();
-      try {
-        String url = conf.get(DBConfiguration.URL_PROPERTY);
-        try {
-          // throws SQLException if no suitable driver is found
-          DriverManager.getDriver(url);
-        } catch (SQLException e) {
-          if (driverShim == null) {
-            if (driver == null) {
-              ClassLoader classLoader = conf.getClassLoader();
-              @SuppressWarnings("unchecked")
-              Class<? extends Driver> driverClass =
-                (Class<? extends Driver>) classLoader.loadClass(conf.get(DBConfiguration.DRIVER_CLASS_PROPERTY));
-              driver = driverClass.newInstance();
-
-              // De-register the default driver that gets registered when driver class is loaded.
-              DBUtils.deregisterAllDrivers(driverClass);
-            }
-            driverShim = new JDBCDriverShim(driver);
-            DriverManager.registerDriver(driverShim);
-            LOG.debug("Registered JDBC driver via shim {}. Actual Driver {}.", driverShim, driver);
-          }
-        }
-        if (conf.get(DBConfiguration.USERNAME_PROPERTY) == null) {
-          this.connection = DriverManager.getConnection(url);
-        } else {
-          this.connection = DriverManager.getConnection(url,
-                                                        conf.get(DBConfiguration.USERNAME_PROPERTY),
-                                                        conf.get(DBConfiguration.PASSWORD_PROPERTY));
-        }
-        this.connection.setAutoCommit(false);
-        this.connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-      } catch (Exception e) {
-        throw Throwables.propagate(e);
+    try {
+      // The connection is closed by the record reader of each split, which then needs a new connection
+      if (this.connection == null || this.connection.isClosed()) {
+        Configuration conf = getConf();
+        this.connection = ConnectionPool.getConnection(conf);
+        DBUtils.configureConnection(this.connection, conf);
       }
+    } catch (SQLException e) {
+      throw Throwables.propagate(e);
     }
     return this.connection;
   }
 
   @Override
-  protected RecordReader createDBRecordReader(DBInputSplit split, Configuration conf) throws IOException {
-    final RecordReader dbRecordReader = super.createDBRecordReader(split, conf);
-    return new RecordReader() {
-      @Override
-      public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
-        dbRecordReader.initialize(split, context);
-      }
-
-      @Override
-      public boolean nextKeyValue() throws IOException, InterruptedException {
-        return dbRecordReader.nextKeyValue();
-      }
-
-      @Override
-      public Object getCurrentKey() throws IOException, InterruptedException {
-        return dbRecordReader.getCurrentKey();
-      }
-
-      @Override
-      public Object getCurrentValue() throws IOException, InterruptedException {
-        return dbRecordReader.getCurrentValue();
-      }
-
-      @Override
-      public float getProgress() throws IOException, InterruptedException {
-        return dbRecordReader.getProgress();
-      }
-
-      @Override
-      public void close() throws IOException {
-        dbRecordReader.close();
-        try {
-          DriverManager.deregisterDriver(driverShim);
-        } catch (SQLException e) {
-          throw new IOException(e);
+  @SuppressWarnings("unchecked")
+  protected RecordReader<LongWritable, DBWritable> createDBRecordReader(DBInputSplit split,
+                                                                        Configuration conf) throws IOException {
+    final int fetchSize = conf.getInt(DBUtils.FETCH_SIZE, 0);
+    String dbProductName = getDBProductName();
+    RecordReader<LongWritable, DBWritable> reader;
+    if (fetchSize <= 0 || dbProductName.startsWith("MYSQL")) {
+      // The MySQL record reader streams the rows one at a time
+      reader = super.createDBRecordReader(split, conf);
+    } else {
+      // The record readers create their statements when they are first read, so the fetch size is set by them
+      DBConfiguration dbConf = getDBConf();
+      Class<DBWritable> inputClass = (Class<DBWritable>) dbConf.getInputClass();
+      try {
+        if (dbProductName.startsWith("ORACLE")) {
+          reader = new OracleDBRecordReader<DBWritable>(split, inputClass, conf, getConnection(), dbConf,
+                                                        dbConf.getInputConditions(), dbConf.getInputFieldNames(),
+                                                        dbConf.getInputTableName()) {
+            @Override
+            protected ResultSet executeQuery(String query) throws SQLException {
+              setStatement(DBUtils.prepareQuery(getConnection(), query, fetchSize));
+              return getStatement().executeQuery();
+            }
+          };
+        } else {
+          reader = new DBRecordReader<DBWritable>(split, inputClass, conf, getConnection(), dbConf,
+                                                  dbConf.getInputConditions(), dbConf.getInputFieldNames(),
+                                                  dbConf.getInputTableName()) {
+            @Override
+            protected ResultSet executeQuery(String query) throws SQLException {
+              setStatement(DBUtils.prepareQuery(getConnection(), query, fetchSize));
+              return getStatement().executeQuery();
+            }
+          };
         }
+      } catch (SQLException e) {
+        throw new IOException(e);
       }
-    };
-  }
-
-  @Override
-  protected void closeConnection() {
-    super.closeConnection();
-    try {
-      DriverManager.deregisterDriver(driverShim);
-    } catch (SQLException e) {
-      throw Throwables.propagate(e);
     }
+    return new ETLDBRecordReader<>(reader, getConnection());
   }
 }
@@ -43,6 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Driver;
+import java.util.Map;
 
 /**
  * Batch source to read from a Teradata table
@@ -57,6 +58,7 @@ public class TeradataSource extends BatchSource<LongWritable, DBRecord, Structur
   private final TeradataSourceConfig sourceConfig;
   private final DBManager dbManager;
   private Class<? extends Driver> driverClass;
+  private StructuredRecordUtils.FieldCaseConverter fieldCaseConverter;
 
   public TeradataSource(TeradataSourceConfig sourceConfig) {
     this.sourceConfig = sourceConfig;
@@ -93,6 +95,9 @@ public class TeradataSource extends BatchSource<LongWritable, DBRecord, Structur
     DataDrivenETLDBInputFormat.setInput(job, DBRecord.class,
                                         sourceConfig.getImportQuery(), sourceConfig.getBoundingQuery());
     job.getConfiguration().set(DBConfiguration.INPUT_ORDER_BY_PROPERTY, sourceConfig.splitBy);
+    for (Map.Entry<String, String> property : sourceConfig.getConnectionProperties(context.getStageName()).entrySet()) {
+      hConf.set(property.getKey(), property.getValue());
+    }
     context.setInput(new SourceInputFormatProvider(DataDrivenETLDBInputFormat.class, hConf));
   }
 
@@ -100,12 +105,14 @@ public class TeradataSource extends BatchSource<LongWritable, DBRecord, Structur
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
     driverClass = context.loadPluginClass(getJDBCPluginId());
+    dbManager.initializeMetrics(context.getStageName(), context.getMetrics());
+    FieldCase fieldCase = FieldCase.toFieldCase(sourceConfig.columnNameCase);
+    fieldCaseConverter = new StructuredRecordUtils.FieldCaseConverter(fieldCase);
   }
 
   @Override
   public void transform(KeyValue<LongWritable, DBRecord> input, Emitter<StructuredRecord> emitter) throws Exception {
-    emitter.emit(StructuredRecordUtils.convertCase(
-      input.getValue().getRecord(), FieldCase.toFieldCase(sourceConfig.columnNameCase)));
+    emitter.emit(fieldCaseConverter.convert(input.getValue().getRecord()));
   }
 
   @Override
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.hydrator.common.test.MockStageMetrics;
+import com.google.common.base.Stopwatch;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit Tests for {@link ConnectionPool}.
+ */
+public class ConnectionPoolTest {
+  private static final AtomicInteger DATABASE_ID = new AtomicInteger();
+
+  // Pools are never closed, so each test connects to its own database, to get pools that no other test used
+  private String url;
+
+  @Before
+  public void createURL() {
+    url = "jdbc:hsqldb:mem:pooltest" + DATABASE_ID.incrementAndGet();
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    Connection connection = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000).getConnection();
+    connection.setAutoCommit(false);
+    connection.close();
+    Assert.assertTrue(connection.isClosed());
+
+    // The idle connection is reused, and reset to auto-commit like a new connection
+    Connection reused = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000).getConnection();
+    Assert.assertTrue(reused.getAutoCommit());
+    // The pool keeps a single idle connection, so the second one is closed when released
+    Connection other = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000).getConnection();
+    reused.close();
+    other.close();
+
+    Map<String, Long> metrics = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000).getMetrics();
+    Assert.assertEquals(2L, (long) metrics.get(ConnectionPool.CONNECTIONS_OPENED));
+    Assert.assertEquals(1L, (long) metrics.get(ConnectionPool.CONNECTIONS_REUSED));
+  }
+
+  @Test
+  public void testReleaseRestoresSettings() throws Exception {
+    ConnectionPool pool = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000);
+    Connection connection = pool.getConnection();
+    int transactionIsolation = connection.getTransactionIsolation();
+    boolean readOnly = connection.isReadOnly();
+    connection.setTransactionIsolation(transactionIsolation == Connection.TRANSACTION_SERIALIZABLE ?
+                                         Connection.TRANSACTION_READ_COMMITTED : Connection.TRANSACTION_SERIALIZABLE);
+    connection.setReadOnly(!readOnly);
+    connection.close();
+
+    // The idle connection is reused with the settings of a new connection
+    try (Connection reused = pool.getConnection()) {
+      Assert.assertEquals(1L, (long) pool.getMetrics().get(ConnectionPool.CONNECTIONS_REUSED));
+      Assert.assertEquals(transactionIsolation, reused.getTransactionIsolation());
+      Assert.assertEquals(readOnly, reused.isReadOnly());
+    }
+  }
+
+  @Test
+  public void testIdleTimeout() throws Exception {
+    ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 0).getConnection().close();
+    Thread.sleep(10);
+    ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 0).getConnection().close();
+
+    Map<String, Long> metrics = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 0).getMetrics();
+    Assert.assertEquals(2L, (long) metrics.get(ConnectionPool.CONNECTIONS_OPENED));
+    Assert.assertEquals(0L, (long) metrics.get(ConnectionPool.CONNECTIONS_REUSED));
+    // The second connection may also have been expired by the background thread already
+    Assert.assertTrue(metrics.get(ConnectionPool.CONNECTIONS_EXPIRED) >= 1);
+  }
+
+  @Test
+  public void testIdleConnectionsExpireWithoutUse() throws Exception {
+    ConnectionPool pool = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 50);
+    Connection connection = pool.getConnection();
+    connection.close();
+
+    // The idle connection is closed once it times out, even though the pool is not used anymore
+    Stopwatch stopwatch = new Stopwatch().start();
+    while (pool.getMetrics().get(ConnectionPool.CONNECTIONS_EXPIRED) == 0 &&
+      stopwatch.elapsedTime(TimeUnit.SECONDS) < 10) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.assertEquals(1L, (long) pool.getMetrics().get(ConnectionPool.CONNECTIONS_EXPIRED));
+  }
+
+  @Test
+  public void testPoolPerSettings() throws Exception {
+    ConnectionPool pool = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000);
+    Assert.assertSame(pool, ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000));
+    // Callers with other settings do not get the pool created by the first caller
+    Assert.assertNotSame(pool, ConnectionPool.get(JDBCDriver.class, url, "SA", "", 2, 60000));
+    Assert.assertNotSame(pool, ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 1000));
+  }
+
+  @Test
+  public void testOracleCompatibleConnection() throws Exception {
+    // The Hadoop Oracle record readers look up the method that sets the time zone on the class of the connection
+    try (Connection connection = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000).getConnection()) {
+      Assert.assertFalse(Proxy.isProxyClass(connection.getClass()));
+      Assert.assertNotNull(connection.getClass().getMethod("setSessionTimeZone", String.class));
+    }
+  }
+
+  @Test
+  public void testStageMetrics() throws Exception {
+    DBConfig config = new DBConfig();
+    config.connectionString = url;
+    config.user = "SA";
+    config.password = "";
+    config.connectionPoolSize = 1;
+    ConnectionPool pool = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1,
+                                             ConnectionPool.DEFAULT_IDLE_TIMEOUT_MS);
+    pool.getConnection().close();
+
+    // Only the connections of the stage are counted, not the ones of the other stages that use the pool
+    DBManager dbManager = new DBManager(config);
+    MockStageMetrics metrics = new MockStageMetrics("source");
+    dbManager.initializeMetrics("source" + url, metrics);
+    Connection connection = dbManager.getConnection(JDBCDriver.class);
+    pool.getConnection("sink" + url).close();
+    connection.close();
+    // Connections of the formats are counted for the stage in their configuration
+    Configuration conf = new Configuration();
+    DBConfiguration.configureDB(conf, JDBCDriver.class.getName(), url, "SA", "");
+    conf.set(ConnectionPool.MAX_IDLE, "1");
+    conf.set(ConnectionPool.STAGE_NAME, "source" + url);
+    ConnectionPool.getConnection(conf).close();
+    dbManager.destroy();
+    Assert.assertEquals(0, metrics.getCount(ConnectionPool.CONNECTIONS_OPENED));
+    Assert.assertEquals(2, metrics.getCount(ConnectionPool.CONNECTIONS_REUSED));
+    Map<String, Long> sinkMetrics = ConnectionPool.takeStageMetrics("sink" + url);
+    Assert.assertEquals(1L, (long) sinkMetrics.get(ConnectionPool.CONNECTIONS_OPENED));
+
+    // The counts are only emitted once
+    dbManager.destroy();
+    Assert.assertEquals(2, metrics.getCount(ConnectionPool.CONNECTIONS_REUSED));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Connection connection = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 0, 60000).getConnection();
+    connection.close();
+    ConnectionPool.get(JDBCDriver.class, url, "SA", "", 0, 60000).getConnection().close();
+
+    Assert.assertEquals(2L, (long) ConnectionPool.get(JDBCDriver.class, url, "SA", "", 0, 60000).getMetrics()
+      .get(ConnectionPool.CONNECTIONS_OPENED));
+  }
+
+  @Test(expected = SQLException.class)
+  public void testUseAfterClose() throws Exception {
+    Connection connection = ConnectionPool.get(JDBCDriver.class, url, "SA", "", 1, 60000).getConnection();
+    connection.close();
+    connection.createStatement();
+  }
+}
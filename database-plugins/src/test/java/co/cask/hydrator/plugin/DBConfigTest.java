@@ -19,6 +19,8 @@ package co.cask.hydrator.plugin;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.sql.Connection;
+
 /**
  * Tests for the db config.
  */
@@ -40,6 +42,25 @@ public class DBConfigTest {
     Assert.assertEquals("", config.query);
   }
 
+  @Test
+  public void testTransactionIsolationLevel() {
+    TestDBConfig config = new TestDBConfig("select * from table");
+    Assert.assertEquals(Connection.TRANSACTION_SERIALIZABLE, config.getTransactionIsolationLevel());
+    config.transactionIsolationLevel = "TRANSACTION_READ_COMMITTED";
+    Assert.assertEquals(Connection.TRANSACTION_READ_COMMITTED, config.getTransactionIsolationLevel());
+    Assert.assertEquals(String.valueOf(Connection.TRANSACTION_READ_COMMITTED),
+                        config.getConnectionProperties("source").get(DBUtils.TRANSACTION_ISOLATION_LEVEL));
+    config.transactionIsolationLevel = "transaction_read_uncommitted";
+    Assert.assertEquals(Connection.TRANSACTION_READ_UNCOMMITTED, config.getTransactionIsolationLevel());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidTransactionIsolationLevel() {
+    TestDBConfig config = new TestDBConfig("select * from table");
+    config.transactionIsolationLevel = "READ_SOMETHING";
+    config.getTransactionIsolationLevel();
+  }
+
   /**
    * Test config.
    */
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableList;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Unit Tests for {@link DBRecord}.
+ */
+public class DBRecordTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "student",
+    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("SCORE", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("NAME", Schema.of(Schema.Type.STRING)));
+
+  @Test
+  public void testWrite() throws Exception {
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("ID", 1).set("NAME", "user1").build();
+    List<String> calls = new ArrayList<>();
+
+    // Null values are written with the type of their column, whichever constructor is used
+    new DBRecord(record, new int[] {Types.SMALLINT, Types.BIGINT, Types.VARCHAR}).write(recorder(calls));
+    Assert.assertEquals(ImmutableList.of("setShort[1, 1]", "setNull[2, " + Types.BIGINT + "]", "setString[3, user1]"),
+                        calls);
+
+    calls.clear();
+    DBRecord.FieldMapping fieldMapping = new DBRecord.FieldMapping(SCHEMA, ImmutableList.of("NAME", "SCORE"),
+                                                                   new int[] {Types.VARCHAR, Types.TIMESTAMP});
+    new DBRecord(record, fieldMapping).write(recorder(calls));
+    Assert.assertEquals(ImmutableList.of("setString[1, user1]", "setNull[2, " + Types.TIMESTAMP + "]"), calls);
+  }
+
+  @Test
+  public void testGetRecord() {
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("ID", 1).set("NAME", "user1").build();
+    // All the fields are written, so the record itself is returned
+    Assert.assertSame(record, new DBRecord(record, new int[] {Types.INTEGER, Types.BIGINT, Types.VARCHAR})
+      .getRecord());
+
+    DBRecord.FieldMapping fieldMapping = new DBRecord.FieldMapping(SCHEMA, ImmutableList.of("NAME"),
+                                                                   new int[] {Types.VARCHAR});
+    StructuredRecord projected = new DBRecord(record, fieldMapping).getRecord();
+    Assert.assertEquals(1, projected.getSchema().getFields().size());
+    Assert.assertEquals("user1", projected.get("NAME"));
+  }
+
+  @Test
+  public void testReadFields() throws Exception {
+    Properties properties = new Properties();
+    properties.put("user", "SA");
+    properties.put("password", "");
+    try (Connection connection = new JDBCDriver().connect("jdbc:hsqldb:mem:dbrecordtest", properties);
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE users (id INT, name VARCHAR(10))");
+      statement.execute("INSERT INTO users VALUES (1, 'user1'), (2, 'user2')");
+      statement.execute("CREATE TABLE scores (score BIGINT)");
+      statement.execute("INSERT INTO scores VALUES (10)");
+
+      try (Statement usersStatement = connection.createStatement();
+           ResultSet users = usersStatement.executeQuery("SELECT id, name FROM users ORDER BY id");
+           Statement scoresStatement = connection.createStatement();
+           ResultSet scores = scoresStatement.executeQuery("SELECT score FROM scores")) {
+        // The record readers read every row of their result set into the same record
+        DBRecord userRecord = new DBRecord();
+        DBRecord scoreRecord = new DBRecord();
+        Assert.assertTrue(users.next());
+        userRecord.readFields(users);
+        StructuredRecord user = userRecord.getRecord();
+        Assert.assertEquals(1, user.get("ID"));
+        Assert.assertEquals("user1", user.get("NAME"));
+
+        // Reading another result set at the same time does not change the schema of the first one
+        Assert.assertTrue(scores.next());
+        scoreRecord.readFields(scores);
+        Assert.assertEquals(10L, scoreRecord.getRecord().get("SCORE"));
+        Assert.assertEquals(1, scoreRecord.getRecord().getSchema().getFields().size());
+
+        Assert.assertTrue(users.next());
+        userRecord.readFields(users);
+        Assert.assertEquals(2, userRecord.getRecord().get("ID"));
+        Assert.assertEquals("user2", userRecord.getRecord().get("NAME"));
+        // The schema is derived once per result set
+        Assert.assertSame(user.getSchema(), userRecord.getRecord().getSchema());
+      }
+    }
+  }
+
+  // Records the setter calls made on a prepared statement
+  private static PreparedStatement recorder(final List<String> calls) {
+    InvocationHandler handler = new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        calls.add(method.getName() + Arrays.toString(args));
+        return null;
+      }
+    };
+    return (PreparedStatement) Proxy.newProxyInstance(DBRecordTest.class.getClassLoader(),
+                                                      new Class<?>[] { PreparedStatement.class }, handler);
+  }
+}
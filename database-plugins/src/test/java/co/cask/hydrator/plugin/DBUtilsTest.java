@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import org.apache.hadoop.conf.Configuration;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Unit Tests for {@link DBUtils}.
+ */
+public class DBUtilsTest {
+
+  @Test
+  public void testConfigureConnection() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setBoolean(DBUtils.AUTO_COMMIT, true);
+    conf.setInt(DBUtils.TRANSACTION_ISOLATION_LEVEL, Connection.TRANSACTION_READ_COMMITTED);
+
+    Properties properties = new Properties();
+    properties.put("user", "SA");
+    properties.put("password", "");
+    try (Connection connection = new JDBCDriver().connect("jdbc:hsqldb:mem:utilstest", properties)) {
+      DBUtils.configureConnection(connection, conf);
+      Assert.assertTrue(connection.getAutoCommit());
+      Assert.assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+    }
+  }
+
+  @Test
+  public void testPrepareQuery() throws Exception {
+    Properties properties = new Properties();
+    properties.put("user", "SA");
+    properties.put("password", "");
+    try (Connection connection = new JDBCDriver().connect("jdbc:hsqldb:mem:utilstest", properties);
+         PreparedStatement statement = DBUtils.prepareQuery(connection, "SELECT * FROM (VALUES (0)) AS t (x)", 50)) {
+      Assert.assertEquals(50, statement.getFetchSize());
+      Assert.assertEquals(ResultSet.TYPE_FORWARD_ONLY, statement.getResultSetType());
+    }
+  }
+
+  @Test
+  public void testSQLLiteral() throws Exception {
+    Properties properties = new Properties();
+    properties.put("user", "SA");
+    properties.put("password", "");
+    try (Connection connection = new JDBCDriver().connect("jdbc:hsqldb:mem:utilstest", properties);
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(
+           "SELECT 3, CAST(1.5 AS DECIMAL(3, 1)), 'it''s', DATE '2016-01-02', TIME '10:00:00', " +
+             "TIMESTAMP '2016-01-02 10:00:00.5', CAST(NULL AS INT) FROM (VALUES (0)) AS t (x)")) {
+      Assert.assertTrue(resultSet.next());
+      Assert.assertTrue(DBUtils.hasSQLLiteral(resultSet.getMetaData().getColumnType(1)));
+      Assert.assertEquals("3", DBUtils.getSQLLiteral(resultSet, 1));
+      Assert.assertEquals("1.5", DBUtils.getSQLLiteral(resultSet, 2));
+      // Strings are not turned into literals, which could inject SQL
+      Assert.assertFalse(DBUtils.hasSQLLiteral(resultSet.getMetaData().getColumnType(3)));
+      try {
+        DBUtils.getSQLLiteral(resultSet, 3);
+        Assert.fail("Expected strings to be rejected.");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+      Assert.assertEquals("{d '2016-01-02'}", DBUtils.getSQLLiteral(resultSet, 4));
+      Assert.assertEquals("{t '10:00:00'}", DBUtils.getSQLLiteral(resultSet, 5));
+      Assert.assertEquals("{ts '2016-01-02 10:00:00.5'}", DBUtils.getSQLLiteral(resultSet, 6));
+      Assert.assertNull(DBUtils.getSQLLiteral(resultSet, 7));
+
+      // The literals can be used in queries
+      try (ResultSet literals = statement.executeQuery(
+        String.format("SELECT COUNT(*) FROM (VALUES (0)) AS t (x) WHERE %s = TIMESTAMP '2016-01-02 10:00:00.5'",
+                      "{ts '2016-01-02 10:00:00.5'}"))) {
+        Assert.assertTrue(literals.next());
+        Assert.assertEquals(1, literals.getInt(1));
+      }
+    }
+  }
+}
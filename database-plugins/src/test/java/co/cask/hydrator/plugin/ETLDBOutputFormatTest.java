@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Unit Tests for {@link ETLDBOutputFormat}.
+ */
+public class ETLDBOutputFormatTest {
+  private static final TaskAttemptID ATTEMPT_ID = new TaskAttemptID("1458000000000", 1, TaskType.REDUCE, 2, 0);
+
+  @Test
+  public void testStagingTableName() {
+    String name = ETLDBOutputFormat.getStagingTableName("users", ATTEMPT_ID);
+    Assert.assertTrue(name, name.matches("stg_users_[0-9a-f]{16}"));
+
+    // Quotes are removed, and long names are truncated to fit the Oracle limit of 30 characters
+    name = ETLDBOutputFormat.getStagingTableName("\"my_very_long_table_name\"", ATTEMPT_ID);
+    Assert.assertTrue(name, name.matches("stg_my_very_l_[0-9a-f]{16}"));
+    Assert.assertEquals(30, name.length());
+
+    // The staging table is in the same schema as the table
+    name = ETLDBOutputFormat.getStagingTableName("\"my.schema\".\"users\"", ATTEMPT_ID);
+    Assert.assertTrue(name, name.matches("\"my\\.schema\"\\.stg_users_[0-9a-f]{16}"));
+  }
+
+  @Test
+  public void testStagingTableNameIsUnique() {
+    String name = ETLDBOutputFormat.getStagingTableName("users", ATTEMPT_ID);
+    Assert.assertEquals(name, ETLDBOutputFormat.getStagingTableName("users", ATTEMPT_ID));
+    // The same job, task and attempt numbers on another cluster, or another attempt, use another staging table
+    Assert.assertNotEquals(name, ETLDBOutputFormat.getStagingTableName(
+      "users", new TaskAttemptID("1458000000001", 1, TaskType.REDUCE, 2, 0)));
+    Assert.assertNotEquals(name, ETLDBOutputFormat.getStagingTableName(
+      "users", new TaskAttemptID("1458000000000", 1, TaskType.REDUCE, 2, 1)));
+  }
+
+  @Test
+  public void testGetRecordWriterFailureReleasesConnection() throws Exception {
+    Configuration conf = new Configuration(false);
+    DBConfiguration.configureDB(conf, JDBCDriver.class.getName(), "jdbc:hsqldb:mem:outputformattest", "SA", "");
+    conf.setInt(ConnectionPool.MAX_IDLE, 1);
+    conf.set(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, "missing");
+    conf.setStrings(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, "ID", "NAME");
+    conf.set(ETLDBOutputFormat.WRITE_MODE, "staged");
+    conf.set(ETLDBOutputFormat.KEY_FIELDS, "ID");
+
+    // The staging table can not be created, since the table does not exist
+    try {
+      new ETLDBOutputFormat<>().getRecordWriter(new TaskAttemptContextImpl(conf, ATTEMPT_ID));
+      Assert.fail("Expected the staging table creation to fail.");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getCause() instanceof SQLException);
+    }
+
+    // The connection was returned to the pool
+    try (Connection connection = ConnectionPool.getConnection(conf)) {
+      Assert.assertEquals(1L, (long) ConnectionPool.get(conf).getMetrics().get(ConnectionPool.CONNECTIONS_OPENED));
+      Assert.assertEquals(1L, (long) ConnectionPool.get(conf).getMetrics().get(ConnectionPool.CONNECTIONS_REUSED));
+      Assert.assertTrue(connection.isValid(0));
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.hydrator.plugin.db.batch.source.ETLDBInputFormat;
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.apache.hadoop.mapreduce.lib.db.DBInputFormat;
+import org.apache.hadoop.mapreduce.lib.db.DBRecordReader;
+import org.apache.hadoop.mapreduce.lib.db.DBWritable;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Unit Tests for {@link ETLDBRecordReader}.
+ */
+public class ETLDBRecordReaderTest {
+  private static final String URL = "jdbc:hsqldb:mem:readertest";
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testReadWithAutoCommitAndFetchSize() throws Exception {
+    Properties properties = new Properties();
+    properties.put("user", "SA");
+    properties.put("password", "");
+    try (Connection connection = new JDBCDriver().connect(URL, properties);
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE users (id INT)");
+      statement.execute("INSERT INTO users VALUES (1), (2), (3)");
+
+      Configuration conf = new Configuration(false);
+      DBConfiguration.configureDB(conf, JDBCDriver.class.getName(), URL, "SA", "");
+      conf.setBoolean(DBUtils.AUTO_COMMIT, true);
+      conf.setInt(DBUtils.FETCH_SIZE, 2);
+      ETLDBInputFormat.setInput(conf, IdRecord.class, "SELECT id FROM users ORDER BY id",
+                                "SELECT COUNT(*) FROM users");
+      ETLDBInputFormat inputFormat = new ETLDBInputFormat();
+      inputFormat.setConf(conf);
+
+      // The record readers get the connection of the driver, which Hadoop inspects to set the Oracle time zone
+      Assert.assertFalse(Proxy.isProxyClass(inputFormat.getConnection().getClass()));
+
+      List<Integer> ids = new ArrayList<>();
+      try (RecordReader<LongWritable, IdRecord> reader = inputFormat.createRecordReader(
+        new DBInputFormat.DBInputSplit(0, 3), new TaskAttemptContextImpl(conf, new TaskAttemptID()))) {
+        while (reader.nextKeyValue()) {
+          IdRecord record = reader.getCurrentValue();
+          ids.add(record.id);
+          Assert.assertEquals(2, record.fetchSize);
+        }
+      }
+      Assert.assertEquals(ImmutableList.of(1, 2, 3), ids);
+    }
+  }
+
+  @Test
+  public void testCloseWithAutoCommit() throws Exception {
+    StrictConnection strictConnection = new StrictConnection();
+    strictConnection.autoCommit = true;
+    Configuration conf = new Configuration(false);
+
+    // The Hadoop record readers commit unconditionally, which drivers like the PostgreSQL one reject with auto-commit
+    try {
+      createRecordReader(strictConnection.connection, conf).close();
+      Assert.fail("Expected the commit to fail with auto-commit enabled.");
+    } catch (IOException e) {
+      // expected
+    }
+
+    new ETLDBRecordReader<>(createRecordReader(strictConnection.connection, conf), strictConnection.connection).close();
+    Assert.assertEquals(1, strictConnection.commits);
+  }
+
+  private static DBRecordReader<IdRecord> createRecordReader(Connection connection,
+                                                             Configuration conf) throws SQLException {
+    return new DBRecordReader<>(new DBInputFormat.DBInputSplit(0, 0), IdRecord.class, conf, connection,
+                                new DBConfiguration(conf), null, null, "users");
+  }
+
+  /**
+   * A record with an id, and the fetch size of the statement it is read with.
+   */
+  public static final class IdRecord implements DBWritable {
+    private int id;
+    private int fetchSize;
+
+    @Override
+    public void readFields(ResultSet resultSet) throws SQLException {
+      id = resultSet.getInt(1);
+      fetchSize = resultSet.getStatement().getFetchSize();
+    }
+
+    @Override
+    public void write(PreparedStatement statement) throws SQLException {
+      statement.setInt(1, id);
+    }
+  }
+
+  /**
+   * A fake connection that rejects commits and rollbacks with auto-commit enabled, like the PostgreSQL driver.
+   */
+  private static final class StrictConnection implements InvocationHandler {
+    private final Connection connection = (Connection) Proxy.newProxyInstance(
+      ETLDBRecordReaderTest.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+    private boolean autoCommit;
+    private int commits;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "setAutoCommit":
+          autoCommit = (Boolean) args[0];
+          return null;
+        case "getAutoCommit":
+          return autoCommit;
+        case "commit":
+        case "rollback":
+          if (autoCommit) {
+            throw new SQLException("Cannot commit when autoCommit is enabled.");
+          }
+          commits++;
+          return null;
+        default:
+          return null;
+      }
+    }
+  }
+}
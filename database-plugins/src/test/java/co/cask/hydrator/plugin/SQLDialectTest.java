@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Unit Tests for {@link SQLDialect}.
+ */
+public class SQLDialectTest {
+  private static final String[] FIELDS = {"ID", "NAME"};
+  private static final List<String> KEYS = ImmutableList.of("ID");
+
+  @Test
+  public void testFromProductName() {
+    Assert.assertEquals(SQLDialect.MYSQL, SQLDialect.fromProductName("MySQL"));
+    Assert.assertEquals(SQLDialect.MYSQL, SQLDialect.fromProductName("MariaDB"));
+    Assert.assertEquals(SQLDialect.POSTGRESQL, SQLDialect.fromProductName("PostgreSQL"));
+    Assert.assertEquals(SQLDialect.ORACLE, SQLDialect.fromProductName("Oracle"));
+    Assert.assertEquals(SQLDialect.SQLSERVER, SQLDialect.fromProductName("Microsoft SQL Server"));
+    Assert.assertEquals(SQLDialect.STANDARD, SQLDialect.fromProductName("HSQL Database Engine"));
+  }
+
+  @Test
+  public void testUpsertQuery() {
+    Assert.assertEquals("INSERT INTO users (ID, NAME) VALUES (?, ?) ON DUPLICATE KEY UPDATE NAME = VALUES(NAME)",
+                        SQLDialect.MYSQL.upsertQuery("users", FIELDS, KEYS, null));
+    Assert.assertEquals("INSERT INTO users (ID, NAME) VALUES (?, ?) " +
+                          "ON CONFLICT (ID) DO UPDATE SET NAME = EXCLUDED.NAME",
+                        SQLDialect.POSTGRESQL.upsertQuery("users", FIELDS, KEYS, null));
+    Assert.assertEquals("MERGE INTO users t USING (SELECT ? ID, ? NAME FROM dual) s ON (t.ID = s.ID) " +
+                          "WHEN MATCHED THEN UPDATE SET t.NAME = s.NAME " +
+                          "WHEN NOT MATCHED THEN INSERT (ID, NAME) VALUES (s.ID, s.NAME)",
+                        SQLDialect.ORACLE.upsertQuery("users", FIELDS, KEYS, null));
+    Assert.assertEquals("MERGE INTO users t USING (VALUES (CAST(? AS INTEGER), CAST(? AS VARCHAR(10)))) " +
+                          "AS s (ID, NAME) ON (t.ID = s.ID) " +
+                          "WHEN MATCHED THEN UPDATE SET t.NAME = s.NAME " +
+                          "WHEN NOT MATCHED THEN INSERT (ID, NAME) VALUES (s.ID, s.NAME)",
+                        SQLDialect.STANDARD.upsertQuery("users", FIELDS, KEYS,
+                                                        new String[] {"INTEGER", "VARCHAR(10)"}));
+  }
+
+  @Test
+  public void testUpsertQueryWithOnlyKeys() {
+    List<String> keys = ImmutableList.of("ID", "NAME");
+    Assert.assertEquals("INSERT INTO users (ID, NAME) VALUES (?, ?) ON CONFLICT (ID, NAME) DO NOTHING",
+                        SQLDialect.POSTGRESQL.upsertQuery("users", FIELDS, keys, null));
+    Assert.assertEquals("MERGE INTO users t USING (VALUES (?, ?)) AS s (ID, NAME) " +
+                          "ON (t.ID = s.ID AND t.NAME = s.NAME) " +
+                          "WHEN NOT MATCHED THEN INSERT (ID, NAME) VALUES (s.ID, s.NAME);",
+                        SQLDialect.SQLSERVER.upsertQuery("users", FIELDS, keys, null));
+  }
+
+  @Test
+  public void testStagingTableQueries() {
+    Assert.assertEquals("CREATE TABLE users_stage AS (SELECT ID, NAME FROM users) WITH NO DATA",
+                        SQLDialect.STANDARD.createStagingTableQuery("users_stage", "users", FIELDS));
+    Assert.assertEquals("SELECT ID, NAME INTO users_stage FROM users WHERE 1 = 0",
+                        SQLDialect.SQLSERVER.createStagingTableQuery("users_stage", "users", FIELDS));
+    Assert.assertEquals("ALTER TABLE users_stage ADD COLUMN stg_seq BIGINT",
+                        SQLDialect.STANDARD.addSequenceColumnQuery("users_stage"));
+    Assert.assertEquals("ALTER TABLE users_stage ADD (stg_seq NUMBER(19))",
+                        SQLDialect.ORACLE.addSequenceColumnQuery("users_stage"));
+    Assert.assertEquals("ALTER TABLE users_stage ADD stg_seq BIGINT",
+                        SQLDialect.SQLSERVER.addSequenceColumnQuery("users_stage"));
+  }
+
+  @Test
+  public void testMergeStagingTableQuery() {
+    // Only the last row staged for each key is merged
+    String latest = "SELECT r.ID, r.NAME FROM users_stage r WHERE NOT EXISTS " +
+      "(SELECT 1 FROM users_stage l WHERE l.ID = r.ID AND l.stg_seq > r.stg_seq)";
+    Assert.assertEquals("INSERT INTO users (ID, NAME) " + latest + " ON DUPLICATE KEY UPDATE NAME = VALUES(NAME)",
+                        SQLDialect.MYSQL.mergeStagingTableQuery("users", "users_stage", FIELDS, KEYS));
+    Assert.assertEquals("INSERT INTO users (ID, NAME) " + latest +
+                          " ON CONFLICT (ID) DO UPDATE SET NAME = EXCLUDED.NAME",
+                        SQLDialect.POSTGRESQL.mergeStagingTableQuery("users", "users_stage", FIELDS, KEYS));
+    Assert.assertEquals("MERGE INTO users t USING (" + latest + ") s ON (t.ID = s.ID) " +
+                          "WHEN MATCHED THEN UPDATE SET t.NAME = s.NAME " +
+                          "WHEN NOT MATCHED THEN INSERT (ID, NAME) VALUES (s.ID, s.NAME)",
+                        SQLDialect.STANDARD.mergeStagingTableQuery("users", "users_stage", FIELDS, KEYS));
+    Assert.assertEquals(SQLDialect.STANDARD.mergeStagingTableQuery("users", "users_stage", FIELDS, KEYS) + ";",
+                        SQLDialect.SQLSERVER.mergeStagingTableQuery("users", "users_stage", FIELDS, KEYS));
+  }
+}
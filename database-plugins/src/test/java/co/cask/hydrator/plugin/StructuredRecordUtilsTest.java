@@ -52,6 +52,28 @@ public class StructuredRecordUtilsTest {
     Assert.assertEquals(10, noChangeRecord.get("Age"));
   }
 
+  @Test
+  public void testConverterReuse() throws Exception {
+    Schema schema = Schema.recordOf("dbrecord",
+                                    Schema.Field.of("Name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("Age", Schema.of(Schema.Type.INT)));
+    StructuredRecordUtils.FieldCaseConverter converter =
+      new StructuredRecordUtils.FieldCaseConverter(FieldCase.LOWER);
+    StructuredRecord first = converter.convert(
+      StructuredRecord.builder(schema).set("Name", "Abcd").set("Age", 10).build());
+    StructuredRecord second = converter.convert(
+      StructuredRecord.builder(schema).set("Name", "Efgh").set("Age", 20).build());
+    Assert.assertSame(first.getSchema(), second.getSchema());
+    Assert.assertEquals("Efgh", second.get("name"));
+    Assert.assertEquals(20, second.get("age"));
+
+    // the converted schema is computed again if the schema changes
+    Schema otherSchema = Schema.recordOf("dbrecord", Schema.Field.of("ID", Schema.of(Schema.Type.LONG)));
+    StructuredRecord third = converter.convert(StructuredRecord.builder(otherSchema).set("ID", 5L).build());
+    Assert.assertEquals(5L, third.get("id"));
+    Assert.assertNull(third.getSchema().getField("name"));
+  }
+
   @Test
   public void testInvalidTransformation() throws Exception {
     StructuredRecord record = StructuredRecord.builder(
@@ -18,6 +18,7 @@ package co.cask.hydrator.plugin.db.batch.sink;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
@@ -36,7 +37,9 @@ import co.cask.cdap.test.MapReduceManager;
 import co.cask.cdap.test.TestBase;
 import co.cask.hydrator.plugin.DatabasePluginTestBase;
 import co.cask.hydrator.plugin.common.Properties;
+import co.cask.hydrator.plugin.db.batch.source.DBSource;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.junit.Assert;
@@ -212,6 +215,242 @@ public class BatchETLDBTestRun extends DatabasePluginTestBase {
     Assert.assertEquals(2, Bytes.toInt(row2.getRow()));
   }
 
+  @Test
+  public void testDBSourceWithSplitBy() throws Exception {
+    Schema schema = Schema.recordOf("student",
+                                    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("NAME", Schema.of(Schema.Type.STRING)));
+
+    String importQuery = "SELECT ID, NAME FROM \"my_table\" WHERE ID < 3 AND $CONDITIONS";
+    String boundingQuery = "SELECT MIN(ID),MAX(ID) from \"my_table\"";
+    Plugin sourceConfig = new Plugin("Database", ImmutableMap.<String, String>builder()
+      .put(Properties.DB.CONNECTION_STRING, getConnectionURL())
+      .put(Properties.DB.TABLE_NAME, "my_table")
+      .put(Properties.DB.IMPORT_QUERY, importQuery)
+      .put(DBSource.DBSourceConfig.BOUNDING_QUERY, boundingQuery)
+      .put(DBSource.DBSourceConfig.SPLIT_BY, "ID")
+      .put(DBSource.DBSourceConfig.NUM_SPLITS, "2")
+      .put(Properties.DB.JDBC_PLUGIN_NAME, "hypersql")
+      .build()
+    );
+
+    ETLStage source = new ETLStage("dbSourceSplits", sourceConfig);
+    Plugin sinkConfig = new Plugin("Table", ImmutableMap.of(
+      "name", "outputTableSplits",
+      Properties.Table.PROPERTY_SCHEMA, schema.toString(),
+      Properties.Table.PROPERTY_SCHEMA_ROW_FIELD, "ID"));
+    ETLStage sink = new ETLStage("tableSinkSplits", sinkConfig);
+    ETLBatchConfig etlConfig = new ETLBatchConfig("* * * * *", source, sink, new ArrayList<ETLStage>());
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "dbSourceSplitByTest");
+    ApplicationManager appManager = TestBase.deployApplication(appId, appRequest);
+
+    MapReduceManager mrManager = appManager.getMapReduceManager(ETLMapReduce.NAME);
+    mrManager.start();
+    mrManager.waitForFinish(5, TimeUnit.MINUTES);
+    List<RunRecord> runRecords = mrManager.getHistory();
+    Assert.assertEquals(ProgramRunStatus.COMPLETED, runRecords.get(0).getStatus());
+
+    // each row should be read by exactly one of the splits
+    DataSetManager<Table> outputManager = getDataset("outputTableSplits");
+    Table outputTable = outputManager.get();
+    Scanner scanner = outputTable.scan(null, null);
+    Row row1 = scanner.next();
+    Row row2 = scanner.next();
+    Assert.assertNotNull(row1);
+    Assert.assertNotNull(row2);
+    Assert.assertNull(scanner.next());
+    scanner.close();
+    Assert.assertEquals("user1", row1.getString("NAME"));
+    Assert.assertEquals("user2", row2.getString("NAME"));
+    Assert.assertEquals(1, Bytes.toInt(row1.getRow()));
+    Assert.assertEquals(2, Bytes.toInt(row2.getRow()));
+  }
+
+  @Test
+  public void testDBSourceWithAutoCommit() throws Exception {
+    Schema schema = Schema.recordOf("student",
+                                    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("NAME", Schema.of(Schema.Type.STRING)));
+
+    // the input format commits after reading each split, which must work with auto-commit enabled
+    String importQuery = "SELECT ID, NAME FROM \"my_table\" WHERE ID < 3";
+    String countQuery = "SELECT COUNT(*) from \"my_table\" WHERE ID < 3";
+    Plugin sourceConfig = new Plugin("Database", ImmutableMap.<String, String>builder()
+      .put(Properties.DB.CONNECTION_STRING, getConnectionURL())
+      .put(Properties.DB.TABLE_NAME, "my_table")
+      .put(Properties.DB.IMPORT_QUERY, importQuery)
+      .put(Properties.DB.COUNT_QUERY, countQuery)
+      .put("autoCommit", "true")
+      .put("transactionIsolationLevel", "TRANSACTION_READ_COMMITTED")
+      .put("fetchSize", "1")
+      .put(Properties.DB.JDBC_PLUGIN_NAME, "hypersql")
+      .build()
+    );
+
+    ETLStage source = new ETLStage("dbSourceAutoCommit", sourceConfig);
+    Plugin sinkConfig = new Plugin("Table", ImmutableMap.of(
+      "name", "outputTableAutoCommit",
+      Properties.Table.PROPERTY_SCHEMA, schema.toString(),
+      Properties.Table.PROPERTY_SCHEMA_ROW_FIELD, "ID"));
+    ETLStage sink = new ETLStage("tableSinkAutoCommit", sinkConfig);
+    ETLBatchConfig etlConfig = new ETLBatchConfig("* * * * *", source, sink, new ArrayList<ETLStage>());
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "dbSourceAutoCommitTest");
+    ApplicationManager appManager = TestBase.deployApplication(appId, appRequest);
+
+    MapReduceManager mrManager = appManager.getMapReduceManager(ETLMapReduce.NAME);
+    mrManager.start();
+    mrManager.waitForFinish(5, TimeUnit.MINUTES);
+    List<RunRecord> runRecords = mrManager.getHistory();
+    Assert.assertEquals(ProgramRunStatus.COMPLETED, runRecords.get(0).getStatus());
+
+    DataSetManager<Table> outputManager = getDataset("outputTableAutoCommit");
+    Table outputTable = outputManager.get();
+    Assert.assertEquals("user1", outputTable.get(Bytes.toBytes(1)).getString("NAME"));
+    Assert.assertEquals("user2", outputTable.get(Bytes.toBytes(2)).getString("NAME"));
+  }
+
+  @Test
+  public void testDBSourceIncremental() throws Exception {
+    Schema schema = Schema.recordOf("student",
+                                    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("NAME", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("CREATED", Schema.of(Schema.Type.LONG)));
+
+    try (Connection conn = getConnection();
+         Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE incremental_table (ID INT, NAME VARCHAR(40), CREATED TIMESTAMP)");
+      stmt.execute("INSERT INTO incremental_table VALUES (1, 'user1', TIMESTAMP '2016-01-01 10:00:00.5')");
+      stmt.execute("INSERT INTO incremental_table VALUES (2, 'user2', TIMESTAMP '2016-01-02 10:00:00')");
+    }
+
+    // The last value of a timestamp column is kept as a JDBC escape literal
+    String importQuery = "SELECT ID, NAME, CREATED FROM incremental_table WHERE CREATED > $LAST_VALUE";
+    String countQuery = "SELECT COUNT(*) from incremental_table WHERE CREATED > $LAST_VALUE";
+    Plugin sourceConfig = new Plugin("Database", ImmutableMap.<String, String>builder()
+      .put(Properties.DB.CONNECTION_STRING, getConnectionURL())
+      .put(Properties.DB.TABLE_NAME, "incremental_table")
+      .put(Properties.DB.IMPORT_QUERY, importQuery)
+      .put(Properties.DB.COUNT_QUERY, countQuery)
+      .put(DBSource.DBSourceConfig.INCREMENTAL_COLUMN, "CREATED")
+      .put(DBSource.DBSourceConfig.LAST_VALUE_TABLE, "lastValueTable")
+      .put(DBSource.DBSourceConfig.INITIAL_LAST_VALUE, "{ts '2016-01-01 00:00:00'}")
+      .put(Properties.DB.JDBC_PLUGIN_NAME, "hypersql")
+      .build()
+    );
+
+    ETLStage source = new ETLStage("dbSourceIncremental", sourceConfig);
+    Plugin sinkConfig = new Plugin("Table", ImmutableMap.of(
+      "name", "outputTableIncremental",
+      Properties.Table.PROPERTY_SCHEMA, schema.toString(),
+      Properties.Table.PROPERTY_SCHEMA_ROW_FIELD, "ID"));
+    ETLStage sink = new ETLStage("tableSinkIncremental", sinkConfig);
+    ETLBatchConfig etlConfig = new ETLBatchConfig("* * * * *", source, sink, new ArrayList<ETLStage>());
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "dbSourceIncrementalTest");
+    ApplicationManager appManager = TestBase.deployApplication(appId, appRequest);
+
+    try {
+      MapReduceManager mrManager = appManager.getMapReduceManager(ETLMapReduce.NAME);
+      mrManager.start();
+      mrManager.waitForFinish(5, TimeUnit.MINUTES);
+      Assert.assertEquals(ProgramRunStatus.COMPLETED, mrManager.getHistory().get(0).getStatus());
+
+      // the first run reads all the rows after the initial last value, and keeps the highest value read
+      DataSetManager<Table> outputManager = getDataset("outputTableIncremental");
+      Assert.assertEquals(ImmutableList.of("user1", "user2"), getNames(outputManager.get()));
+      DataSetManager<KeyValueTable> lastValueManager = getDataset("lastValueTable");
+      Assert.assertEquals("{ts '2016-01-02 10:00:00.0'}",
+                          Bytes.toString(lastValueManager.get().read(DBSource.LAST_VALUE)));
+
+      // the second run only reads the rows added since the first one
+      outputManager.get().delete(Bytes.toBytes(1));
+      outputManager.get().delete(Bytes.toBytes(2));
+      outputManager.flush();
+      try (Connection conn = getConnection();
+           Statement stmt = conn.createStatement()) {
+        stmt.execute("INSERT INTO incremental_table VALUES (3, 'user3', TIMESTAMP '2016-01-03 10:00:00')");
+      }
+      mrManager.start();
+      mrManager.waitForFinish(5, TimeUnit.MINUTES);
+      List<RunRecord> runRecords = mrManager.getHistory();
+      Assert.assertEquals(2, runRecords.size());
+      for (RunRecord runRecord : runRecords) {
+        Assert.assertEquals(ProgramRunStatus.COMPLETED, runRecord.getStatus());
+      }
+
+      outputManager.flush();
+      Assert.assertEquals(ImmutableList.of("user3"), getNames(outputManager.get()));
+      lastValueManager.flush();
+      Assert.assertEquals("{ts '2016-01-03 10:00:00.0'}",
+                          Bytes.toString(lastValueManager.get().read(DBSource.LAST_VALUE)));
+    } finally {
+      try (Connection conn = getConnection();
+           Statement stmt = conn.createStatement()) {
+        stmt.execute("DROP TABLE incremental_table");
+      }
+    }
+  }
+
+  @Test
+  public void testDBSourceIncrementalStringColumn() throws Exception {
+    Schema schema = Schema.recordOf("student",
+                                    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("NAME", Schema.of(Schema.Type.STRING)));
+    try (Connection conn = getConnection();
+         Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE incremental_string_table (ID INT, NAME VARCHAR(40))");
+      stmt.execute("INSERT INTO incremental_string_table VALUES (1, 'user1'' OR ''1'' = ''1')");
+    }
+
+    // The highest string would be put in the queries of the next run, so the run fails
+    String importQuery = "SELECT ID, NAME FROM incremental_string_table WHERE NAME > $LAST_VALUE";
+    Plugin sourceConfig = new Plugin("Database", ImmutableMap.<String, String>builder()
+      .put(Properties.DB.CONNECTION_STRING, getConnectionURL())
+      .put(Properties.DB.TABLE_NAME, "incremental_string_table")
+      .put(Properties.DB.IMPORT_QUERY, importQuery)
+      .put(Properties.DB.COUNT_QUERY, "SELECT COUNT(*) from incremental_string_table WHERE NAME > $LAST_VALUE")
+      .put(DBSource.DBSourceConfig.INCREMENTAL_COLUMN, "NAME")
+      .put(DBSource.DBSourceConfig.LAST_VALUE_TABLE, "lastStringValueTable")
+      .put(DBSource.DBSourceConfig.INITIAL_LAST_VALUE, "''")
+      .put(Properties.DB.JDBC_PLUGIN_NAME, "hypersql")
+      .build()
+    );
+    Plugin sinkConfig = new Plugin("Table", ImmutableMap.of(
+      "name", "outputTableIncrementalString",
+      Properties.Table.PROPERTY_SCHEMA, schema.toString(),
+      Properties.Table.PROPERTY_SCHEMA_ROW_FIELD, "ID"));
+    ETLStage source = new ETLStage("dbSourceIncrementalString", sourceConfig);
+    ETLStage sink = new ETLStage("tableSinkIncrementalString", sinkConfig);
+    ETLBatchConfig etlConfig = new ETLBatchConfig("* * * * *", source, sink, new ArrayList<ETLStage>());
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "dbSourceIncrementalStringTest");
+    try {
+      assertRuntimeFailure(appId, etlConfig, "ETL Application with DB Source should have failed because of a " +
+        "string incremental column.");
+    } finally {
+      try (Connection conn = getConnection();
+           Statement stmt = conn.createStatement()) {
+        stmt.execute("DROP TABLE incremental_string_table");
+      }
+    }
+  }
+
+  // Returns the names in the rows of a table, in the order of the rows
+  private List<String> getNames(Table table) {
+    List<String> names = new ArrayList<>();
+    Scanner scanner = table.scan(null, null);
+    Row row;
+    while ((row = scanner.next()) != null) {
+      names.add(row.getString("NAME"));
+    }
+    scanner.close();
+    return names;
+  }
+
   @Test
   public void testDbSourceMultipleTables() throws Exception {
     Schema schema = Schema.recordOf("student",
@@ -432,6 +671,52 @@ public class BatchETLDBTestRun extends DatabasePluginTestBase {
 
   @Test
   public void testDBSink() throws Exception {
+    testDBSink("dbSinkTest", ImmutableMap.<String, String>of());
+  }
+
+  @Test
+  public void testDBSinkWithBatches() throws Exception {
+    // Execute and commit a batch for every row
+    testDBSink("dbSinkBatchesTest", ImmutableMap.of("batchSize", "1", "commitInterval", "1"));
+  }
+
+  @Test
+  public void testDBSinkWithConnectionPool() throws Exception {
+    // The connection used to read the column types is reused by the output format
+    testDBSink("dbSinkConnectionPoolTest", ImmutableMap.of("connectionPoolSize", "2"));
+  }
+
+  @Test
+  public void testDBSinkUpsert() throws Exception {
+    testDBSink("dbSinkUpsertTest", ImmutableMap.of("writeMode", "upsert", "keyColumns", "ID"), true);
+  }
+
+  @Test
+  public void testDBSinkStaged() throws Exception {
+    testDBSink("dbSinkStagedTest", ImmutableMap.of("writeMode", "staged", "keyColumns", "ID"), true);
+  }
+
+  @Test
+  public void testDBSinkStagedWithDuplicateKeys() throws Exception {
+    // The IDs of the input rows come from their row keys, which can not collide, so the rows are keyed by name
+    testDBSink("dbSinkStagedDuplicateTest", ImmutableMap.of("writeMode", "staged", "keyColumns", "NAME"), true, true);
+  }
+
+  private void testDBSink(String appName, Map<String, String> sinkProperties) throws Exception {
+    testDBSink(appName, sinkProperties, false);
+  }
+
+  private void testDBSink(String appName, Map<String, String> sinkProperties, boolean existingRow) throws Exception {
+    testDBSink(appName, sinkProperties, existingRow, false);
+  }
+
+  /**
+   * Writes two rows to the sink table, which already contains a stale version of the first row
+   * if existingRow is true. If duplicateRow is true, a stale version of the first row is read before it,
+   * in the same task.
+   */
+  private void testDBSink(String appName, Map<String, String> sinkProperties, boolean existingRow,
+                          boolean duplicateRow) throws Exception {
     String cols = "ID, NAME, SCORE, GRADUATED, TINY, SMALL, BIG, FLOAT_COL, REAL_COL, NUMERIC_COL, DECIMAL_COL, " +
       "BIT_COL, DATE_COL, TIME_COL, TIMESTAMP_COL, BINARY_COL, BLOB_COL, CLOB_COL";
     Plugin sourceConfig = new Plugin("Table",
@@ -440,34 +725,60 @@ public class BatchETLDBTestRun extends DatabasePluginTestBase {
                                        Properties.Table.PROPERTY_SCHEMA_ROW_FIELD, "ID",
                                        Properties.Table.PROPERTY_SCHEMA, schema.toString()));
     Plugin sinkConfig = new Plugin("Database",
-                                   ImmutableMap.of(Properties.DB.CONNECTION_STRING, getConnectionURL(),
-                                                   Properties.DB.TABLE_NAME, "MY_DEST_TABLE",
-                                                   Properties.DB.COLUMNS, cols,
-                                                   Properties.DB.JDBC_PLUGIN_NAME, "hypersql"
-                                   ));
+                                   ImmutableMap.<String, String>builder()
+                                     .put(Properties.DB.CONNECTION_STRING, getConnectionURL())
+                                     .put(Properties.DB.TABLE_NAME, "MY_DEST_TABLE")
+                                     .put(Properties.DB.COLUMNS, cols)
+                                     .put(Properties.DB.JDBC_PLUGIN_NAME, "hypersql")
+                                     .putAll(sinkProperties)
+                                     .build());
     List<ETLStage> transforms = Lists.newArrayList();
     ETLStage source = new ETLStage("source", sourceConfig);
     ETLStage sink = new ETLStage("sink", sinkConfig);
     ETLBatchConfig etlConfig = new ETLBatchConfig("* * * * *", source, sink, transforms);
 
     AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
-    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "dbSinkTest");
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, appName);
     ApplicationManager appManager = TestBase.deployApplication(appId, appRequest);
 
     createInputData();
+    DataSetManager<Table> inputManager = getDataset("DBInputTable");
+    if (duplicateRow) {
+      // The rows are read in the order of their keys, so this row is written before the first row
+      putInputRow(inputManager, 0, "user1", 0);
+    }
+
+    Connection conn = getConnection();
+    Statement stmt = conn.createStatement();
+    // Other tests write to the same table
+    stmt.execute("DELETE FROM \"MY_DEST_TABLE\"");
+    if (existingRow) {
+      // The ID of the first row is its row key
+      stmt.execute("INSERT INTO \"MY_DEST_TABLE\" SELECT * FROM \"my_table\" WHERE ID = 1");
+      stmt.execute(String.format("UPDATE \"MY_DEST_TABLE\" SET ID = %d, NAME = 'user1', SCORE = 0 WHERE ID = 1",
+                                 Bytes.toInt(Bytes.toBytes("row1"))));
+    }
 
     MapReduceManager mrManager = appManager.getMapReduceManager(ETLMapReduce.NAME);
-    mrManager.start();
-    mrManager.waitForFinish(5, TimeUnit.MINUTES);
+    try {
+      mrManager.start();
+      mrManager.waitForFinish(5, TimeUnit.MINUTES);
+    } finally {
+      if (duplicateRow) {
+        // Other tests read the same table
+        inputManager.get().delete(Bytes.toBytes("row0"));
+        inputManager.flush();
+      }
+    }
     List<RunRecord> runRecords = mrManager.getHistory();
     Assert.assertEquals(ProgramRunStatus.COMPLETED, runRecords.get(0).getStatus());
 
-    Connection conn = getConnection();
-    Statement stmt = conn.createStatement();
-    stmt.execute("SELECT * FROM \"MY_DEST_TABLE\"");
+    stmt.execute("SELECT * FROM \"MY_DEST_TABLE\" ORDER BY ID");
     ResultSet resultSet = stmt.getResultSet();
+    // The existing row is updated with the last row written for its key, rather than duplicated
     Assert.assertTrue(resultSet.next());
     Assert.assertEquals("user1", resultSet.getString("NAME"));
+    Assert.assertEquals(3.451, resultSet.getDouble("SCORE"), 0.000001);
     Assert.assertTrue(resultSet.next());
     Assert.assertEquals("user2", resultSet.getString("NAME"));
     Assert.assertFalse(resultSet.next());
@@ -477,30 +788,32 @@ public class BatchETLDBTestRun extends DatabasePluginTestBase {
   private void createInputData() throws Exception {
     // add some data to the input table
     DataSetManager<Table> inputManager = getDataset("DBInputTable");
-    Table inputTable = inputManager.get();
     for (int i = 1; i <= 2; i++) {
-      Put put = new Put(Bytes.toBytes("row" + i));
-      String name = "user" + i;
-      put.add("ID", i);
-      put.add("NAME", name);
-      put.add("SCORE", 3.451);
-      put.add("GRADUATED", (i % 2 == 0));
-      put.add("TINY", i + 1);
-      put.add("SMALL", i + 2);
-      put.add("BIG", 3456987L);
-      put.add("FLOAT_COL", 3.456f);
-      put.add("REAL_COL", 3.457f);
-      put.add("NUMERIC_COL", 3.458);
-      put.add("DECIMAL_COL", 3.459);
-      put.add("BIT_COL", (i % 2 == 1));
-      put.add("DATE_COL", CURRENT_TS);
-      put.add("TIME_COL", CURRENT_TS);
-      put.add("TIMESTAMP_COL", CURRENT_TS);
-      put.add("BINARY_COL", name.getBytes(Charsets.UTF_8));
-      put.add("BLOB_COL", name.getBytes(Charsets.UTF_8));
-      put.add("CLOB_COL", CLOB_DATA);
-      inputTable.put(put);
-      inputManager.flush();
+      putInputRow(inputManager, i, "user" + i, 3.451);
     }
   }
+
+  private void putInputRow(DataSetManager<Table> inputManager, int i, String name, double score) {
+    Put put = new Put(Bytes.toBytes("row" + i));
+    put.add("ID", i);
+    put.add("NAME", name);
+    put.add("SCORE", score);
+    put.add("GRADUATED", (i % 2 == 0));
+    put.add("TINY", i + 1);
+    put.add("SMALL", i + 2);
+    put.add("BIG", 3456987L);
+    put.add("FLOAT_COL", 3.456f);
+    put.add("REAL_COL", 3.457f);
+    put.add("NUMERIC_COL", 3.458);
+    put.add("DECIMAL_COL", 3.459);
+    put.add("BIT_COL", (i % 2 == 1));
+    put.add("DATE_COL", CURRENT_TS);
+    put.add("TIME_COL", CURRENT_TS);
+    put.add("TIMESTAMP_COL", CURRENT_TS);
+    put.add("BINARY_COL", name.getBytes(Charsets.UTF_8));
+    put.add("BLOB_COL", name.getBytes(Charsets.UTF_8));
+    put.add("CLOB_COL", CLOB_DATA);
+    inputManager.get().put(put);
+    inputManager.flush();
+  }
 }
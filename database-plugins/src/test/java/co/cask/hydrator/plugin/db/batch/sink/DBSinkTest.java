@@ -101,6 +101,36 @@ public class DBSinkTest {
       getRecordFields(emitter.getEmitted().get(0).getKey().getRecord()));
   }
 
+  @Test
+  public void testSchemaChange() throws Exception {
+    final DBSink.DBSinkConfig config = new DBSink.DBSinkConfig();
+    config.columns = "body";
+    config.tableName = "foo";
+
+    DBSink sink = new DBSink(config);
+    sink.setColumns(ImmutableList.copyOf(Splitter.on(",").split(config.columns)));
+
+    Schema schema = Schema.recordOf(
+      "foo",
+      Schema.Field.of("ts", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("body", Schema.of(Schema.Type.STRING)));
+    Schema otherSchema = Schema.recordOf(
+      "foo",
+      Schema.Field.of("body", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+    MockEmitter<KeyValue<DBRecord, NullWritable>> emitter = new MockEmitter<>();
+    sink.transform(StructuredRecord.builder(schema).set("ts", 1L).set("body", "first").build(), emitter);
+    sink.transform(StructuredRecord.builder(schema).set("ts", 2L).set("body", "second").build(), emitter);
+    sink.transform(StructuredRecord.builder(otherSchema).set("body", "third").build(), emitter);
+
+    Assert.assertEquals(3, emitter.getEmitted().size());
+    String[] expected = {"first", "second", "third"};
+    for (int i = 0; i < expected.length; i++) {
+      StructuredRecord output = emitter.getEmitted().get(i).getKey().getRecord();
+      Assert.assertEquals(ImmutableMap.<String, Object>of("body", expected[i]), getRecordFields(output));
+    }
+  }
+
   @Test
   public void testFailure() throws Exception {
     final DBSink.DBSinkConfig config = new DBSink.DBSinkConfig();
@@ -30,6 +30,9 @@ final class DefaultKafkaConfigurer implements KafkaConfigurer {
   private String zookeeper;
   private String brokers;
   private final Map<TopicPartition, Integer> topicPartitions = Maps.newHashMap();
+  private int prefetchSize;
+  private int maxFetchSize;
+  private int maxPollRecords;
 
   @Override
   public void setZooKeeper(String zookeeper) {
@@ -51,6 +54,21 @@ final class DefaultKafkaConfigurer implements KafkaConfigurer {
     topicPartitions.put(new TopicPartition(topic, partition), fetchSize);
   }
 
+  @Override
+  public void setPrefetchSize(int prefetchSize) {
+    this.prefetchSize = prefetchSize;
+  }
+
+  @Override
+  public void setMaxFetchSize(int maxFetchSize) {
+    this.maxFetchSize = maxFetchSize;
+  }
+
+  @Override
+  public void setMaxPollRecords(int maxPollRecords) {
+    this.maxPollRecords = maxPollRecords;
+  }
+
   String getBrokers() {
     return brokers;
   }
@@ -59,6 +77,18 @@ final class DefaultKafkaConfigurer implements KafkaConfigurer {
     return zookeeper;
   }
 
+  int getPrefetchSize() {
+    return prefetchSize;
+  }
+
+  int getMaxFetchSize() {
+    return maxFetchSize;
+  }
+
+  int getMaxPollRecords() {
+    return maxPollRecords;
+  }
+
   Map<TopicPartition, Integer> getTopicPartitions() {
     return Collections.unmodifiableMap(topicPartitions);
   }
@@ -27,11 +27,15 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
-import kafka.api.FetchRequest;
 import kafka.api.FetchRequestBuilder;
 import kafka.api.PartitionOffsetRequestInfo;
 import kafka.cluster.Broker;
@@ -45,8 +49,10 @@ import kafka.javaapi.TopicMetadata;
 import kafka.javaapi.TopicMetadataRequest;
 import kafka.javaapi.TopicMetadataResponse;
 import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.javaapi.message.ByteBufferMessageSet;
 import kafka.message.Message;
 import kafka.message.MessageAndOffset;
+import org.apache.twill.common.Threads;
 import org.apache.twill.internal.kafka.client.ZKBrokerService;
 import org.apache.twill.kafka.client.BrokerInfo;
 import org.apache.twill.kafka.client.BrokerService;
@@ -60,8 +66,15 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
@@ -86,6 +99,8 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
   private ZKClientService zkClient;
   private BrokerService brokerService;
   private Cache<TopicPartition, SimpleConsumer> kafkaConsumers;
+  // Used to fetch from multiple brokers in parallel
+  private ExecutorService fetchExecutor;
 
   public Kafka08SimpleApiConsumer(KafkaSource kafkaSource) {
     super(kafkaSource);
@@ -106,6 +121,15 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
       configurer.setBrokers(brokers);
     }
     setupTopicPartitions(configurer, pluginConfig);
+    if (pluginConfig.getPrefetchSize() != null) {
+      configurer.setPrefetchSize(pluginConfig.getPrefetchSize());
+    }
+    if (pluginConfig.getMaxFetchSize() != null) {
+      configurer.setMaxFetchSize(pluginConfig.getMaxFetchSize());
+    }
+    if (pluginConfig.getMaxPollRecords() != null) {
+      configurer.setMaxPollRecords(pluginConfig.getMaxPollRecords());
+    }
   }
 
   private void setupTopicPartitions(KafkaConsumerConfigurer configurer, KafkaSource.KafkaPluginConfig pluginConfig) {
@@ -122,37 +146,118 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
 
   @Override
   protected Iterator<KafkaMessage<Long>> readMessages(KafkaConsumerInfo<Long> consumerInfo) throws Exception {
-    final TopicPartition topicPartition = consumerInfo.getTopicPartition();
-    String topic = topicPartition.getTopic();
-    int partition = topicPartition.getPartition();
+    Iterator<KafkaMessage<Long>> messages =
+      readMessages(ImmutableList.of(consumerInfo)).get(consumerInfo.getTopicPartition());
+    return messages == null ? Iterators.<KafkaMessage<Long>>emptyIterator() : messages;
+  }
+
+  /**
+   * Reads messages from all the given topic partitions. Partitions are grouped by their leader broker, so that
+   * each broker receives a single fetch request for all of its partitions, and brokers are fetched from in parallel.
+   */
+  @Override
+  protected Map<TopicPartition, Iterator<KafkaMessage<Long>>> readMessages(
+    Collection<KafkaConsumerInfo<Long>> consumerInfos) throws Exception {
+    // Look up the leaders of all the partitions without a consumer at once, for example after a leader change
+    Map<TopicPartition, InetSocketAddress> leaders = getLeaders(consumerInfos);
+
+    // Group the partitions by leader broker, using the consumer of the first partition of each broker for the fetch.
+    Map<String, SimpleConsumer> brokerConsumers = Maps.newLinkedHashMap();
+    ListMultimap<String, KafkaConsumerInfo<Long>> brokerInfos = ArrayListMultimap.create();
+    for (KafkaConsumerInfo<Long> consumerInfo : consumerInfos) {
+      SimpleConsumer consumer = getConsumer(consumerInfo, leaders);
+      if (consumer == null) {
+        continue;
+      }
+
+      long readOffset = consumerInfo.getReadOffset();
+      if (readOffset < 0) {
+        TopicPartition topicPartition = consumerInfo.getTopicPartition();
+        readOffset = getReadOffset(consumer, topicPartition.getTopic(), topicPartition.getPartition(), readOffset);
+        consumerInfo.setReadOffset(readOffset);
+      }
 
-    // Fetch message from Kafka.
-    final SimpleConsumer consumer = getConsumer(consumerInfo);
-    if (consumer == null) {
-      return Iterators.emptyIterator();
+      String broker = consumer.host() + ":" + consumer.port();
+      if (!brokerConsumers.containsKey(broker)) {
+        brokerConsumers.put(broker, consumer);
+      }
+      brokerInfos.put(broker, consumerInfo);
     }
 
-    long readOffset = consumerInfo.getReadOffset();
-    if (readOffset < 0) {
-      readOffset = getReadOffset(consumer, topic, partition, readOffset);
-      consumerInfo.setReadOffset(readOffset);
+    // No need for other threads if there is only one broker to fetch from
+    if (brokerConsumers.size() <= 1) {
+      Map<TopicPartition, Iterator<KafkaMessage<Long>>> messages = Maps.newHashMap();
+      for (Map.Entry<String, SimpleConsumer> entry : brokerConsumers.entrySet()) {
+        messages.putAll(fetch(entry.getValue(), brokerInfos.get(entry.getKey())));
+      }
+      return messages;
     }
 
-    FetchRequest fetchRequest = new FetchRequestBuilder()
-      .clientId(consumer.clientId())
-      .addFetch(topic, partition, readOffset, consumerInfo.getFetchSize())
-      .build();
-    FetchResponse response = consumer.fetch(fetchRequest);
+    List<Future<Map<TopicPartition, Iterator<KafkaMessage<Long>>>>> futures = Lists.newArrayList();
+    for (Map.Entry<String, SimpleConsumer> entry : brokerConsumers.entrySet()) {
+      final SimpleConsumer consumer = entry.getValue();
+      final List<KafkaConsumerInfo<Long>> infos = brokerInfos.get(entry.getKey());
+      futures.add(fetchExecutor.submit(new Callable<Map<TopicPartition, Iterator<KafkaMessage<Long>>>>() {
+        @Override
+        public Map<TopicPartition, Iterator<KafkaMessage<Long>>> call() throws Exception {
+          return fetch(consumer, infos);
+        }
+      }));
+    }
 
-    // Fetch failed
-    if (response.hasError()) {
-      handleFetchError(consumerInfo, consumer, readOffset, response.errorCode(topic, partition));
-      return Iterators.emptyIterator();
+    Map<TopicPartition, Iterator<KafkaMessage<Long>>> messages = Maps.newHashMap();
+    for (Future<Map<TopicPartition, Iterator<KafkaMessage<Long>>>> future : futures) {
+      messages.putAll(Futures.get(future, Exception.class));
+    }
+    return messages;
+  }
+
+  /**
+   * Fetches messages for multiple topic partitions led by the same broker in a single request.
+   */
+  private Map<TopicPartition, Iterator<KafkaMessage<Long>>> fetch(SimpleConsumer consumer,
+                                                                  List<KafkaConsumerInfo<Long>> consumerInfos) {
+    FetchRequestBuilder fetchRequestBuilder = new FetchRequestBuilder().clientId(consumer.clientId());
+    for (KafkaConsumerInfo<Long> consumerInfo : consumerInfos) {
+      TopicPartition topicPartition = consumerInfo.getTopicPartition();
+      fetchRequestBuilder.addFetch(topicPartition.getTopic(), topicPartition.getPartition(),
+                                   consumerInfo.getReadOffset(), consumerInfo.getFetchSize());
+    }
+    FetchResponse response = consumer.fetch(fetchRequestBuilder.build());
+
+    Map<TopicPartition, Iterator<KafkaMessage<Long>>> messages = Maps.newHashMap();
+    List<TopicPartition> failedPartitions = Lists.newArrayList();
+    for (KafkaConsumerInfo<Long> consumerInfo : consumerInfos) {
+      TopicPartition topicPartition = consumerInfo.getTopicPartition();
+      String topic = topicPartition.getTopic();
+      int partition = topicPartition.getPartition();
+      long readOffset = consumerInfo.getReadOffset();
+
+      // Fetch failed
+      short errorCode = response.errorCode(topic, partition);
+      if (errorCode != ErrorMapping.NoError()) {
+        if (!handleFetchError(consumerInfo, consumer, readOffset, errorCode)) {
+          failedPartitions.add(topicPartition);
+        }
+        continue;
+      }
+      ByteBufferMessageSet messageSet = response.messageSet(topic, partition);
+      recordFetchResponse(consumerInfo, messageSet.sizeInBytes(), messageSet.validBytes());
+      messages.put(topicPartition, createIterator(topicPartition, messageSet, readOffset));
     }
 
-    // Returns an Iterator of message
-    final long fetchReadOffset = readOffset;
-    final Iterator<MessageAndOffset> messages = response.messageSet(topic, partition).iterator();
+    // Only invalidate the consumers once the consumer used for the fetch is not needed anymore,
+    // since invalidating closes them.
+    kafkaConsumers.invalidateAll(failedPartitions);
+    return messages;
+  }
+
+  /**
+   * Returns an {@link Iterator} of the messages in the given message set, skipping messages before the read offset.
+   */
+  private Iterator<KafkaMessage<Long>> createIterator(final TopicPartition topicPartition, ByteBufferMessageSet
+                                                        messageSet, final long fetchReadOffset) {
+    final Iterator<MessageAndOffset> messages = messageSet.iterator();
     return new AbstractIterator<KafkaMessage<Long>>() {
       @Override
       protected KafkaMessage<Long> computeNext() {
@@ -199,6 +304,7 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
       }
     }
 
+    fetchExecutor = Executors.newCachedThreadPool(Threads.createDaemonThreadFactory("kafka-fetcher-%d"));
     kafkaConsumers = CacheBuilder.newBuilder()
       .concurrencyLevel(1)
       .expireAfterAccess(60, TimeUnit.SECONDS)
@@ -229,6 +335,9 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
   @Override
   public void destroy() {
     super.destroy();
+    if (fetchExecutor != null) {
+      fetchExecutor.shutdownNow();
+    }
     if (kafkaConsumers != null) {
       kafkaConsumers.invalidateAll();
       kafkaConsumers.cleanUp();
@@ -308,16 +417,19 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
   /**
    * Returns a {@link SimpleConsumer} for the given consumer info or {@code null} if no leader broker is currently
    * available.
+   *
+   * @param leaders the leader brokers of the topic partitions that do not have a consumer yet
    */
   @Nullable
-  private SimpleConsumer getConsumer(KafkaConsumerInfo<Long> consumerInfo) throws Exception {
+  private SimpleConsumer getConsumer(KafkaConsumerInfo<Long> consumerInfo,
+                                     Map<TopicPartition, InetSocketAddress> leaders) {
     TopicPartition topicPartition = consumerInfo.getTopicPartition();
     SimpleConsumer consumer = kafkaConsumers.getIfPresent(topicPartition);
     if (consumer != null) {
       return consumer;
     }
 
-    InetSocketAddress leader = getLeader(topicPartition.getTopic(), topicPartition.getPartition());
+    InetSocketAddress leader = leaders.get(topicPartition);
     if (leader == null) {
       return null;
     }
@@ -336,9 +448,10 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
    * @param consumer consumer to talk to Kafka
    * @param readOffset the beginning read offset
    * @param errorCode error code for the fetch.
+   * @return {@code false} if the consumer for the topic partition has to be invalidated by the caller
    */
-  private void handleFetchError(KafkaConsumerInfo<Long> consumerInfo,
-                                SimpleConsumer consumer, long readOffset, short errorCode) {
+  private boolean handleFetchError(KafkaConsumerInfo<Long> consumerInfo,
+                                   SimpleConsumer consumer, long readOffset, short errorCode) {
     TopicPartition topicPartition = consumerInfo.getTopicPartition();
     String topic = topicPartition.getTopic();
     int partition = topicPartition.getPartition();
@@ -355,65 +468,93 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
         // Otherwise the read offset must be larger than the latest (otherwise it won't have the out of range error)
         consumerInfo.setReadOffset(getReadOffset(consumer, topic, partition, kafka.api.OffsetRequest.LatestTime()));
       }
-    } else {
-      // For other type of error, invalid it from cache so that a new one will be created in next iteration
-      kafkaConsumers.invalidate(topicPartition);
+      return true;
     }
+    // For other type of error, it has to be invalidated from cache so that a new one will be created in next iteration
+    return false;
   }
 
   /**
-   * Gets the address of the leader broker for the given topic and partition
-   *
-   * @return the address for the leader broker or {@code null} if no leader is currently available.
+   * Gets the addresses of the leader brokers of the topic partitions that do not have a consumer yet.
+   * Topic partitions without a leader currently available are not part of the result.
    */
-  @Nullable
-  private InetSocketAddress getLeader(String topic, int partition) throws Exception {
-    // If BrokerService is available, it will use information from ZooKeeper
-    if (brokerService != null) {
-      BrokerInfo brokerInfo = brokerService.getLeader(topic, partition);
-      return (brokerInfo == null) ? null : new InetSocketAddress(brokerInfo.getHost(), brokerInfo.getPort());
+  private Map<TopicPartition, InetSocketAddress> getLeaders(Collection<KafkaConsumerInfo<Long>> consumerInfos)
+    throws Exception {
+    List<TopicPartition> topicPartitions = Lists.newArrayList();
+    Set<String> topics = Sets.newHashSet();
+    for (KafkaConsumerInfo<Long> consumerInfo : consumerInfos) {
+      TopicPartition topicPartition = consumerInfo.getTopicPartition();
+      if (kafkaConsumers.getIfPresent(topicPartition) == null) {
+        topicPartitions.add(topicPartition);
+        topics.add(topicPartition.getTopic());
+      }
+    }
+    if (topicPartitions.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    // Without ZooKeeper, use the broker list to discover the leaders
+    if (brokerService == null) {
+      return findLeaders(getKafkaConfig().getBrokers(), topics);
     }
 
-    // Otherwise use broker list to discover leader
-    return findLeader(getKafkaConfig().getBrokers(), topic, partition);
+    // If BrokerService is available, it will use information from ZooKeeper
+    Map<TopicPartition, InetSocketAddress> leaders = Maps.newHashMap();
+    for (TopicPartition topicPartition : topicPartitions) {
+      BrokerInfo brokerInfo = brokerService.getLeader(topicPartition.getTopic(), topicPartition.getPartition());
+      if (brokerInfo != null) {
+        leaders.put(topicPartition, new InetSocketAddress(brokerInfo.getHost(), brokerInfo.getPort()));
+      }
+    }
+    return leaders;
   }
 
   /**
-   * Finds the leader broker address for the given topic partition.
+   * Finds the leader broker addresses of all the partitions of the given topics, with a single metadata request.
+   * Brokers are tried one after the other until one of them responds.
    *
-   * @return the address for the leader broker or {@code null} if no leader is currently available.
+   * @return the addresses for the leader brokers. Topic partitions without a leader currently available are
+   *         not part of the result.
    */
-  @Nullable
-  private InetSocketAddress findLeader(String brokers, String topic, int partition) throws Exception {
+  private Map<TopicPartition, InetSocketAddress> findLeaders(String brokers, Set<String> topics) throws Exception {
     // Splits the broker list of format "host:port,host:port" into a map<host, port>
     Map<String, String> brokerMap = Splitter.on(',').withKeyValueSeparator(":").split(brokers);
 
-    // Go through the broker list and try to find a leader for the given topic partition.
+    // Go through the broker list and try to find the leaders for the given topics.
+    Exception failure = null;
     for (Map.Entry<String, String> broker : brokerMap.entrySet()) {
       try {
         SimpleConsumer consumer = new SimpleConsumer(broker.getKey(), Integer.parseInt(broker.getValue()), SO_TIMEOUT,
                                                      KafkaConsumerConfigurer.DEFAULT_FETCH_SIZE, "leaderLookup");
         try {
-          TopicMetadataRequest request = new TopicMetadataRequest(ImmutableList.of(topic));
+          TopicMetadataRequest request = new TopicMetadataRequest(ImmutableList.copyOf(topics));
           TopicMetadataResponse response = consumer.send(request);
+          Map<TopicPartition, InetSocketAddress> leaders = Maps.newHashMap();
           for (TopicMetadata topicData : response.topicsMetadata()) {
             for (PartitionMetadata partitionData : topicData.partitionsMetadata()) {
-              if (partitionData.partitionId() == partition) {
-                Broker leader = partitionData.leader();
-                return new InetSocketAddress(leader.host(), leader.port());
+              Broker leader = partitionData.leader();
+              if (leader != null) {
+                leaders.put(new TopicPartition(topicData.topic(), partitionData.partitionId()),
+                            new InetSocketAddress(leader.host(), leader.port()));
               }
             }
           }
-
+          return leaders;
         } finally {
           consumer.close();
         }
       } catch (Exception e) {
-        throw new Exception(
-          String.format("Failed to communicate with broker %s:%s for leader lookup for topic-partition %s-%s",
-                        broker.getKey(), broker.getValue(), topic, partition), e);
+        // Try the next broker, the one that failed may be down
+        LOG.debug("Failed to communicate with broker {}:{} for leader lookup for topics {}",
+                  broker.getKey(), broker.getValue(), topics, e);
+        failure = new Exception(
+          String.format("Failed to communicate with broker %s:%s for leader lookup for topics %s",
+                        broker.getKey(), broker.getValue(), topics), e);
       }
     }
-    return null;
+    if (failure != null) {
+      throw failure;
+    }
+    return ImmutableMap.of();
   }
 }
@@ -26,6 +26,11 @@ public interface KafkaConsumerConfigurer {
    */
   int DEFAULT_FETCH_SIZE = 1048576;  // 1M
 
+  /**
+   * Smallest message fetch size in bytes that an adaptive fetch size shrinks to.
+   */
+  int MIN_FETCH_SIZE = 65536;  // 64K
+
   /**
    * Adds a topic partition to consume message from. Same as calling
    *
@@ -44,4 +49,32 @@ public interface KafkaConsumerConfigurer {
    * @param fetchSize maximum number of bytes to fetch per request
    */
   void addTopicPartition(String topic, int partition, int fetchSize);
+
+  /**
+   * Sets the maximum number of messages fetched ahead in a background thread, while the messages fetched before
+   * are being processed. Prefetching is disabled if this is 0, which is the default.
+   *
+   * @param prefetchSize maximum number of messages to fetch ahead
+   */
+  void setPrefetchSize(int prefetchSize);
+
+  /**
+   * Makes the fetch size of each topic partition adapt to the amount of messages consumed. The fetch size starts at
+   * most at the given maximum. Once the messages of a fetch are consumed, the fetch size doubles, up to the maximum,
+   * if the response was full and consumed in one poll. It halves, down to {@link #MIN_FETCH_SIZE}, if less than
+   * a quarter of it was used, or if the messages had to wait for later polls. The fetch size stays fixed if this
+   * is 0, which is the default.
+   *
+   * @param maxFetchSize maximum number of bytes to fetch per request
+   */
+  void setMaxFetchSize(int maxFetchSize);
+
+  /**
+   * Sets the maximum number of messages emitted in one poll. Messages that are fetched but not emitted are kept
+   * for the next poll, and their partition is not fetched from again until they are emitted. The number of messages
+   * is not limited if this is 0, which is the default.
+   *
+   * @param maxPollRecords maximum number of messages to emit per poll
+   */
+  void setMaxPollRecords(int maxPollRecords);
 }
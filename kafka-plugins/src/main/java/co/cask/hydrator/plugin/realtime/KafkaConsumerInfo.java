@@ -25,9 +25,12 @@ import org.apache.twill.kafka.client.TopicPartition;
  */
 public final class KafkaConsumerInfo<OFFSET> {
   private final TopicPartition topicPartition;
-  private final int fetchSize;
+  private int fetchSize;
   private OFFSET readOffset;
   private OFFSET pendingReadOffset;
+  // size of the last fetch response whose messages have not all been consumed yet, or -1 if there is none
+  private int fetchResponseBytes = -1;
+  private int fetchMessageBytes;
 
   public KafkaConsumerInfo(TopicPartition topicPartition, int fetchSize, OFFSET readOffset) {
     this.topicPartition = topicPartition;
@@ -43,6 +46,30 @@ public final class KafkaConsumerInfo<OFFSET> {
     return fetchSize;
   }
 
+  public void setFetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Records the size of a fetch response, so that the fetch size can be adapted once its messages are consumed.
+   */
+  void setFetchResponse(int responseBytes, int messageBytes) {
+    this.fetchResponseBytes = responseBytes;
+    this.fetchMessageBytes = messageBytes;
+  }
+
+  int getFetchResponseBytes() {
+    return fetchResponseBytes;
+  }
+
+  int getFetchMessageBytes() {
+    return fetchMessageBytes;
+  }
+
+  void clearFetchResponse() {
+    fetchResponseBytes = -1;
+  }
+
   public OFFSET getReadOffset() {
     return pendingReadOffset != null ? pendingReadOffset : readOffset;
   }
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.realtime;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import org.apache.twill.kafka.client.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches messages from Kafka in a background thread with a {@link KafkaSimpleApiConsumer}, so that fetching
+ * from the brokers overlaps with the processing of the messages fetched before.
+ *
+ * Fetched messages are kept in a bounded queue. Once the queue is full, fetching blocks until messages are taken
+ * out of it. The prefetcher keeps track of its own fetch offsets, so the offsets of the consumer only need to be
+ * updated for the messages that were actually taken out of the queue and processed.
+ *
+ * @param <OFFSET> Type of offset object
+ */
+final class KafkaMessagePrefetcher<OFFSET> extends AbstractExecutionThreadService {
+  private static final Logger LOG = LoggerFactory.getLogger(KafkaMessagePrefetcher.class);
+  private static final long EMPTY_FETCH_BACKOFF_MS = 100;
+  private static final long FAILED_FETCH_BACKOFF_MS = 1000;
+
+  private final KafkaSimpleApiConsumer<?, ?, OFFSET> consumer;
+  private final Map<TopicPartition, KafkaConsumerInfo<OFFSET>> fetchInfos;
+  private final BlockingQueue<KafkaMessage<OFFSET>> messages;
+  private volatile Thread runThread;
+
+  /**
+   * @param consumer the consumer to fetch messages with
+   * @param consumerInfos the partitions to fetch from, and the offsets to start fetching at
+   * @param capacity maximum number of messages to fetch ahead
+   */
+  KafkaMessagePrefetcher(KafkaSimpleApiConsumer<?, ?, OFFSET> consumer,
+                         Collection<KafkaConsumerInfo<OFFSET>> consumerInfos, int capacity) {
+    this.consumer = consumer;
+    this.fetchInfos = Maps.newLinkedHashMap();
+    for (KafkaConsumerInfo<OFFSET> info : consumerInfos) {
+      fetchInfos.put(info.getTopicPartition(), new KafkaConsumerInfo<>(info.getTopicPartition(), info.getFetchSize(),
+                                                                       info.getReadOffset()));
+    }
+    this.messages = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /**
+   * Moves all the messages fetched so far to the given collection, in the order they were fetched.
+   *
+   * @return the number of messages moved
+   */
+  int drainTo(Collection<KafkaMessage<OFFSET>> collection) {
+    return messages.drainTo(collection);
+  }
+
+  /**
+   * Moves at most the given number of messages fetched so far to the given collection, in the order they were fetched.
+   *
+   * @return the number of messages moved
+   */
+  int drainTo(Collection<KafkaMessage<OFFSET>> collection, int maxMessages) {
+    return messages.drainTo(collection, maxMessages);
+  }
+
+  @Override
+  protected String serviceName() {
+    return "kafka-prefetcher-" + consumer.getName();
+  }
+
+  @Override
+  protected void run() throws Exception {
+    runThread = Thread.currentThread();
+    boolean logException = true;
+    while (isRunning()) {
+      try {
+        int fetched = 0;
+        Map<TopicPartition, Iterator<KafkaMessage<OFFSET>>> fetchedMessages =
+          consumer.readMessages(fetchInfos.values());
+        for (KafkaConsumerInfo<OFFSET> info : fetchInfos.values()) {
+          Iterator<KafkaMessage<OFFSET>> iterator = fetchedMessages.get(info.getTopicPartition());
+          while (iterator != null && iterator.hasNext()) {
+            KafkaMessage<OFFSET> message = iterator.next();
+            // Blocks while the queue is full
+            messages.put(message);
+            info.setReadOffset(message.getNextOffset());
+            fetched++;
+          }
+          // All the fetched messages are in the queue now, so they count as consumed right away
+          consumer.adjustFetchSize(info, true);
+        }
+        logException = true;
+        if (fetched == 0 && !backOff(EMPTY_FETCH_BACKOFF_MS)) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        // Interrupted by triggerShutdown
+        return;
+      } catch (Throwable t) {
+        if (!isRunning()) {
+          // Fetching failed because the thread got interrupted by triggerShutdown
+          return;
+        }
+        if (logException) {
+          LOG.error("Error encountered while prefetching messages for Kafka source.", t);
+          logException = false;
+        }
+        if (!backOff(FAILED_FETCH_BACKOFF_MS)) {
+          return;
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void triggerShutdown() {
+    Thread thread = runThread;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Sleeps for the given time.
+   *
+   * @return {@code false} if the sleep was interrupted by triggerShutdown
+   */
+  private boolean backOff(long millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+      return true;
+    } catch (InterruptedException e) {
+      return false;
+    }
+  }
+}
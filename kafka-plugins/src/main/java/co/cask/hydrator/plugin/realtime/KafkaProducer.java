@@ -19,6 +19,7 @@ package co.cask.hydrator.plugin.realtime;
 import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.plugin.PluginConfig;
@@ -27,7 +28,6 @@ import co.cask.cdap.etl.api.realtime.DataWriter;
 import co.cask.cdap.etl.api.realtime.RealtimeContext;
 import co.cask.cdap.etl.api.realtime.RealtimeSink;
 import co.cask.cdap.format.StructuredRecordStringConverter;
-import com.google.common.collect.Lists;
 import kafka.producer.ProducerConfig;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
@@ -37,9 +37,15 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.StringWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of Kafka Realtime Producer Hydrator plugin. 
@@ -48,6 +54,9 @@ import java.util.Properties;
  * into a CSV or JSON record and push it on to one or more Kafka topics. 
  * Producer can use one of the fields in the input records to partition the 
  * data. It can also be configured to operate in sync or async mode.  
+ * In sync mode, records can be pipelined: all records of a write are sent 
+ * without waiting for each one, and the write only returns once all of them 
+ * have been acknowledged.
  */
 @Plugin(type = "realtimesink")
 @Name("KafkaProducer")
@@ -64,6 +73,13 @@ public class KafkaProducer extends RealtimeSink<StructuredRecord> {
   private static final String VAL_SERIALIZER = "value.serializer";
   private static final String CLIENT_ID = "client.id";
   private static final String ACKS_REQUIRED = "request.required.acks";
+  private static final String LINGER_MS = "linger.ms";
+  private static final String BATCH_SIZE = "batch.size";
+  private static final String COMPRESSION_TYPE = "compression.type";
+  private static final String[] COMPRESSION_TYPES = {"none", "gzip", "snappy", "lz4"};
+  private static final int DEFAULT_MAX_IN_FLIGHT = 10000;
+  // How often the number of partitions of each topic is looked up again.
+  private static final long PARTITIONS_REFRESH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
 
   // Kafka properties
   private final Properties props = new Properties();
@@ -72,17 +88,39 @@ public class KafkaProducer extends RealtimeSink<StructuredRecord> {
   private ProducerConfig kafkaConfig;
   
   // Kafka producer handle
-  private org.apache.kafka.clients.producer.KafkaProducer<String, String> producer;
+  private org.apache.kafka.clients.producer.KafkaProducer<String, byte[]> producer;
   
   // Plugin context
   private RealtimeContext context;
   
   // If Async mode
   private boolean isAsync = false;
+
+  // If records are pipelined in sync mode
+  private boolean isPipelined = false;
+
+  // Maximum number of records waiting for an acknowledgment in pipelined mode
+  private int maxInFlight;
+
+  // Records sent in pipelined mode that have not been acknowledged yet
+  private final List<Future<RecordMetadata>> inFlight = new ArrayList<>();
   
   // List of Kafka topics.
   private String[] topics;
 
+  // Number of partitions of each topic, looked up again every PARTITIONS_REFRESH_INTERVAL_MS.
+  private final Map<String, Integer> partitionCounts = new HashMap<>();
+  private long partitionCountsRefreshTime;
+
+  // If records are published as JSON.
+  private boolean isJson;
+
+  // Printer for the configured delimited format, writing into a buffer that is reused for every record.
+  // null if the records are published as JSON or the format is not supported.
+  private CSVPrinter printer;
+  private final StringBuilder buffer = new StringBuilder();
+  private final List<Object> values = new ArrayList<>();
+
   
   // required for testing.
   public KafkaProducer(Config kafkaConfig) {
@@ -97,6 +135,22 @@ public class KafkaProducer extends RealtimeSink<StructuredRecord> {
     if (!producerConfig.async.equalsIgnoreCase("true") && !producerConfig.async.equalsIgnoreCase("false")) {
       throw new IllegalArgumentException("Async flag has to be either TRUE or FALSE.");
     }
+    if (producerConfig.pipelined != null && !producerConfig.pipelined.equalsIgnoreCase("true") &&
+      !producerConfig.pipelined.equalsIgnoreCase("false")) {
+      throw new IllegalArgumentException("Pipelined flag has to be either TRUE or FALSE.");
+    }
+    if (producerConfig.maxInFlight != null && producerConfig.maxInFlight <= 0) {
+      throw new IllegalArgumentException("Maximum number of in flight records has to be positive.");
+    }
+    if (producerConfig.compressionType != null) {
+      boolean valid = false;
+      for (String compressionType : COMPRESSION_TYPES) {
+        valid = valid || compressionType.equalsIgnoreCase(producerConfig.compressionType);
+      }
+      if (!valid) {
+        throw new IllegalArgumentException("Compression type has to be one of none, gzip, snappy or lz4.");
+      }
+    }
     
     // Validations to be added.
   }
@@ -112,83 +166,63 @@ public class KafkaProducer extends RealtimeSink<StructuredRecord> {
     // Configure the properties for kafka.
     props.put(BROKER_LIST, producerConfig.brokers);
     props.put(KEY_SERIALIZER, "org.apache.kafka.common.serialization.StringSerializer");
-    props.put(VAL_SERIALIZER, "org.apache.kafka.common.serialization.StringSerializer");
+    props.put(VAL_SERIALIZER, "org.apache.kafka.common.serialization.ByteArraySerializer");
     props.put(CLIENT_ID, "kafka-producer-" + context.getInstanceId());
     if (producerConfig.async.equalsIgnoreCase("TRUE")) {
       props.put(ACKS_REQUIRED, "1");
       isAsync = true;
+    } else {
+      isPipelined = producerConfig.pipelined != null && producerConfig.pipelined.equalsIgnoreCase("TRUE");
+    }
+    maxInFlight = producerConfig.maxInFlight == null ? DEFAULT_MAX_IN_FLIGHT : producerConfig.maxInFlight;
+    if (producerConfig.lingerMs != null) {
+      props.put(LINGER_MS, String.valueOf(producerConfig.lingerMs));
+    }
+    if (producerConfig.batchSize != null) {
+      props.put(BATCH_SIZE, String.valueOf(producerConfig.batchSize));
+    }
+    if (producerConfig.compressionType != null) {
+      props.put(COMPRESSION_TYPE, producerConfig.compressionType.toLowerCase());
     }
     
     //config = new ProducerConfig(props);
-    producer = new org.apache.kafka.clients.producer.KafkaProducer<String, String>(props);
-    
+    producer = new org.apache.kafka.clients.producer.KafkaProducer<String, byte[]>(props);
+
+    // Set up the formatter once, rather than for every record.
+    isJson = producerConfig.format.equalsIgnoreCase("JSON");
+    CSVFormat csvFileFormat = isJson ? null : getCSVFormat(producerConfig.format);
+    if (csvFileFormat != null) {
+      printer = new CSVPrinter(buffer, csvFileFormat);
+    }
+  }
+
+  @Nullable
+  private static CSVFormat getCSVFormat(String format) {
+    switch(format.toLowerCase()) {
+      case "csv":
+        return CSVFormat.Predefined.Default.getFormat();
+      case "excel":
+        return CSVFormat.Predefined.Excel.getFormat();
+      case "mysql":
+        return CSVFormat.Predefined.MySQL.getFormat();
+      case "tdf":
+        return CSVFormat.Predefined.TDF.getFormat();
+      case "rfc4180":
+        return CSVFormat.Predefined.TDF.getFormat();
+      default:
+        return null;
+    }
   }
   
   @Override
   public int write(Iterable<StructuredRecord> objects, final DataWriter dataWriter) throws Exception {
     int count = 0;
 
-    List<Schema.Field> fields;
-    
     // For each object
     for (StructuredRecord object : objects) {
-      fields = object.getSchema().getFields();
-
       // Depending on the configuration create a body that needs to be 
       // built and pushed to Kafka. 
-      String body = "";
-      if (producerConfig.format.equalsIgnoreCase("JSON")) {
-        body = StructuredRecordStringConverter.toJsonString(object);
-      } else {
-        // Extract all values from the structured record
-        List<Object> objs = Lists.newArrayList();
-        for (Schema.Field field : fields) {
-          objs.add(object.get(field.getName()));
-        }
-
-        StringWriter writer = new StringWriter();
-        CSVPrinter printer = null;
-        
-        try {
-          CSVFormat csvFileFormat;
-          switch(producerConfig.format.toLowerCase()) {
-            case "csv":
-              csvFileFormat = CSVFormat.Predefined.Default.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "excel":
-              csvFileFormat = CSVFormat.Predefined.Excel.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "mysql":
-              csvFileFormat = CSVFormat.Predefined.MySQL.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "tdf":
-              csvFileFormat = CSVFormat.Predefined.TDF.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "rfc4180":
-              csvFileFormat = CSVFormat.Predefined.TDF.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-          }
-          
-          if (printer != null) {
-            printer.printRecord(objs);
-            body = writer.toString();
-          }      
-          
-        } finally {
-          if (printer != null) {
-            printer.close();
-          }
-        }
-      }
+      byte[] body = format(object);
       
       // Message key.
       String key = "no_key";
@@ -207,9 +241,10 @@ public class KafkaProducer extends RealtimeSink<StructuredRecord> {
 
       // Write to all the configured topics
       for (String topic : topics) {
-        partitionKey = partitionKey % producer.partitionsFor(topic).size();
+        int partition = partitionKey % getPartitionCount(topic);
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, partition, key, body);
         if (isAsync) {
-          producer.send(new ProducerRecord<String, String>(topic, partitionKey, key, body), new Callback() {
+          producer.send(record, new Callback() {
             @Override
             public void onCompletion(RecordMetadata meta, Exception e) {
               if (meta != null) {
@@ -221,15 +256,77 @@ public class KafkaProducer extends RealtimeSink<StructuredRecord> {
               }
             }
           });
+        } else if (isPipelined) {
+          // Sends without waiting, the acknowledgments are waited for once the in flight limit is reached,
+          // and at the end of the write.
+          inFlight.add(producer.send(record));
+          if (inFlight.size() >= maxInFlight) {
+            awaitInFlight();
+          }
         } else {
           // Waits infinitely to push the message through. 
-          producer.send(new ProducerRecord<String, String>(topic, partitionKey, key, body)).get();
+          producer.send(record).get();
         }
         context.getMetrics().count("kafka.producer.count", 1);
       }
     }
+    // Makes sure every record of this write was delivered before returning.
+    awaitInFlight();
+    return count;
+  }
+
+  /**
+   * Converts a record into the body of the message published to Kafka, in the configured format.
+   */
+  private byte[] format(StructuredRecord object) throws IOException {
+    if (isJson) {
+      return Bytes.toBytes(StructuredRecordStringConverter.toJsonString(object));
+    }
+    if (printer == null) {
+      return new byte[0];
+    }
+
+    // Extract all values from the structured record
+    values.clear();
+    for (Schema.Field field : object.getSchema().getFields()) {
+      values.add(object.get(field.getName()));
+    }
+    buffer.setLength(0);
+    printer.printRecord(values);
+    return Bytes.toBytes(buffer.toString());
+  }
+
+  /**
+   * Returns the number of partitions of a topic. The number is cached, and looked up again periodically
+   * so that partitions added to a topic are eventually used.
+   */
+  private int getPartitionCount(String topic) {
+    long now = System.currentTimeMillis();
+    if (now - partitionCountsRefreshTime >= PARTITIONS_REFRESH_INTERVAL_MS) {
+      partitionCounts.clear();
+      partitionCountsRefreshTime = now;
+    }
+    Integer count = partitionCounts.get(topic);
+    if (count == null) {
+      count = producer.partitionsFor(topic).size();
+      partitionCounts.put(topic, count);
+    }
     return count;
   }
+
+  /**
+   * Waits for all records sent in pipelined mode to be acknowledged. Fails if any of them could not be delivered.
+   */
+  private void awaitInFlight() throws Exception {
+    try {
+      for (Future<RecordMetadata> future : inFlight) {
+        // Waits infinitely to push the message through.
+        future.get();
+      }
+    } finally {
+      inFlight.clear();
+    }
+  }
   
   @Override
   public void destroy() {
@@ -272,15 +369,57 @@ public class KafkaProducer extends RealtimeSink<StructuredRecord> {
     @Name("format")
     @Description("Format a structured record should be converted to")
     private String format;
-    
+
+    @Name("pipelined")
+    @Description("Specifies whether records are pipelined in sync mode. If TRUE, all records in a batch are sent " +
+      "without waiting for each one to be acknowledged, and the batch is only complete once all of them have been " +
+      "acknowledged. Default is FALSE")
+    @Nullable
+    private String pipelined;
+
+    @Name("maxinflight")
+    @Description("Maximum number of records waiting to be acknowledged in pipelined mode. Once reached, the " +
+      "producer waits for all of them before sending more. Default is 10000")
+    @Nullable
+    private Integer maxInFlight;
+
+    @Name("lingerms")
+    @Description("Time in milliseconds the producer waits for more records before sending a request to a broker. " +
+      "Passed to Kafka as linger.ms")
+    @Nullable
+    private Long lingerMs;
+
+    @Name("batchsize")
+    @Description("Maximum size in bytes of a batch of records sent to a partition in one request. " +
+      "Passed to Kafka as batch.size")
+    @Nullable
+    private Integer batchSize;
+
+    @Name("compressiontype")
+    @Description("Compression of the batches sent to Kafka. Can be none, gzip, snappy or lz4. " +
+      "Passed to Kafka as compression.type")
+    @Nullable
+    private String compressionType;
+
     public Config(String brokers, String async, String partitionField, String key, String topics,
                   String format) {
+      this(brokers, async, partitionField, key, topics, format, null, null, null, null, null);
+    }
+
+    public Config(String brokers, String async, String partitionField, String key, String topics,
+                  String format, @Nullable String pipelined, @Nullable Integer maxInFlight,
+                  @Nullable Long lingerMs, @Nullable Integer batchSize, @Nullable String compressionType) {
       this.brokers = brokers;
       this.async = async;
       this.partitionField = partitionField;
       this.key = key;
       this.topics = topics;
       this.format = format;
+      this.pipelined = pipelined;
+      this.maxInFlight = maxInFlight;
+      this.lingerMs = lingerMs;
+      this.batchSize = batchSize;
+      this.compressionType = compressionType;
     }
   }
 }
@@ -25,7 +25,10 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.Service;
 import org.apache.twill.kafka.client.TopicPartition;
@@ -36,7 +39,12 @@ import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
@@ -77,6 +85,15 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
 
   private volatile Map<TopicPartition, KafkaConsumerInfo<OFFSET>> consumerInfos;
 
+  // Fetches messages in the background if prefetching is enabled, otherwise null
+  private KafkaMessagePrefetcher<OFFSET> prefetcher;
+  // Prefetched messages that have not been processed yet
+  private final Deque<KafkaMessage<OFFSET>> prefetchedMessages = new ArrayDeque<>();
+  // Messages fetched without prefetching that have not been processed yet, because of the limit of messages per poll
+  private final Map<TopicPartition, FetchedMessages<OFFSET>> fetchedMessages = Maps.newHashMap();
+  // Number of polls so far, used to rotate the partition emitted first when the messages per poll are limited
+  private int pollCount;
+
   protected KafkaSimpleApiConsumer(KafkaSource kafkaSource) {
     this.kafkaSource = kafkaSource;
   }
@@ -156,28 +173,113 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
     // Configure consumers late to read from SourceState
     if (consumerInfos == null) {
         consumerInfos = createConsumerInfos(kafkaConfigurer.getTopicPartitions());
+        if (kafkaConfigurer.getPrefetchSize() > 0) {
+          prefetcher = new KafkaMessagePrefetcher<>(this, consumerInfos.values(), kafkaConfigurer.getPrefetchSize());
+          prefetcher.startAndWait();
+        }
+    }
+
+    if (prefetcher != null) {
+      pollPrefetchedMessages(emitter);
+      return;
+    }
+
+    int maxPollRecords = kafkaConfigurer.getMaxPollRecords();
+    Collection<KafkaConsumerInfo<OFFSET>> infos = consumerInfos.values();
+    int poll = pollCount++;
+    if (maxPollRecords > 0 && infos.size() > 1) {
+      // Start with a different partition in each poll, so that a partition with a large backlog
+      // cannot take the whole poll every time
+      List<KafkaConsumerInfo<OFFSET>> rotated = Lists.newArrayList(infos);
+      Collections.rotate(rotated, -(poll % rotated.size()));
+      infos = rotated;
+    }
+
+    // Messages left over from earlier polls are processed first. Partitions are only fetched from again once all
+    // their messages are processed, and not at all if the limit of messages is already reached.
+    int emitted = emitFetchedMessages(infos, emitter, maxPollRecords, 0, poll);
+    if (maxPollRecords <= 0 || emitted < maxPollRecords) {
+      List<KafkaConsumerInfo<OFFSET>> fetchInfos = Lists.newArrayList();
+      for (KafkaConsumerInfo<OFFSET> info : infos) {
+        if (!fetchedMessages.containsKey(info.getTopicPartition())) {
+          fetchInfos.add(info);
+        }
+      }
+      if (!fetchInfos.isEmpty()) {
+        for (Map.Entry<TopicPartition, Iterator<KafkaMessage<OFFSET>>> entry : readMessages(fetchInfos).entrySet()) {
+          fetchedMessages.put(entry.getKey(), new FetchedMessages<>(entry.getValue(), poll));
+        }
+        emitFetchedMessages(fetchInfos, emitter, maxPollRecords, emitted, poll);
+      }
     }
 
+    // Save new offset if there is at least one message processed, or even if the offset simply changed.
     boolean infosUpdated = false;
-    // Poll for messages from Kafka
-    for (KafkaConsumerInfo<OFFSET> info : consumerInfos.values()) {
-      Iterator<KafkaMessage<OFFSET>> iterator = readMessages(info);
-      while (iterator.hasNext()) {
-        KafkaMessage<OFFSET> message = iterator.next();
+    for (KafkaConsumerInfo<OFFSET> info : infos) {
+      infosUpdated |= info.hasPendingChanges();
+    }
+    if (infosUpdated) {
+      saveReadOffsets(Maps.transformValues(consumerInfos, consumerToOffset));
+    }
+  }
+
+  /**
+   * Processes fetched messages of the given partitions, in partition order, until the given limit is reached.
+   * Once all the messages of a fetch are processed, the fetch size of the partition is adapted.
+   *
+   * @return the number of messages emitted in this poll so far
+   */
+  private int emitFetchedMessages(Collection<KafkaConsumerInfo<OFFSET>> infos, Emitter<StructuredRecord> emitter,
+                                  int maxPollRecords, int emitted, int poll) {
+    for (KafkaConsumerInfo<OFFSET> info : infos) {
+      FetchedMessages<OFFSET> fetched = fetchedMessages.get(info.getTopicPartition());
+      if (fetched == null) {
+        continue;
+      }
+      // A message is only taken off the iterator once processed, so that it is processed again if this poll fails
+      PeekingIterator<KafkaMessage<OFFSET>> iterator = fetched.messages;
+      while (iterator.hasNext() && (maxPollRecords <= 0 || emitted < maxPollRecords)) {
+        KafkaMessage<OFFSET> message = iterator.peek();
         processMessage(message, emitter);
 
         // Update the read offset
         info.setReadOffset(message.getNextOffset());
+        iterator.next();
+        emitted++;
       }
-      if (info.hasPendingChanges()) {
-        infosUpdated = true;
+      if (!iterator.hasNext()) {
+        fetchedMessages.remove(info.getTopicPartition());
+        adjustFetchSize(info, fetched.poll == poll);
       }
     }
+    return emitted;
+  }
 
-    // Save new offset if there is at least one message processed, or even if the offset simply changed.
-    if (infosUpdated) {
-      saveReadOffsets(Maps.transformValues(consumerInfos, consumerToOffset));
+  /**
+   * Processes the messages fetched so far by the prefetcher. The read offsets are only updated for the messages
+   * that were processed, so messages that are still waiting in the prefetcher are not considered as consumed.
+   */
+  private void pollPrefetchedMessages(Emitter<StructuredRecord> emitter) {
+    int maxPollRecords = kafkaConfigurer.getMaxPollRecords();
+    if (maxPollRecords <= 0) {
+      prefetcher.drainTo(prefetchedMessages);
+    } else if (prefetchedMessages.size() < maxPollRecords) {
+      prefetcher.drainTo(prefetchedMessages, maxPollRecords - prefetchedMessages.size());
+    }
+    if (prefetchedMessages.isEmpty()) {
+      return;
     }
+
+    // Messages are only removed once processed, so that they are processed again in the next poll if this one fails
+    int emitted = 0;
+    KafkaMessage<OFFSET> message;
+    while ((maxPollRecords <= 0 || emitted < maxPollRecords) && (message = prefetchedMessages.peek()) != null) {
+      processMessage(message, emitter);
+      consumerInfos.get(message.getTopicPartition()).setReadOffset(message.getNextOffset());
+      prefetchedMessages.poll();
+      emitted++;
+    }
+    saveReadOffsets(Maps.transformValues(consumerInfos, consumerToOffset));
   }
 
   /**
@@ -197,6 +299,23 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
   protected abstract Iterator<KafkaMessage<OFFSET>> readMessages(KafkaConsumerInfo<OFFSET> consumerInfo)
     throws Exception;
 
+  /**
+   * Read messages from Kafka for multiple topic partitions. By default, partitions are read one after the other
+   * with {@link #readMessages(KafkaConsumerInfo)}. Override this method to read from multiple partitions at once.
+   *
+   * @param consumerInfos Contains information about where to fetch messages from for each topic partition
+   * @return A {@link Map} from topic partition to the messages read from it, following the same contract as
+   *         {@link #readMessages(KafkaConsumerInfo)}. Partitions without messages can be left out.
+   */
+  protected Map<TopicPartition, Iterator<KafkaMessage<OFFSET>>> readMessages(
+    Collection<KafkaConsumerInfo<OFFSET>> consumerInfos) throws Exception {
+    Map<TopicPartition, Iterator<KafkaMessage<OFFSET>>> messages = Maps.newHashMap();
+    for (KafkaConsumerInfo<OFFSET> info : consumerInfos) {
+      messages.put(info.getTopicPartition(), readMessages(info));
+    }
+    return messages;
+  }
+
   /**
    * Returns the read offsets to start with for the given {@link TopicPartition}.
    */
@@ -211,7 +330,9 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
    * Should be called for clean up.
    */
   public void destroy() {
-    // no-op
+    if (prefetcher != null) {
+      stopService(prefetcher);
+    }
   }
 
   /**
@@ -289,6 +410,50 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
     return (payloadDecoder != null) ? payloadDecoder.apply(buffer) : null;
   }
 
+  /**
+   * Records the size of a fetch response for a topic partition. If an adaptive fetch size is configured, the fetch
+   * size of the partition is adapted once all the messages of the response have been processed.
+   *
+   * @param consumerInfo the topic partition that was fetched
+   * @param responseBytes number of bytes in the fetch response, including a trailing partial message
+   * @param messageBytes number of bytes of complete messages in the fetch response
+   */
+  protected final void recordFetchResponse(KafkaConsumerInfo<OFFSET> consumerInfo, int responseBytes,
+                                           int messageBytes) {
+    consumerInfo.setFetchResponse(responseBytes, messageBytes);
+  }
+
+  /**
+   * Adapts the fetch size of a topic partition once all the messages of its last fetch response are consumed.
+   * If they were consumed in the same poll they were fetched in, the fetch size doubles if the response was full,
+   * and halves if less than a quarter of it was used by complete messages. If the messages had to wait for later
+   * polls, because of the limit of messages per poll, more was fetched than a poll consumes, and the fetch size
+   * halves as well.
+   *
+   * @param consumerInfo the topic partition whose messages were consumed
+   * @param consumedInOnePoll whether all the messages of the fetch response were consumed in a single poll
+   */
+  final void adjustFetchSize(KafkaConsumerInfo<OFFSET> consumerInfo, boolean consumedInOnePoll) {
+    int responseBytes = consumerInfo.getFetchResponseBytes();
+    int maxFetchSize = kafkaConfigurer.getMaxFetchSize();
+    if (maxFetchSize <= 0 || responseBytes < 0) {
+      return;
+    }
+    consumerInfo.clearFetchResponse();
+    int fetchSize = consumerInfo.getFetchSize();
+    int minFetchSize = Math.min(KafkaConsumerConfigurer.MIN_FETCH_SIZE, maxFetchSize);
+    if (consumedInOnePoll && responseBytes >= fetchSize) {
+      fetchSize = (int) Math.min((long) fetchSize * 2, maxFetchSize);
+    } else if (!consumedInOnePoll || consumerInfo.getFetchMessageBytes() < fetchSize / 4) {
+      fetchSize = Math.max(fetchSize / 2, minFetchSize);
+    }
+    if (fetchSize != consumerInfo.getFetchSize()) {
+      LOG.debug("Changing fetch size of {} from {} to {} bytes",
+                consumerInfo.getTopicPartition(), consumerInfo.getFetchSize(), fetchSize);
+      consumerInfo.setFetchSize(fetchSize);
+    }
+  }
+
   /**
    * Stops a {@link Service} and waits for the completion. If there is exception during stop, it will get logged.
    */
@@ -429,11 +594,30 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
   private Map<TopicPartition, KafkaConsumerInfo<OFFSET>> createConsumerInfos(Map<TopicPartition, Integer> config) {
     ImmutableMap.Builder<TopicPartition, KafkaConsumerInfo<OFFSET>> consumers = ImmutableMap.builder();
 
+    int maxFetchSize = kafkaConfigurer.getMaxFetchSize();
     for (Map.Entry<TopicPartition, Integer> entry : config.entrySet()) {
+      // An adaptive fetch size starts at the configured fetch size, but never above the maximum
+      int fetchSize = maxFetchSize > 0 ? Math.min(entry.getValue(), maxFetchSize) : entry.getValue();
       consumers.put(entry.getKey(),
-                    new KafkaConsumerInfo<>(entry.getKey(), entry.getValue(), getBeginOffset(entry.getKey())));
+                    new KafkaConsumerInfo<>(entry.getKey(), fetchSize, getBeginOffset(entry.getKey())));
     }
     return consumers.build();
   }
 
+  /**
+   * Messages of a fetch response that have not all been processed yet.
+   *
+   * @param <OFFSET> Type of offset object
+   */
+  private static final class FetchedMessages<OFFSET> {
+    private final PeekingIterator<KafkaMessage<OFFSET>> messages;
+    // the poll in which the messages were fetched
+    private final int poll;
+
+    private FetchedMessages(Iterator<KafkaMessage<OFFSET>> messages, int poll) {
+      this.messages = Iterators.peekingIterator(messages);
+      this.poll = poll;
+    }
+  }
+
 }
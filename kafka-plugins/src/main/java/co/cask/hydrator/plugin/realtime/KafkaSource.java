@@ -27,6 +27,7 @@ import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.realtime.RealtimeContext;
 import co.cask.cdap.etl.api.realtime.RealtimeSource;
 import co.cask.cdap.etl.api.realtime.SourceState;
@@ -66,6 +67,9 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
   public static final String KAFKA_ZOOKEEPER = "kafka.zookeeper";
   public static final String KAFKA_BROKERS = "kafka.brokers";
   public static final String KAFKA_INITIAL_OFFSET = "kafka.initial.offset";
+  public static final String KAFKA_PREFETCH_SIZE = "kafka.prefetch.size";
+  public static final String KAFKA_MAX_FETCH_SIZE = "kafka.max.fetch.size";
+  public static final String KAFKA_MAX_POLL_RECORDS = "kafka.max.poll.records";
   public static final String SCHEMA = "schema";
   public static final String FORMAT = "format";
 
@@ -75,8 +79,14 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
                                                                Schema.Field.of(MESSAGE, Schema.of(Schema.Type.BYTES)),
                                                                Schema.Field.of(KEY, Schema.nullableOf(
                                                                  Schema.of(Schema.Type.STRING))));
+  private static final String PARSE_ERRORS_METRIC = "kafka.parse.errors";
+
   private KafkaSimpleApiConsumer kafkaConsumer;
   private KafkaPluginConfig config;
+  private StageMetrics metrics;
+
+  // Format used to parse every message, or null if messages are not parsed
+  private RecordFormat<StreamEvent, StructuredRecord> format;
 
   private boolean logException;
 
@@ -91,6 +101,15 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
+    if (config.prefetchSize != null && config.prefetchSize < 0) {
+      throw new IllegalArgumentException("Prefetch size must not be negative: " + config.prefetchSize);
+    }
+    if (config.maxFetchSize != null && config.maxFetchSize < 0) {
+      throw new IllegalArgumentException("Max fetch size must not be negative: " + config.maxFetchSize);
+    }
+    if (config.maxPollRecords != null && config.maxPollRecords < 0) {
+      throw new IllegalArgumentException("Max poll records must not be negative: " + config.maxPollRecords);
+    }
     // check the schema if there is one
     if (!Strings.isNullOrEmpty(config.schema)) {
       config.parseSchema();
@@ -107,14 +126,14 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
   @Override
   public void initialize(RealtimeContext context) throws Exception {
     super.initialize(context);
+    metrics = context.getMetrics();
 
-    kafkaConsumer = new Kafka08SimpleApiConsumer(this);
-    kafkaConsumer.initialize(context);
+    // Create the format before the consumer, since the consumer uses it to parse messages
     if (!Strings.isNullOrEmpty(config.format)) {
-      FormatSpecification spec = config.getFormatSpec();
-      RecordFormat<ByteBuffer, StructuredRecord> format = RecordFormats.createInitializedFormat(spec);
-      format.initialize(spec);
+      format = RecordFormats.createInitializedFormat(config.getFormatSpec());
     }
+    kafkaConsumer = new Kafka08SimpleApiConsumer(this);
+    kafkaConsumer.initialize(context);
     logException = true;
   }
 
@@ -147,16 +166,16 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
    * @return instance of {@link StructuredRecord} representing the message using the appropriate format.
    */
   public StructuredRecord byteBufferToStructuredRecord(@Nullable String key, ByteBuffer payload) {
-    FormatSpecification spec = config.getFormatSpec();
-    if (Strings.isNullOrEmpty(config.format)) {
+    if (format == null) {
       return byteBufferToSchemalessByteRecord(key, payload);
     }
     try {
-      RecordFormat<StreamEvent, StructuredRecord> format = RecordFormats.createInitializedFormat(spec);
+      // The formats read from stream events, so the payload still needs to be wrapped in one
       StreamEvent toStream = new StreamEvent(payload);
       return format.read(toStream);
     } catch (Exception e) {
-      LOG.debug("Could not parse Kafka payload into schema. Using default structured record instead.");
+      metrics.count(PARSE_ERRORS_METRIC, 1);
+      LOG.debug("Could not parse Kafka payload into schema. Using default structured record instead.", e);
       return byteBufferToSchemalessByteRecord(key, payload);
     }
   }
@@ -225,8 +244,41 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
     @Nullable
     private final String format;
 
+    @Name(KAFKA_PREFETCH_SIZE)
+    @Description("Maximum number of messages to fetch ahead in a background thread while the messages fetched " +
+      "before are being processed. Prefetching is disabled if not set or 0.")
+    @Nullable
+    private final Integer prefetchSize;
+
+    @Name(KAFKA_MAX_FETCH_SIZE)
+    @Description("Maximum number of bytes to fetch from a partition in one request. If set, the fetch size of each " +
+      "partition grows up to this size while the partition has a backlog that is consumed as fast as it is " +
+      "fetched, and shrinks when there are few messages to fetch or when fetched messages have to wait for later " +
+      "polls. If not set or 0, a fixed fetch size of 1MB is used.")
+    @Nullable
+    private final Integer maxFetchSize;
+
+    @Name(KAFKA_MAX_POLL_RECORDS)
+    @Description("Maximum number of messages to emit in one poll. The number of messages is not limited " +
+      "if not set or 0.")
+    @Nullable
+    private final Integer maxPollRecords;
+
     public KafkaPluginConfig(String zkConnect, String brokers, Integer partitions, String topic,
                              Long defaultOffset, @Nullable String format, @Nullable String schema) {
+      this(zkConnect, brokers, partitions, topic, defaultOffset, format, schema, null);
+    }
+
+    public KafkaPluginConfig(String zkConnect, String brokers, Integer partitions, String topic,
+                             Long defaultOffset, @Nullable String format, @Nullable String schema,
+                             @Nullable Integer prefetchSize) {
+      this(zkConnect, brokers, partitions, topic, defaultOffset, format, schema, prefetchSize, null, null);
+    }
+
+    public KafkaPluginConfig(String zkConnect, String brokers, Integer partitions, String topic,
+                             Long defaultOffset, @Nullable String format, @Nullable String schema,
+                             @Nullable Integer prefetchSize, @Nullable Integer maxFetchSize,
+                             @Nullable Integer maxPollRecords) {
       this.zkConnect = zkConnect;
       this.kafkaBrokers = brokers;
       this.partitions = partitions;
@@ -234,6 +286,9 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
       this.defaultOffset = defaultOffset;
       this.schema = schema;
       this.format = format;
+      this.prefetchSize = prefetchSize;
+      this.maxFetchSize = maxFetchSize;
+      this.maxPollRecords = maxPollRecords;
     }
 
     // Accessors
@@ -261,6 +316,21 @@ public class KafkaSource extends RealtimeSource<StructuredRecord> {
       return defaultOffset;
     }
 
+    @Nullable
+    public Integer getPrefetchSize() {
+      return prefetchSize;
+    }
+
+    @Nullable
+    public Integer getMaxFetchSize() {
+      return maxFetchSize;
+    }
+
+    @Nullable
+    public Integer getMaxPollRecords() {
+      return maxPollRecords;
+    }
+
     @Nullable
     private FormatSpecification getFormatSpec() {
       FormatSpecification formatSpec = null;
@@ -392,8 +392,61 @@ public class KafkaProducerTest {
     Assert.assertEquals("2\tsecond 2\t2\t13.34\ttrue\r\n", consumedMessages.get(2));
     Assert.assertEquals("3\tthird 3\t3\t14.34\tfalse\r\n", consumedMessages.get(3));
     kafkaproducer.destroy();
-  }  
-  
+  }
+
+  @Test
+  public void testPipelinedPublish() throws Exception {
+    String testTopic = "pipelined";
+
+    // in flight limit lower than the number of records, so that the producer waits in the middle of the write
+    KafkaProducer.Config sconfig = new KafkaProducer.Config(getBroker(), "FALSE", "c", "b", testTopic, "CSV",
+                                                            "TRUE", 3, 5L, 16384, "gzip");
+    RealtimeSink<StructuredRecord> kafkaproducer = new KafkaProducer(sconfig);
+    kafkaproducer.initialize(new MockRealtimeContext());
+
+    List<StructuredRecord> input = Lists.newArrayList();
+    input.add(StructuredRecord.builder(INPUT).set("a", 1L).set("b", "first 1").set("c", 1).set("d", 12.34)
+                .set("e", false).build());
+    input.add(StructuredRecord.builder(INPUT).set("a", 2L).set("b", "second 2").set("c", 2).set("d", 13.34)
+                .set("e", true).build());
+    input.add(StructuredRecord.builder(INPUT).set("a", 3L).set("b", "third 3").set("c", 3).set("d", 14.34)
+                .set("e", false).build());
+    input.add(StructuredRecord.builder(INPUT).set("a", 4L).set("b", "fourth 4").set("c", 4).set("d", 15.34)
+                .set("e", true).build());
+    kafkaproducer.write(input, null);
+
+    final CountDownLatch latch = new CountDownLatch(input.size());
+    final List<String> consumedMessages = new ArrayList<String>(input.size());
+    kafkaClient.getConsumer().prepare()
+      .addFromBeginning(testTopic, 0)
+      .addFromBeginning(testTopic, 1)
+      .addFromBeginning(testTopic, 2)
+      .addFromBeginning(testTopic, 3)
+      .consume(new KafkaConsumer.MessageCallback() {
+        @Override
+        public void onReceived(Iterator<FetchedMessage> messages) {
+          while (messages.hasNext()) {
+            FetchedMessage msg = messages.next();
+            // Add to array with partition id as index.
+            consumedMessages.add(msg.getTopicPartition().getPartition(),
+                                 Charsets.UTF_8.decode(msg.getPayload()).toString());
+            latch.countDown();
+          }
+        }
+
+        @Override
+        public void finished() {
+        }
+      });
+    latch.await();
+    Assert.assertEquals(4L, consumedMessages.size());
+    Assert.assertEquals("4,fourth 4,4,15.34,true\r\n", consumedMessages.get(0));
+    Assert.assertEquals("1,first 1,1,12.34,false\r\n", consumedMessages.get(1));
+    Assert.assertEquals("2,second 2,2,13.34,true\r\n", consumedMessages.get(2));
+    Assert.assertEquals("3,third 3,3,14.34,false\r\n", consumedMessages.get(3));
+    kafkaproducer.destroy();
+  }
+
   @BeforeClass
   public static void beforeClass() throws IOException {
     zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
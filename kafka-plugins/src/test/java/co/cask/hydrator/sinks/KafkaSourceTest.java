@@ -24,8 +24,11 @@ import co.cask.cdap.etl.api.realtime.SourceState;
 import co.cask.hydrator.common.test.MockRealtimeContext;
 import co.cask.hydrator.plugin.realtime.KafkaSource;
 import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.twill.internal.kafka.EmbeddedKafkaServer;
 import org.apache.twill.internal.kafka.client.ZKKafkaClientService;
@@ -49,6 +52,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -191,6 +195,97 @@ public class KafkaSourceTest {
     Assert.assertTrue(((String) emitter.entryList.get(0).get("body")).contains("Message"));
   }
 
+  @Test
+  public void testPrefetch() throws Exception {
+    final String topic = "testKafkaPrefetch";
+    // Prefetch less messages than published, so that the prefetcher has to wait for the messages to be polled
+    initializeKafkaSource(topic, PARTITIONS, false, null, 2);
+
+    // Publish 5 messages to Kafka, the source should consume them
+    int msgCount = 5;
+    Map<String, String> messages = Maps.newHashMap();
+    for (int i = 0; i < msgCount; i++) {
+      messages.put(Integer.toString(i), "Message " + i);
+    }
+    sendMessage(topic, messages);
+
+    // Messages are fetched in the background, so they may need multiple polls to be emitted
+    MockEmitter emitter = new MockEmitter();
+    SourceState sourceState = new SourceState();
+    Stopwatch stopwatch = new Stopwatch().start();
+    while (emitter.getInternalSize() < msgCount && stopwatch.elapsedTime(TimeUnit.SECONDS) < 10) {
+      sourceState = kafkaSource.poll(emitter, sourceState);
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+
+    Assert.assertTrue(sourceState.getState() != null && !sourceState.getState().isEmpty());
+    Assert.assertEquals(msgCount, emitter.getInternalSize());
+  }
+
+  @Test
+  public void testMaxPollRecords() throws Exception {
+    final String topic = "testKafkaMaxPollRecords";
+    KafkaSource.KafkaPluginConfig config = new KafkaSource.KafkaPluginConfig(zkServer.getConnectionStr(), null,
+                                                                             PARTITIONS, topic, null, null, null,
+                                                                             null, 1024, 2);
+    kafkaSource = new KafkaSource(config);
+    kafkaSource.initialize(new MockRealtimeContext());
+
+    // Publish 5 messages to Kafka, the source should consume them in three polls
+    int msgCount = 5;
+    Map<String, String> messages = Maps.newHashMap();
+    for (int i = 0; i < msgCount; i++) {
+      messages.put(Integer.toString(i), "Message " + i);
+    }
+    sendMessage(topic, messages);
+
+    TimeUnit.SECONDS.sleep(2);
+
+    SourceState sourceState = new SourceState();
+    MockEmitter emitter = new MockEmitter();
+    sourceState = kafkaSource.poll(emitter, sourceState);
+    Assert.assertEquals(2, emitter.getInternalSize());
+    sourceState = kafkaSource.poll(emitter, sourceState);
+    Assert.assertEquals(4, emitter.getInternalSize());
+    kafkaSource.poll(emitter, sourceState);
+    Assert.assertEquals(msgCount, emitter.getInternalSize());
+  }
+
+  @Test
+  public void testMaxFetchSizeWithMaxPollRecords() throws Exception {
+    final String topic = "testKafkaMaxFetchSize";
+    // Each fetch returns only a few of the messages, and each poll emits even fewer of them
+    KafkaSource.KafkaPluginConfig config = new KafkaSource.KafkaPluginConfig(zkServer.getConnectionStr(), null,
+                                                                             PARTITIONS, topic, null, Formats.TEXT,
+                                                                             null, null, 1024, 3);
+    kafkaSource = new KafkaSource(config);
+    kafkaSource.initialize(new MockRealtimeContext());
+
+    int msgCount = 20;
+    Map<String, String> messages = Maps.newHashMap();
+    for (int i = 0; i < msgCount; i++) {
+      messages.put(Integer.toString(i), Strings.padEnd("Message " + i + " ", 200, '.'));
+    }
+    sendMessage(topic, messages);
+
+    TimeUnit.SECONDS.sleep(2);
+
+    // Every message must be emitted exactly once, even though fetched messages are kept across polls
+    MockEmitter emitter = new MockEmitter();
+    SourceState sourceState = new SourceState();
+    for (int i = 0; i < msgCount && emitter.getInternalSize() < msgCount; i++) {
+      int emitted = emitter.getInternalSize();
+      sourceState = kafkaSource.poll(emitter, sourceState);
+      Assert.assertTrue(emitter.getInternalSize() - emitted <= 3);
+    }
+    Assert.assertEquals(msgCount, emitter.getInternalSize());
+    Set<Object> bodies = Sets.newHashSet();
+    for (StructuredRecord record : emitter.entryList) {
+      bodies.add(record.get("body"));
+    }
+    Assert.assertEquals(msgCount, bodies.size());
+  }
+
   @Test(timeout = 5000, expected = IllegalArgumentException.class)
   public void testInvalidZKStr() throws Exception {
     String zk = "localhost:" + Networks.getRandomPort();
@@ -206,6 +301,11 @@ public class KafkaSourceTest {
   }
 
   private void initializeKafkaSource(String topic, int partitions, boolean preferZK, String format) throws Exception {
+    initializeKafkaSource(topic, partitions, preferZK, format, null);
+  }
+
+  private void initializeKafkaSource(String topic, int partitions, boolean preferZK, String format,
+                                     Integer prefetchSize) throws Exception {
     String zk = null;
     String brokerList = null;
     if (!supportBrokerList() || preferZK) {
@@ -214,7 +314,8 @@ public class KafkaSourceTest {
       brokerList = "localhost:" + kafkaPort;
     }
     KafkaSource.KafkaPluginConfig config = new KafkaSource.KafkaPluginConfig(zk, brokerList, partitions,
-                                                                             topic, null, format, null);
+                                                                             topic, null, format, null,
+                                                                             prefetchSize);
 
     kafkaSource = new KafkaSource(config);
 